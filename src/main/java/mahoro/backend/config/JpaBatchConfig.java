@@ -0,0 +1,23 @@
+package mahoro.backend.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class JpaBatchConfig {
+
+    @Value("${tracking.jdbc.batch-size:50}")
+    private int batchSize;
+
+    // Lets Hibernate group the location_history inserts of a batch report into JDBC batches
+    @Bean
+    public HibernatePropertiesCustomizer jdbcBatchingCustomizer() {
+        return properties -> {
+            properties.putIfAbsent("hibernate.jdbc.batch_size", batchSize);
+            properties.putIfAbsent("hibernate.order_inserts", true);
+            properties.putIfAbsent("hibernate.order_updates", true);
+        };
+    }
+}
@@ -1,6 +1,7 @@
 package mahoro.backend.controller;
 
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 import org.springframework.data.domain.Page;
@@ -17,6 +18,8 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import com.fasterxml.jackson.databind.JsonNode;
+
 import lombok.extern.slf4j.Slf4j;
 import mahoro.backend.model.Location;
 import mahoro.backend.model.LocationType;
@@ -71,6 +74,20 @@ public ResponseEntity<Void> deleteLocation(@PathVariable UUID id) {
         return ResponseEntity.ok(locations);
     }
     
+    @PostMapping("/boundaries")
+    public ResponseEntity<?> importBoundaries(@RequestBody JsonNode featureCollection) {
+        try {
+            return ResponseEntity.ok(locationService.importBoundaries(featureCollection));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    @GetMapping("/containing")
+    public ResponseEntity<List<Location>> getLocationsContaining(@RequestParam double lat, @RequestParam double lon) {
+        return ResponseEntity.ok(locationService.findContaining(lat, lon));
+    }
+
     @GetMapping("/{id}/children")
     public ResponseEntity<List<Location>> getChildren(@PathVariable UUID id) {
         log.info("Getting children for location ID: {}", id);
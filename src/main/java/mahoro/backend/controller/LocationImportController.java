@@ -0,0 +1,48 @@
+package mahoro.backend.controller;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import mahoro.backend.service.LocationImportService;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.InputStream;
+import java.util.Map;
+
+@Slf4j
+@RestController
+@RequestMapping("/api/tracking/import")
+@RequiredArgsConstructor
+public class LocationImportController {
+
+    private final LocationImportService locationImportService;
+
+    // The body is read as a stream, so files far larger than memory can be posted as-is
+    @PostMapping
+    public ResponseEntity<?> importLocations(
+            @RequestParam String jobId,
+            @RequestParam(defaultValue = "CSV") LocationImportService.Format format,
+            InputStream body) {
+        try {
+            return ResponseEntity.ok(locationImportService.importStream(jobId, format, body).toMap());
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                .body(Map.of("error", e.getMessage()));
+        } catch (Exception e) {
+            log.error("Error importing locations for job {}: ", jobId, e);
+            LocationImportService.ImportProgress progress = locationImportService.getProgress(jobId);
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                .body(progress != null ? progress.toMap() : Map.of("error", String.valueOf(e.getMessage())));
+        }
+    }
+
+    @GetMapping("/{jobId}")
+    public ResponseEntity<?> getImportProgress(@PathVariable String jobId) {
+        LocationImportService.ImportProgress progress = locationImportService.getProgress(jobId);
+        if (progress == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(progress.toMap());
+    }
+}
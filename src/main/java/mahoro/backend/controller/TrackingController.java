@@ -1,17 +1,43 @@
 package mahoro.backend.controller;
 
+import com.fasterxml.jackson.databind.JsonMappingException;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import mahoro.backend.dto.LocationReportDTO;
+import mahoro.backend.ingest.TcpTrackerServer;
+import mahoro.backend.ingest.TrackerIngestDispatcher;
+import mahoro.backend.ingest.UdpTrackerServer;
 import mahoro.backend.model.LocationHistory;
+import mahoro.backend.service.BatteryMonitor;
+import mahoro.backend.service.DeviceImeiCache;
+import mahoro.backend.service.DuplicateReportFilter;
+import mahoro.backend.service.GeofenceIndex;
+import mahoro.backend.service.GeofenceStateTracker;
+import mahoro.backend.service.IngestRateLimiter;
+import mahoro.backend.service.LastSeenTracker;
+import mahoro.backend.service.LatestPositionCache;
+import mahoro.backend.service.LocationIngestLanes;
+import mahoro.backend.service.LocationJournal;
 import mahoro.backend.service.LocationTrackingService;
+import mahoro.backend.service.LocationWriteBehindService;
+import mahoro.backend.service.MotionTracker;
+import mahoro.backend.service.PointThinningFilter;
+import mahoro.backend.service.PresenceTracker;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.HttpMessageNotReadableException;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 @Slf4j
 @RestController
@@ -20,22 +46,52 @@ import java.util.UUID;
 public class TrackingController {
 
     private final LocationTrackingService locationTrackingService;
+    private final LocationWriteBehindService locationWriteBehindService;
+    private final LocationJournal locationJournal;
+    private final LocationIngestLanes locationIngestLanes;
+    private final LastSeenTracker lastSeenTracker;
+    private final DeviceImeiCache deviceImeiCache;
+    private final DuplicateReportFilter duplicateReportFilter;
+    private final IngestRateLimiter ingestRateLimiter;
+    private final PointThinningFilter pointThinningFilter;
+    private final GeofenceIndex geofenceIndex;
+    private final GeofenceStateTracker geofenceStateTracker;
+    private final MotionTracker motionTracker;
+    private final BatteryMonitor batteryMonitor;
+    private final LatestPositionCache latestPositionCache;
+    private final PresenceTracker presenceTracker;
+    private final TrackerIngestDispatcher trackerIngestDispatcher;
+    private final TcpTrackerServer tcpTrackerServer;
+    private final UdpTrackerServer udpTrackerServer;
 
     @PostMapping("/report-location")
-    public ResponseEntity<?> reportLocation(@RequestBody Map<String, Object> request) {
+    public ResponseEntity<?> reportLocation(@RequestBody LocationReportDTO request) {
+        if (request.deviceId() == null) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                .body(Map.of("error", "deviceId is required"));
+        }
+        return admit(List.of(request), () -> storeLocation(request));
+    }
+
+    private ResponseEntity<?> storeLocation(LocationReportDTO request) {
         try {
-            UUID deviceId = UUID.fromString((String) request.get("deviceId"));
-            Double latitude = Double.parseDouble(request.get("latitude").toString());
-            Double longitude = Double.parseDouble(request.get("longitude").toString());
-            String address = (String) request.get("address");
+            if (locationWriteBehindService.isEnabled()) {
+                return accepted(List.of(locationWriteBehindService.submit(request)));
+            }
             
-            LocationHistory location = locationTrackingService.reportLocation(deviceId, latitude, longitude, address);
+            List<LocationHistory> saved = locationIngestLanes.reportLocations(List.of(request));
+            if (saved.isEmpty()) {
+                return acknowledged();
+            }
+            LocationHistory location = saved.get(0);
             
             return ResponseEntity.ok(Map.of(
                 "message", "Location reported successfully",
                 "locationId", location.getLocationHistoryId(),
                 "timestamp", location.getTimestamp()
             ));
+        } catch (RejectedExecutionException e) {
+            return tooManyRequests(TimeUnit.SECONDS.toNanos(1), e.getMessage());
         } catch (Exception e) {
             log.error("Error reporting location: ", e);
             return ResponseEntity.status(HttpStatus.BAD_REQUEST)
@@ -44,19 +100,33 @@ public class TrackingController {
     }
 
     @PostMapping("/report-location-by-imei")
-    public ResponseEntity<?> reportLocationByImei(@RequestBody Map<String, Object> request) {
+    public ResponseEntity<?> reportLocationByImei(@RequestBody LocationReportDTO request) {
+        if (request.imei() == null || request.imei().isBlank()) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                .body(Map.of("error", "imei is required"));
+        }
+        return admit(List.of(request), () -> storeLocationByImei(request));
+    }
+
+    private ResponseEntity<?> storeLocationByImei(LocationReportDTO request) {
         try {
-            String imei = (String) request.get("imei");
-            Double latitude = Double.parseDouble(request.get("latitude").toString());
-            Double longitude = Double.parseDouble(request.get("longitude").toString());
+            if (locationWriteBehindService.isEnabled()) {
+                return accepted(List.of(locationWriteBehindService.submit(request)));
+            }
             
-            LocationHistory location = locationTrackingService.reportLocationByImei(imei, latitude, longitude);
+            List<LocationHistory> saved = locationIngestLanes.reportLocations(List.of(request));
+            if (saved.isEmpty()) {
+                return acknowledged();
+            }
+            LocationHistory location = saved.get(0);
             
             return ResponseEntity.ok(Map.of(
                 "message", "Location reported successfully",
                 "deviceId", location.getDevice().getDeviceId(),
                 "timestamp", location.getTimestamp()
             ));
+        } catch (RejectedExecutionException e) {
+            return tooManyRequests(TimeUnit.SECONDS.toNanos(1), e.getMessage());
         } catch (Exception e) {
             log.error("Error reporting location by IMEI: ", e);
             return ResponseEntity.status(HttpStatus.BAD_REQUEST)
@@ -64,10 +134,131 @@ public class TrackingController {
         }
     }
 
+    @PostMapping("/report-locations")
+    public ResponseEntity<?> reportLocations(@RequestBody List<LocationReportDTO> reports) {
+        return admit(reports, () -> storeLocations(reports));
+    }
+
+    private ResponseEntity<?> storeLocations(List<LocationReportDTO> reports) {
+        try {
+            if (locationWriteBehindService.isEnabled()) {
+                return accepted(locationWriteBehindService.submitAll(reports));
+            }
+            
+            LocationIngestLanes.BatchResult result = locationIngestLanes.reportBatch(reports);
+            List<LocationHistory> locations = result.saved();
+            int failed = result.failed();
+
+            // Each lane commits on its own; only a batch that failed everywhere is an error
+            List<Map<String, Object>> failures = new ArrayList<>();
+            for (LocationIngestLanes.LaneResult lane : result.lanes()) {
+                if (lane.failed()) {
+                    if (failed == reports.size()) {
+                        throw lane.failure();
+                    }
+                    failures.add(Map.of("reports", lane.reports(), "error", String.valueOf(lane.failure().getMessage())));
+                }
+            }
+
+            long devices = locations.stream()
+                .map(location -> location.getDevice().getDeviceId())
+                .distinct()
+                .count();
+
+            return ResponseEntity.ok(Map.of(
+                "message", failed == 0 ? "Locations reported successfully" : "Locations partially reported",
+                "count", locations.size(),
+                "skipped", reports.size() - failed - locations.size(),
+                "failed", failed,
+                "failures", failures,
+                "devices", devices
+            ));
+        } catch (RejectedExecutionException e) {
+            return tooManyRequests(TimeUnit.SECONDS.toNanos(1), e.getMessage());
+        } catch (Exception e) {
+            log.error("Error reporting location batch: ", e);
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                .body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    @GetMapping("/ingest-stats")
+    public ResponseEntity<?> getIngestStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("writeBehind", locationWriteBehindService.getStats());
+        stats.put("journal", locationJournal.getStats());
+        stats.put("lastSeen", lastSeenTracker.getStats());
+        stats.put("imeiCache", deviceImeiCache.getStats());
+        stats.put("dedup", duplicateReportFilter.getStats());
+        stats.put("rateLimit", ingestRateLimiter.getStats());
+        stats.put("thinning", pointThinningFilter.getStats());
+        stats.put("geofence", geofenceIndex.getStats());
+        stats.put("geofenceState", geofenceStateTracker.getStats());
+        stats.put("motion", motionTracker.getStats());
+        stats.put("battery", batteryMonitor.getStats());
+        stats.put("latestPositions", latestPositionCache.getStats());
+        stats.put("presence", presenceTracker.getStats());
+        stats.put("lanes", locationIngestLanes.getStats());
+        stats.put("trackerDispatch", trackerIngestDispatcher.getStats());
+        stats.put("tcp", tcpTrackerServer.getStats());
+        stats.put("udp", udpTrackerServer.getStats());
+        return ResponseEntity.ok(stats);
+    }
+
+    @ExceptionHandler(HttpMessageNotReadableException.class)
+    public ResponseEntity<?> handleUnreadableReport(HttpMessageNotReadableException e) {
+        Throwable cause = e.getMostSpecificCause();
+        String message = cause instanceof JsonMappingException mapping
+            ? mapping.getOriginalMessage()
+            : "Malformed location report";
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+            .body(Map.of("error", message));
+    }
+
+    private ResponseEntity<?> admit(List<LocationReportDTO> reports, Supplier<ResponseEntity<?>> handler) {
+        if (!ingestRateLimiter.tryEnter()) {
+            return tooManyRequests(TimeUnit.SECONDS.toNanos(1), "Ingest is at capacity, retry later");
+        }
+        try {
+            long waitNanos = ingestRateLimiter.tryAcquireAll(reports);
+            if (waitNanos > 0) {
+                return tooManyRequests(waitNanos, "Device is reporting too often, retry later");
+            }
+            return handler.get();
+        } finally {
+            ingestRateLimiter.exit();
+        }
+    }
+
+    private ResponseEntity<?> tooManyRequests(long waitNanos, String message) {
+        long retryAfterSeconds = Math.max(1, (waitNanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1));
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+            .header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds))
+            .body(Map.of("error", message));
+    }
+
+    private ResponseEntity<?> acknowledged() {
+        // A retransmission or a thinned-out fix; acknowledge so the tracker does not retry it
+        return ResponseEntity.ok(Map.of(
+            "message", "Location acknowledged",
+            "stored", false
+        ));
+    }
+
+    private ResponseEntity<?> accepted(List<CompletableFuture<Void>> pending) {
+        // With COMMITTED durability these futures complete only after the group commit
+        CompletableFuture.allOf(pending.toArray(new CompletableFuture<?>[0])).join();
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(Map.of(
+            "message", "Location accepted for processing",
+            "accepted", pending.size(),
+            "durability", locationWriteBehindService.getDurability()
+        ));
+    }
+
     @GetMapping("/device/{deviceId}/current-location")
     public ResponseEntity<?> getCurrentLocation(@PathVariable UUID deviceId) {
         try {
-            return locationTrackingService.getLatestLocation(deviceId)
+            return locationTrackingService.getCurrentPosition(deviceId)
                 .map(ResponseEntity::ok)
                 .orElse(ResponseEntity.notFound().build());
         } catch (Exception e) {
@@ -103,19 +294,20 @@ public class TrackingController {
     @GetMapping("/device/{deviceId}/status")
     public ResponseEntity<?> getDeviceStatus(@PathVariable UUID deviceId) {
         try {
-            var latestLocation = locationTrackingService.getLatestLocation(deviceId);
+            var latestLocation = locationTrackingService.getCurrentPosition(deviceId);
             
             Map<String, Object> status = new HashMap<>();
             status.put("deviceId", deviceId);
             
             if (latestLocation.isPresent()) {
-                LocationHistory location = latestLocation.get();
-                status.put("online", location.getTimestamp().isAfter(
-                        java.time.LocalDateTime.now().minusMinutes(5)));
-                status.put("lastSeen", location.getTimestamp());
-                status.put("latitude", location.getLatitude());
-                status.put("longitude", location.getLongitude());
-                status.put("address", location.getRecordedAddress());
+                LatestPositionCache.Position location = latestLocation.get();
+                status.put("online", presenceTracker.isOnline(deviceId));
+                status.put("lastSeen", lastSeenTracker.getLastSeen(deviceId, location.timestamp()));
+                status.put("latitude", location.latitude());
+                status.put("longitude", location.longitude());
+                status.put("address", location.recordedAddress());
+                BatteryMonitor.Reading battery = batteryMonitor.latest(deviceId);
+                status.put("batteryLevel", battery != null ? battery.percent() : null);
             } else {
                 status.put("online", false);
                 status.put("lastSeen", null);
@@ -31,6 +31,7 @@ import mahoro.backend.model.RoleType;
 import mahoro.backend.model.User;
 import mahoro.backend.repository.LocationRepository;
 import mahoro.backend.repository.UserRepository;
+import mahoro.backend.service.GeofenceIndex;
 import mahoro.backend.service.UserService;
 
 @Slf4j
@@ -46,6 +47,9 @@ public class UserController {
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private GeofenceIndex geofenceIndex;
+
     public UserController(UserService userService) {
         this.userService = userService;
     }
@@ -145,6 +149,7 @@ public class UserController {
             user.setAssignedLocation(location);
             user.setLocationAssigned(true);
             userRepository.save(user);
+            geofenceIndex.userAssigned(userId, location.getLocationId());
             
             // Generate and send OTP
             String otp = userService.createUserWithOtp(user);
@@ -0,0 +1,35 @@
+package mahoro.backend.dto;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+
+/**
+ * A location report as received. receivedAt is set only for reports that arrived without a
+ * timestamp and were stamped by the server: it stands in for the fix time when storing, but unlike
+ * a client timestamp it says nothing about whether the report is a retransmission.
+ */
+@JsonDeserialize(using = LocationReportDeserializer.class)
+public record LocationReportDTO(
+    UUID deviceId,
+    String imei,
+    double latitude,
+    double longitude,
+    String address,
+    LocalDateTime timestamp,
+    Long sequence,
+    Integer battery,
+    LocalDateTime receivedAt
+) {
+
+    public LocationReportDTO(UUID deviceId, String imei, double latitude, double longitude, String address,
+            LocalDateTime timestamp, Long sequence, Integer battery) {
+        this(deviceId, imei, latitude, longitude, address, timestamp, sequence, battery, null);
+    }
+
+    public LocationReportDTO(UUID deviceId, String imei, double latitude, double longitude, String address,
+            LocalDateTime timestamp, Long sequence) {
+        this(deviceId, imei, latitude, longitude, address, timestamp, sequence, null);
+    }
+}
@@ -0,0 +1,116 @@
+package mahoro.backend.dto;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.UUID;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+
+// Reads a report straight off the token stream into primitives, without an intermediate Map or boxed values
+public class LocationReportDeserializer extends JsonDeserializer<LocationReportDTO> {
+
+    @Override
+    public LocationReportDTO deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+        if (p.currentToken() != JsonToken.START_OBJECT) {
+            return (LocationReportDTO) ctxt.handleUnexpectedToken(LocationReportDTO.class, p);
+        }
+
+        UUID deviceId = null;
+        String imei = null;
+        double latitude = Double.NaN;
+        double longitude = Double.NaN;
+        String address = null;
+        LocalDateTime timestamp = null;
+        Long sequence = null;
+        Integer battery = null;
+
+        for (String field = p.nextFieldName(); field != null; field = p.nextFieldName()) {
+            JsonToken token = p.nextToken();
+            if (token == JsonToken.VALUE_NULL) {
+                continue;
+            }
+            switch (field) {
+                case "deviceId" -> deviceId = parseUuid(p, ctxt);
+                case "imei" -> imei = parseText(p, ctxt, field);
+                case "latitude" -> latitude = parseDouble(p, ctxt, field);
+                case "longitude" -> longitude = parseDouble(p, ctxt, field);
+                case "address" -> address = parseText(p, ctxt, field);
+                case "timestamp" -> timestamp = parseTimestamp(p, ctxt);
+                case "sequence" -> sequence = parseSequence(p, ctxt);
+                case "battery" -> battery = parseBattery(p, ctxt);
+                default -> p.skipChildren();
+            }
+        }
+
+        if (Double.isNaN(latitude) || latitude < -90 || latitude > 90) {
+            ctxt.reportInputMismatch(LocationReportDTO.class, "latitude is required and must be between -90 and 90");
+        }
+        if (Double.isNaN(longitude) || longitude < -180 || longitude > 180) {
+            ctxt.reportInputMismatch(LocationReportDTO.class, "longitude is required and must be between -180 and 180");
+        }
+        return new LocationReportDTO(deviceId, imei, latitude, longitude, address, timestamp, sequence, battery);
+    }
+
+    private static double parseDouble(JsonParser p, DeserializationContext ctxt, String field) throws IOException {
+        JsonToken token = p.currentToken();
+        if (token == JsonToken.VALUE_NUMBER_FLOAT || token == JsonToken.VALUE_NUMBER_INT) {
+            return p.getDoubleValue();
+        }
+        if (token == JsonToken.VALUE_STRING) {
+            // Older clients send coordinates as strings
+            try {
+                return Double.parseDouble(p.getText().trim());
+            } catch (NumberFormatException e) {
+                // fall through to the mismatch below
+            }
+        }
+        ctxt.reportInputMismatch(LocationReportDTO.class, "%s must be a number", field);
+        return Double.NaN;
+    }
+
+    // An object or array here would leave the parser inside it and misread the rest of the report
+    private static String parseText(JsonParser p, DeserializationContext ctxt, String field) throws IOException {
+        if (!p.currentToken().isScalarValue()) {
+            ctxt.reportInputMismatch(LocationReportDTO.class, "%s must be a string", field);
+        }
+        return p.getValueAsString();
+    }
+
+    private static Long parseSequence(JsonParser p, DeserializationContext ctxt) throws IOException {
+        if (p.currentToken() != JsonToken.VALUE_NUMBER_INT || p.getNumberType() == JsonParser.NumberType.BIG_INTEGER) {
+            ctxt.reportInputMismatch(LocationReportDTO.class, "sequence must be a 64-bit integer");
+        }
+        return p.getLongValue();
+    }
+
+    private static Integer parseBattery(JsonParser p, DeserializationContext ctxt) throws IOException {
+        JsonToken token = p.currentToken();
+        if ((token != JsonToken.VALUE_NUMBER_INT && token != JsonToken.VALUE_NUMBER_FLOAT)
+                || p.getDoubleValue() < 0 || p.getDoubleValue() > 100) {
+            ctxt.reportInputMismatch(LocationReportDTO.class, "battery must be a percentage between 0 and 100");
+        }
+        return (int) Math.round(p.getDoubleValue());
+    }
+
+    private static UUID parseUuid(JsonParser p, DeserializationContext ctxt) throws IOException {
+        try {
+            return UUID.fromString(p.getText());
+        } catch (IllegalArgumentException e) {
+            ctxt.reportInputMismatch(LocationReportDTO.class, "deviceId is not a valid UUID");
+            return null;
+        }
+    }
+
+    private static LocalDateTime parseTimestamp(JsonParser p, DeserializationContext ctxt) throws IOException {
+        try {
+            return LocalDateTime.parse(p.getText());
+        } catch (DateTimeParseException e) {
+            ctxt.reportInputMismatch(LocationReportDTO.class, "timestamp must be an ISO-8601 local date-time");
+            return null;
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package mahoro.backend.geo;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * An area border read from a GeoJSON Polygon or MultiPolygon. Every ring, outer or hole, is kept
+ * as a flat lon,lat array and tested together with the even-odd rule, which gives the right answer
+ * for holes and for the separate parts of a valid MultiPolygon without tracking which is which.
+ */
+public final class Boundary {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static final double EARTH_RADIUS_METERS = 6_371_000;
+
+    private final double[][] rings;
+    private final double minLon;
+    private final double minLat;
+    private final double maxLon;
+    private final double maxLat;
+
+    public Boundary(List<double[]> rings) {
+        if (rings.isEmpty()) {
+            throw new IllegalArgumentException("A boundary needs at least one ring");
+        }
+        double west = Double.POSITIVE_INFINITY, south = Double.POSITIVE_INFINITY;
+        double east = Double.NEGATIVE_INFINITY, north = Double.NEGATIVE_INFINITY;
+        for (double[] ring : rings) {
+            if (ring.length < 8 || ring.length % 2 != 0) {
+                throw new IllegalArgumentException("A ring needs at least four positions");
+            }
+            for (int i = 0; i < ring.length; i += 2) {
+                west = Math.min(west, ring[i]);
+                east = Math.max(east, ring[i]);
+                south = Math.min(south, ring[i + 1]);
+                north = Math.max(north, ring[i + 1]);
+            }
+        }
+        this.rings = rings.toArray(new double[0][]);
+        this.minLon = west;
+        this.minLat = south;
+        this.maxLon = east;
+        this.maxLat = north;
+    }
+
+    public static Boundary parse(String geoJson) {
+        try {
+            return fromGeoJson(MAPPER.readTree(geoJson));
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Boundary is not valid JSON: " + e.getOriginalMessage());
+        }
+    }
+
+    /**
+     * Reads a Polygon or MultiPolygon geometry, or a Feature wrapping one.
+     */
+    public static Boundary fromGeoJson(JsonNode node) {
+        if (node == null || !node.isObject()) {
+            throw new IllegalArgumentException("Boundary must be a GeoJSON object");
+        }
+        if ("Feature".equals(node.path("type").asText())) {
+            node = node.path("geometry");
+        }
+        String type = node.path("type").asText();
+        JsonNode coordinates = node.path("coordinates");
+        List<double[]> rings = new ArrayList<>();
+        switch (type) {
+            case "Polygon" -> readPolygon(coordinates, rings);
+            case "MultiPolygon" -> {
+                for (JsonNode polygon : coordinates) {
+                    readPolygon(polygon, rings);
+                }
+            }
+            default -> throw new IllegalArgumentException("Boundary must be a Polygon or MultiPolygon, not " + type);
+        }
+        return new Boundary(rings);
+    }
+
+    private static void readPolygon(JsonNode polygon, List<double[]> rings) {
+        if (!polygon.isArray() || polygon.isEmpty()) {
+            throw new IllegalArgumentException("Polygon coordinates must be an array of rings");
+        }
+        for (JsonNode ring : polygon) {
+            double[] flat = new double[ring.size() * 2];
+            int i = 0;
+            for (JsonNode position : ring) {
+                double lon = position.path(0).asDouble(Double.NaN);
+                double lat = position.path(1).asDouble(Double.NaN);
+                if (!(lon >= -180 && lon <= 180 && lat >= -90 && lat <= 90)) {
+                    throw new IllegalArgumentException("Invalid position " + position);
+                }
+                flat[i++] = lon;
+                flat[i++] = lat;
+            }
+            rings.add(flat);
+        }
+    }
+
+    public boolean contains(double latitude, double longitude) {
+        if (latitude < minLat || latitude > maxLat || longitude < minLon || longitude > maxLon) {
+            return false;
+        }
+        boolean inside = false;
+        for (double[] ring : rings) {
+            int n = ring.length / 2;
+            for (int i = 0, j = n - 1; i < n; j = i++) {
+                double xi = ring[2 * i], yi = ring[2 * i + 1];
+                double xj = ring[2 * j], yj = ring[2 * j + 1];
+                if ((yi > latitude) != (yj > latitude)
+                        && longitude < (xj - xi) * (latitude - yi) / (yj - yi) + xi) {
+                    inside = !inside;
+                }
+            }
+        }
+        return inside;
+    }
+
+    /**
+     * Distance from the point to the nearest edge of any ring, on a local equirectangular projection.
+     */
+    public double distanceToEdgeMeters(double latitude, double longitude) {
+        double cosLat = Math.cos(Math.toRadians(latitude));
+        double best = Double.POSITIVE_INFINITY;
+        for (double[] ring : rings) {
+            for (int i = 0; i + 3 < ring.length; i += 2) {
+                double ax = (ring[i] - longitude) * cosLat, ay = ring[i + 1] - latitude;
+                double bx = (ring[i + 2] - longitude) * cosLat, by = ring[i + 3] - latitude;
+                double dx = bx - ax, dy = by - ay;
+                double lengthSquared = dx * dx + dy * dy;
+                double t = lengthSquared == 0 ? 0 : Math.max(0, Math.min(1, -(ax * dx + ay * dy) / lengthSquared));
+                double px = ax + t * dx, py = ay + t * dy;
+                best = Math.min(best, px * px + py * py);
+            }
+        }
+        return Math.toRadians(Math.sqrt(best)) * EARTH_RADIUS_METERS;
+    }
+
+    public double getMinLatitude() {
+        return minLat;
+    }
+
+    public double getMinLongitude() {
+        return minLon;
+    }
+
+    public double getMaxLatitude() {
+        return maxLat;
+    }
+
+    public double getMaxLongitude() {
+        return maxLon;
+    }
+
+    public int getVertexCount() {
+        int count = 0;
+        for (double[] ring : rings) {
+            count += ring.length / 2;
+        }
+        return count;
+    }
+}
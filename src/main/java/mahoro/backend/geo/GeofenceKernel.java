@@ -0,0 +1,89 @@
+package mahoro.backend.geo;
+
+/**
+ * Circular fence with its trigonometry worked out once, for evaluating many points at a time.
+ * Points are classified on plain double arrays in two passes: a branch-free equirectangular
+ * estimate of every squared distance, which the JIT can unroll and vectorize, and then an exact
+ * haversine only for the few points whose estimate lies too close to a threshold to trust.
+ *
+ * <p>The estimate is only relied on away from the thresholds, and the thresholds are fence sized,
+ * so its error over long distances never changes a result.
+ */
+public final class GeofenceKernel {
+
+    public static final byte INSIDE = -1;
+    public static final byte BAND = 0;
+    public static final byte OUTSIDE = 1;
+
+    private static final double EARTH_RADIUS_KM = 6371;
+    private static final double RADIANS_PER_DEGREE = Math.PI / 180;
+    private static final double KM_PER_DEGREE = EARTH_RADIUS_KM * RADIANS_PER_DEGREE;
+
+    // Relative error allowed for the equirectangular estimate near a threshold
+    private static final double ESTIMATE_MARGIN = 0.02;
+
+    private final double centerLatitude;
+    private final double centerLongitude;
+    private final double centerLatitudeRadians;
+    private final double cosCenterLatitude;
+    private final double kmPerDegreeLongitude;
+
+    public GeofenceKernel(double centerLatitude, double centerLongitude) {
+        this.centerLatitude = centerLatitude;
+        this.centerLongitude = centerLongitude;
+        this.centerLatitudeRadians = centerLatitude * RADIANS_PER_DEGREE;
+        this.cosCenterLatitude = Math.cos(centerLatitudeRadians);
+        this.kmPerDegreeLongitude = KM_PER_DEGREE * cosCenterLatitude;
+    }
+
+    /**
+     * Great-circle distance from the center in km.
+     */
+    public double distanceKm(double latitude, double longitude) {
+        double latitudeRadians = latitude * RADIANS_PER_DEGREE;
+        double sinLat = Math.sin((latitudeRadians - centerLatitudeRadians) / 2);
+        double sinLon = Math.sin((longitude - centerLongitude) * RADIANS_PER_DEGREE / 2);
+        double a = sinLat * sinLat + Math.cos(latitudeRadians) * cosCenterLatitude * sinLon * sinLon;
+        return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    /**
+     * Sorts the first count points into INSIDE (closer than innerKm to the center), OUTSIDE
+     * (farther than outerKm) or BAND (in between). Returns how many needed the exact distance.
+     */
+    public int classify(double[] latitudes, double[] longitudes, int count, double innerKm, double outerKm, byte[] zones) {
+        double[] squared = new double[count];
+        for (int i = 0; i < count; i++) {
+            double dLon = longitudes[i] - centerLongitude;
+            dLon -= 360 * Math.rint(dLon / 360);
+            double x = dLon * kmPerDegreeLongitude;
+            double y = (latitudes[i] - centerLatitude) * KM_PER_DEGREE;
+            squared[i] = x * x + y * y;
+        }
+
+        double insideBelow = square(innerKm * (1 - ESTIMATE_MARGIN));
+        double innerAbove = square(innerKm * (1 + ESTIMATE_MARGIN));
+        double outerBelow = square(outerKm * (1 - ESTIMATE_MARGIN));
+        double outsideAbove = square(outerKm * (1 + ESTIMATE_MARGIN));
+        int exact = 0;
+        for (int i = 0; i < count; i++) {
+            double d2 = squared[i];
+            if (d2 < insideBelow) {
+                zones[i] = INSIDE;
+            } else if (d2 > outsideAbove) {
+                zones[i] = OUTSIDE;
+            } else if (d2 > innerAbove && d2 < outerBelow) {
+                zones[i] = BAND;
+            } else {
+                exact++;
+                double distance = distanceKm(latitudes[i], longitudes[i]);
+                zones[i] = distance < innerKm ? INSIDE : distance > outerKm ? OUTSIDE : BAND;
+            }
+        }
+        return exact;
+    }
+
+    private static double square(double value) {
+        return value * value;
+    }
+}
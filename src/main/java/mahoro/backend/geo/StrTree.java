@@ -0,0 +1,131 @@
+package mahoro.backend.geo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Read-only R-tree bulk loaded with Sort-Tile-Recursive packing: entries are sorted into vertical
+ * slices by x, each slice is sorted by y and cut into full nodes, and the same is repeated one
+ * level up until a single root remains. Packed nodes overlap far less than incrementally built
+ * ones, so a point query visits only a few leaves. Changes are made by building a new tree.
+ */
+public final class StrTree<T> {
+
+    private static final int NODE_CAPACITY = 16;
+
+    public record Entry<T>(double minX, double minY, double maxX, double maxY, T value) {}
+
+    private static final class Node {
+        double minX = Double.POSITIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+        Node[] children;
+        Object value;
+
+        double centerX() {
+            return (minX + maxX) / 2;
+        }
+
+        double centerY() {
+            return (minY + maxY) / 2;
+        }
+
+        void include(Node child) {
+            minX = Math.min(minX, child.minX);
+            minY = Math.min(minY, child.minY);
+            maxX = Math.max(maxX, child.maxX);
+            maxY = Math.max(maxY, child.maxY);
+        }
+    }
+
+    private final Node root;
+    private final int size;
+
+    public StrTree(List<Entry<T>> entries) {
+        List<Node> level = new ArrayList<>(entries.size());
+        for (Entry<T> entry : entries) {
+            Node leaf = new Node();
+            leaf.minX = entry.minX();
+            leaf.minY = entry.minY();
+            leaf.maxX = entry.maxX();
+            leaf.maxY = entry.maxY();
+            leaf.value = entry.value();
+            level.add(leaf);
+        }
+        while (level.size() > NODE_CAPACITY) {
+            level = pack(level);
+        }
+        Node top = new Node();
+        top.children = level.toArray(new Node[0]);
+        for (Node child : top.children) {
+            top.include(child);
+        }
+        this.root = top;
+        this.size = entries.size();
+    }
+
+    private static List<Node> pack(List<Node> nodes) {
+        int parentCount = (nodes.size() + NODE_CAPACITY - 1) / NODE_CAPACITY;
+        int sliceCount = (int) Math.ceil(Math.sqrt(parentCount));
+        int sliceSize = sliceCount * NODE_CAPACITY;
+
+        nodes.sort(Comparator.comparingDouble(Node::centerX));
+        List<Node> parents = new ArrayList<>(parentCount);
+        for (int start = 0; start < nodes.size(); start += sliceSize) {
+            List<Node> slice = nodes.subList(start, Math.min(start + sliceSize, nodes.size()));
+            slice.sort(Comparator.comparingDouble(Node::centerY));
+            for (int i = 0; i < slice.size(); i += NODE_CAPACITY) {
+                Node parent = new Node();
+                parent.children = slice.subList(i, Math.min(i + NODE_CAPACITY, slice.size())).toArray(new Node[0]);
+                for (Node child : parent.children) {
+                    parent.include(child);
+                }
+                parents.add(parent);
+            }
+        }
+        return parents;
+    }
+
+    /**
+     * Visits every entry whose box contains the point.
+     */
+    @SuppressWarnings("unchecked")
+    public void query(double x, double y, Consumer<T> visitor) {
+        if (size == 0) {
+            return;
+        }
+        Node[] stack = new Node[64];
+        int top = 0;
+        stack[top++] = root;
+        while (top > 0) {
+            Node node = stack[--top];
+            if (x < node.minX || x > node.maxX || y < node.minY || y > node.maxY) {
+                continue;
+            }
+            if (node.children == null) {
+                visitor.accept((T) node.value);
+                continue;
+            }
+            for (Node child : node.children) {
+                if (top == stack.length) {
+                    stack = Arrays.copyOf(stack, stack.length * 2);
+                }
+                stack[top++] = child;
+            }
+        }
+    }
+
+    public List<T> query(double x, double y) {
+        List<T> found = new ArrayList<>();
+        query(x, y, found::add);
+        return found;
+    }
+
+    public int size() {
+        return size;
+    }
+}
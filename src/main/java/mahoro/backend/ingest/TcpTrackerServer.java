@@ -0,0 +1,270 @@
+package mahoro.backend.ingest;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import mahoro.backend.dto.LocationReportDTO;
+
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class TcpTrackerServer {
+
+    private final TrackerIngestDispatcher dispatcher;
+
+    @Value("${tracking.tcp.enabled:false}")
+    private boolean enabled;
+
+    @Value("${tracking.tcp.host:0.0.0.0}")
+    private String host;
+
+    @Value("${tracking.tcp.port:5023}")
+    private int port;
+
+    @Value("${tracking.tcp.buffer-size:8192}")
+    private int bufferSize;
+
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+    private Thread selectorThread;
+    private volatile boolean running;
+
+    private final Map<SocketChannel, Connection> connections = new ConcurrentHashMap<>();
+
+    private final AtomicLong acceptedConnections = new AtomicLong();
+    private final AtomicLong frames = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicLong decodeErrors = new AtomicLong();
+    private final AtomicLong failedConnections = new AtomicLong();
+
+    private static final class Connection {
+        final String remote;
+        final ByteBuffer buffer;
+        final long connectedAt = System.currentTimeMillis();
+        volatile long frames;
+        volatile long bytes;
+        volatile long decodeErrors;
+        boolean resyncing;
+
+        Connection(String remote, int bufferSize) {
+            this.remote = remote;
+            this.buffer = ByteBuffer.allocateDirect(bufferSize);
+        }
+    }
+
+    @PostConstruct
+    void start() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(host, port));
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+
+        running = true;
+        selectorThread = new Thread(this::selectLoop, "tracker-tcp-selector");
+        selectorThread.start();
+        log.info("Tracker TCP listener started on {}:{}", host, getLocalPort());
+    }
+
+    public int getLocalPort() {
+        return serverChannel != null ? serverChannel.socket().getLocalPort() : -1;
+    }
+
+    private void selectLoop() {
+        while (running) {
+            try {
+                selector.select(500);
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (key.isValid()) {
+                        handle(key);
+                    }
+                }
+            } catch (IOException e) {
+                if (running) {
+                    log.error("Tracker TCP selector failed: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    // One bad connection must not stop the selector thread for every other tracker
+    private void handle(SelectionKey key) {
+        try {
+            if (key.isAcceptable()) {
+                accept();
+            } else if (key.isReadable()) {
+                read(key);
+            }
+        } catch (IOException | RuntimeException e) {
+            if (key.channel() instanceof SocketChannel channel) {
+                failedConnections.incrementAndGet();
+                log.error("Closing tracker connection after error: {}", e.getMessage(), e);
+                close(key, channel);
+            } else {
+                log.error("Failed to accept tracker connection: {}", e.getMessage());
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        Connection connection = new Connection(String.valueOf(channel.getRemoteAddress()), bufferSize);
+        channel.register(selector, SelectionKey.OP_READ, connection);
+        connections.put(channel, connection);
+        acceptedConnections.incrementAndGet();
+        log.debug("Tracker connected from {}", connection.remote);
+    }
+
+    private void read(SelectionKey key) {
+        SocketChannel channel = (SocketChannel) key.channel();
+        Connection connection = (Connection) key.attachment();
+        int read;
+        try {
+            read = channel.read(connection.buffer);
+        } catch (IOException e) {
+            read = -1;
+        }
+        if (read < 0) {
+            close(key, channel);
+            return;
+        }
+        connection.bytes += read;
+        bytes.addAndGet(read);
+
+        List<LocationReportDTO> reports = decode(connection);
+        dispatcher.dispatch(reports);
+    }
+
+    private List<LocationReportDTO> decode(Connection connection) {
+        ByteBuffer buffer = connection.buffer;
+        buffer.flip();
+        List<LocationReportDTO> reports = new ArrayList<>(buffer.remaining() / TrackerFrameCodec.FRAME_LENGTH);
+
+        while (buffer.remaining() >= TrackerFrameCodec.FRAME_LENGTH) {
+            int offset = buffer.position();
+            if (!TrackerFrameCodec.isFrameStart(buffer, offset)) {
+                // Count one error per run of garbage, then slide forward until the next magic
+                if (!connection.resyncing) {
+                    connection.resyncing = true;
+                    connection.decodeErrors++;
+                    decodeErrors.incrementAndGet();
+                }
+                buffer.position(offset + 1);
+                continue;
+            }
+            connection.resyncing = false;
+            try {
+                reports.add(TrackerFrameCodec.decode(buffer, offset).toReport());
+                connection.frames++;
+                frames.incrementAndGet();
+            } catch (IllegalArgumentException e) {
+                connection.decodeErrors++;
+                decodeErrors.incrementAndGet();
+                log.debug("Dropping frame from {}: {}", connection.remote, e.getMessage());
+            }
+            buffer.position(offset + TrackerFrameCodec.FRAME_LENGTH);
+        }
+        buffer.compact();
+        return reports;
+    }
+
+    private void close(SelectionKey key, SocketChannel channel) {
+        key.cancel();
+        Connection connection = connections.remove(channel);
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.debug("Error closing tracker connection: {}", e.getMessage());
+        }
+        if (connection != null) {
+            log.debug("Tracker {} disconnected after {} frames", connection.remote, connection.frames);
+        }
+    }
+
+    @PreDestroy
+    void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        selector.wakeup();
+        try {
+            selectorThread.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (SocketChannel channel : connections.keySet()) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.debug("Error closing tracker connection: {}", e.getMessage());
+            }
+        }
+        connections.clear();
+        try {
+            serverChannel.close();
+            selector.close();
+        } catch (IOException e) {
+            log.warn("Error closing tracker TCP listener: {}", e.getMessage());
+        }
+        log.info("Tracker TCP listener stopped");
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("port", getLocalPort());
+        stats.put("acceptedConnections", acceptedConnections.get());
+        stats.put("openConnections", connections.size());
+        stats.put("frames", frames.get());
+        stats.put("bytes", bytes.get());
+        stats.put("decodeErrors", decodeErrors.get());
+        stats.put("failedConnections", failedConnections.get());
+
+        List<Map<String, Object>> perConnection = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        for (Connection connection : connections.values()) {
+            Map<String, Object> entry = new HashMap<>();
+            double seconds = Math.max(1, now - connection.connectedAt) / 1000.0;
+            entry.put("remote", connection.remote);
+            entry.put("frames", connection.frames);
+            entry.put("bytes", connection.bytes);
+            entry.put("decodeErrors", connection.decodeErrors);
+            entry.put("framesPerSecond", connection.frames / seconds);
+            perConnection.add(entry);
+        }
+        stats.put("connections", perConnection);
+        return stats;
+    }
+}
@@ -0,0 +1,22 @@
+package mahoro.backend.ingest;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+import mahoro.backend.dto.LocationReportDTO;
+
+public record TrackerFrame(
+    String imei,
+    long timestampMillis,
+    double latitude,
+    double longitude,
+    double speedKmh,
+    Integer batteryLevel
+) {
+
+    public LocationReportDTO toReport() {
+        LocalDateTime timestamp = LocalDateTime.ofInstant(Instant.ofEpochMilli(timestampMillis), ZoneId.systemDefault());
+        return new LocationReportDTO(null, imei, latitude, longitude, null, timestamp, null, batteryLevel);
+    }
+}
@@ -0,0 +1,104 @@
+package mahoro.backend.ingest;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Fixed 32-byte binary frame sent by GPS units that cannot speak HTTPS+JSON.
+ * All fields are big-endian:
+ *
+ * <pre>
+ *  0  u16  magic 0x5452 ("TR")
+ *  2  u8   version (1)
+ *  3  u8   reserved
+ *  4  u64  IMEI as an unsigned decimal number
+ * 12  i64  fix time, epoch milliseconds
+ * 20  i32  latitude  * 1e7
+ * 24  i32  longitude * 1e7
+ * 28  u16  speed in 0.1 km/h
+ * 30  u8   battery percent, 0xFF when unknown; anything above 100 decodes as unknown
+ * 31  u8   XOR of bytes 0..30
+ * </pre>
+ *
+ * Decoding reads straight from the receive buffer with absolute gets, so no
+ * intermediate byte arrays are allocated per frame.
+ */
+public final class TrackerFrameCodec {
+
+    public static final int FRAME_LENGTH = 32;
+    public static final short MAGIC = 0x5452;
+    public static final byte VERSION = 1;
+
+    private static final int UNKNOWN_BATTERY = 0xFF;
+    private static final int MAX_BATTERY = 100;
+    private static final double COORDINATE_SCALE = 1e7;
+    private static final long MAX_IMEI = 999_999_999_999_999L;
+
+    private TrackerFrameCodec() {
+    }
+
+    public static boolean isFrameStart(ByteBuffer buffer, int offset) {
+        return buffer.getShort(offset) == MAGIC;
+    }
+
+    public static TrackerFrame decode(ByteBuffer buffer, int offset) {
+        if (buffer.getShort(offset) != MAGIC) {
+            throw new IllegalArgumentException("Bad frame magic");
+        }
+        if (buffer.get(offset + 2) != VERSION) {
+            throw new IllegalArgumentException("Unsupported frame version " + buffer.get(offset + 2));
+        }
+        byte checksum = 0;
+        for (int i = 0; i < FRAME_LENGTH - 1; i++) {
+            checksum ^= buffer.get(offset + i);
+        }
+        if (checksum != buffer.get(offset + FRAME_LENGTH - 1)) {
+            throw new IllegalArgumentException("Bad frame checksum");
+        }
+
+        long imei = buffer.getLong(offset + 4);
+        if (imei < 0 || imei > MAX_IMEI) {
+            throw new IllegalArgumentException("Invalid IMEI");
+        }
+        double latitude = buffer.getInt(offset + 20) / COORDINATE_SCALE;
+        double longitude = buffer.getInt(offset + 24) / COORDINATE_SCALE;
+        if (latitude < -90 || latitude > 90 || longitude < -180 || longitude > 180) {
+            throw new IllegalArgumentException("Coordinates out of range");
+        }
+        int battery = buffer.get(offset + 30) & 0xFF;
+
+        return new TrackerFrame(
+                imeiToString(imei),
+                buffer.getLong(offset + 12),
+                latitude,
+                longitude,
+                (buffer.getShort(offset + 28) & 0xFFFF) / 10.0,
+                battery > MAX_BATTERY ? null : battery);
+    }
+
+    public static void encode(TrackerFrame frame, ByteBuffer out) {
+        int start = out.position();
+        out.putShort(MAGIC);
+        out.put(VERSION);
+        out.put((byte) 0);
+        out.putLong(Long.parseLong(frame.imei()));
+        out.putLong(frame.timestampMillis());
+        out.putInt((int) Math.round(frame.latitude() * COORDINATE_SCALE));
+        out.putInt((int) Math.round(frame.longitude() * COORDINATE_SCALE));
+        out.putShort((short) Math.round(frame.speedKmh() * 10));
+        out.put((byte) (frame.batteryLevel() != null ? frame.batteryLevel() : UNKNOWN_BATTERY));
+        byte checksum = 0;
+        for (int i = 0; i < FRAME_LENGTH - 1; i++) {
+            checksum ^= out.get(start + i);
+        }
+        out.put(checksum);
+    }
+
+    private static String imeiToString(long imei) {
+        char[] digits = new char[15];
+        for (int i = digits.length - 1; i >= 0; i--) {
+            digits[i] = (char) ('0' + imei % 10);
+            imei /= 10;
+        }
+        return new String(digits);
+    }
+}
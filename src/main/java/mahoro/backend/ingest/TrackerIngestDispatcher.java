@@ -0,0 +1,82 @@
+package mahoro.backend.ingest;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.stereotype.Component;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import mahoro.backend.dto.LocationReportDTO;
+import mahoro.backend.service.LocationIngestLanes;
+import mahoro.backend.service.LocationTrackingService;
+import mahoro.backend.service.LocationWriteBehindService;
+
+// Hands points decoded by the socket listeners to the same ingestion path the HTTP endpoints use
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class TrackerIngestDispatcher {
+
+    private final LocationTrackingService locationTrackingService;
+    private final LocationWriteBehindService locationWriteBehindService;
+    private final LocationIngestLanes locationIngestLanes;
+
+    private final AtomicLong dispatched = new AtomicLong();
+    private final AtomicLong stored = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    public void dispatch(List<LocationReportDTO> reports) {
+        if (reports.isEmpty()) {
+            return;
+        }
+        dispatched.addAndGet(reports.size());
+
+        if (locationWriteBehindService.isEnabled()) {
+            for (LocationReportDTO report : reports) {
+                try {
+                    locationWriteBehindService.submit(report);
+                } catch (Exception e) {
+                    failed.incrementAndGet();
+                    log.warn("Dropping tracker point for {}: {}", report.imei(), e.getMessage());
+                }
+            }
+            return;
+        }
+        try {
+            // A full lane blocks the listener thread, which in turn stops reading from the sockets
+            for (Map.Entry<Integer, List<LocationReportDTO>> part : locationIngestLanes.partition(reports).entrySet()) {
+                locationIngestLanes.execute(part.getKey(), () -> store(part.getValue()));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Interrupted while queueing tracker points");
+        }
+    }
+
+    private void store(List<LocationReportDTO> reports) {
+        try {
+            stored.addAndGet(locationTrackingService.reportLocations(reports).size());
+        } catch (Exception e) {
+            if (reports.size() == 1) {
+                failed.incrementAndGet();
+                log.warn("Dropping tracker point for {}: {}", reports.get(0).imei(), e.getMessage());
+                return;
+            }
+            // One unknown IMEI must not cost the rest of the frames that arrived with it
+            for (LocationReportDTO report : reports) {
+                store(List.of(report));
+            }
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("dispatched", dispatched.get());
+        stats.put("stored", stored.get());
+        stats.put("failed", failed.get());
+        return stats;
+    }
+}
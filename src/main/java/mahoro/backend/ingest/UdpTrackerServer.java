@@ -0,0 +1,283 @@
+package mahoro.backend.ingest;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import mahoro.backend.dto.LocationReportDTO;
+
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class UdpTrackerServer {
+
+    private static final int MAX_DATAGRAM = 1472;
+    private static final int RECENT_FIXES = 8;
+    private static final long IDLE_MILLIS = 60_000;
+
+    private final TrackerIngestDispatcher dispatcher;
+
+    @Value("${tracking.udp.enabled:false}")
+    private boolean enabled;
+
+    @Value("${tracking.udp.host:0.0.0.0}")
+    private String host;
+
+    @Value("${tracking.udp.port:5024}")
+    private int port;
+
+    @Value("${tracking.udp.receive-threads:2}")
+    private int receiveThreads;
+
+    @Value("${tracking.udp.max-datagrams-per-second:20}")
+    private int maxDatagramsPerSecond;
+
+    @Value("${tracking.udp.max-sources:100000}")
+    private int maxSources;
+
+    private final List<DatagramChannel> channels = new ArrayList<>();
+    private final List<Thread> receivers = new ArrayList<>();
+    private volatile boolean running;
+
+    private final Map<InetAddress, SourceWindow> sources = new ConcurrentHashMap<>();
+    private final Map<String, RecentFixes> recentFixes = new ConcurrentHashMap<>();
+
+    private final AtomicLong datagrams = new AtomicLong();
+    private final AtomicLong frames = new AtomicLong();
+    private final AtomicLong malformed = new AtomicLong();
+    private final AtomicLong rateLimited = new AtomicLong();
+    private final AtomicLong duplicates = new AtomicLong();
+    private final AtomicLong outOfOrder = new AtomicLong();
+    private final AtomicLong untracked = new AtomicLong();
+    private final AtomicLong sourcesFull = new AtomicLong();
+
+    // Fixed one-second window per sender address
+    private static final class SourceWindow {
+        volatile long windowStart;
+        int count;
+    }
+
+    // Last few fix times per IMEI, to recognise datagrams the network delivered twice
+    private static final class RecentFixes {
+        final long[] timestamps = new long[RECENT_FIXES];
+        int next;
+        long newest = Long.MIN_VALUE;
+        volatile long lastSeen;
+
+        RecentFixes() {
+            Arrays.fill(timestamps, Long.MIN_VALUE);
+        }
+    }
+
+    @PostConstruct
+    void start() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        InetSocketAddress address = new InetSocketAddress(host, port);
+        DatagramChannel first = DatagramChannel.open();
+        boolean reusePort = first.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT);
+        if (reusePort) {
+            first.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+        }
+        first.bind(address);
+        channels.add(first);
+
+        running = true;
+        for (int i = 0; i < receiveThreads; i++) {
+            // With SO_REUSEPORT the kernel spreads datagrams over one socket per thread;
+            // otherwise the threads share a single socket
+            DatagramChannel channel = first;
+            if (i > 0 && reusePort) {
+                channel = DatagramChannel.open();
+                channel.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+                channel.bind(new InetSocketAddress(host, getLocalPort()));
+                channels.add(channel);
+            }
+            DatagramChannel receiveChannel = channel;
+            Thread receiver = new Thread(() -> receiveLoop(receiveChannel), "tracker-udp-" + i);
+            receivers.add(receiver);
+            receiver.start();
+        }
+        log.info("Tracker UDP listener started on {}:{} with {} receive threads", host, getLocalPort(), receiveThreads);
+    }
+
+    public int getLocalPort() {
+        return channels.isEmpty() ? -1 : channels.get(0).socket().getLocalPort();
+    }
+
+    private void receiveLoop(DatagramChannel channel) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(MAX_DATAGRAM);
+        while (running) {
+            try {
+                buffer.clear();
+                SocketAddress sender = channel.receive(buffer);
+                if (sender == null) {
+                    continue;
+                }
+                buffer.flip();
+                datagrams.incrementAndGet();
+                handle(buffer, ((InetSocketAddress) sender).getAddress());
+            } catch (ClosedChannelException e) {
+                break;
+            } catch (IOException e) {
+                if (running) {
+                    log.warn("Tracker UDP receive failed: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void handle(ByteBuffer buffer, InetAddress sender) {
+        if (!admit(sender)) {
+            return;
+        }
+        int length = buffer.remaining();
+        if (length == 0 || length % TrackerFrameCodec.FRAME_LENGTH != 0) {
+            malformed.incrementAndGet();
+            return;
+        }
+
+        List<LocationReportDTO> reports = new ArrayList<>(length / TrackerFrameCodec.FRAME_LENGTH);
+        for (int offset = 0; offset < length; offset += TrackerFrameCodec.FRAME_LENGTH) {
+            TrackerFrame frame;
+            try {
+                frame = TrackerFrameCodec.decode(buffer, offset);
+            } catch (IllegalArgumentException e) {
+                malformed.incrementAndGet();
+                continue;
+            }
+            frames.incrementAndGet();
+            if (isDuplicate(frame)) {
+                duplicates.incrementAndGet();
+                continue;
+            }
+            reports.add(frame.toReport());
+        }
+        dispatcher.dispatch(reports);
+    }
+
+    private boolean admit(InetAddress sender) {
+        long now = System.currentTimeMillis();
+        SourceWindow window = sources.get(sender);
+        if (window == null) {
+            if (sources.size() >= maxSources) {
+                // Unknown senders wait for evictIdle to free a slot, so a spoofed-source flood
+                // can neither grow the map nor cost a scan per datagram
+                sourcesFull.incrementAndGet();
+                return false;
+            }
+            window = sources.computeIfAbsent(sender, s -> new SourceWindow());
+        }
+        synchronized (window) {
+            if (now - window.windowStart >= 1000) {
+                window.windowStart = now;
+                window.count = 0;
+            }
+            if (++window.count <= maxDatagramsPerSecond) {
+                return true;
+            }
+        }
+        rateLimited.incrementAndGet();
+        return false;
+    }
+
+    private boolean isDuplicate(TrackerFrame frame) {
+        long now = System.currentTimeMillis();
+        RecentFixes recent = recentFixes.get(frame.imei());
+        if (recent == null) {
+            if (recentFixes.size() >= maxSources) {
+                // Let this one through unchecked until evictIdle frees a slot, rather than
+                // forget active devices and admit their retransmits
+                untracked.incrementAndGet();
+                return false;
+            }
+            recent = recentFixes.computeIfAbsent(frame.imei(), imei -> new RecentFixes());
+        }
+        recent.lastSeen = now;
+        long timestamp = frame.timestampMillis();
+        synchronized (recent) {
+            for (long seen : recent.timestamps) {
+                if (seen == timestamp) {
+                    return true;
+                }
+            }
+            // Late datagrams are still stored; history is ordered by fix time, not arrival
+            if (timestamp < recent.newest) {
+                outOfOrder.incrementAndGet();
+            } else {
+                recent.newest = timestamp;
+            }
+            recent.timestamps[recent.next] = timestamp;
+            recent.next = (recent.next + 1) % RECENT_FIXES;
+            return false;
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${tracking.udp.cleanup-interval-ms:10000}")
+    void evictIdle() {
+        long now = System.currentTimeMillis();
+        sources.values().removeIf(w -> now - w.windowStart > IDLE_MILLIS);
+        recentFixes.values().removeIf(r -> now - r.lastSeen > IDLE_MILLIS);
+    }
+
+    @PreDestroy
+    void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        for (DatagramChannel channel : channels) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.debug("Error closing tracker UDP channel: {}", e.getMessage());
+            }
+        }
+        for (Thread receiver : receivers) {
+            try {
+                receiver.join(5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        log.info("Tracker UDP listener stopped");
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("port", getLocalPort());
+        stats.put("datagrams", datagrams.get());
+        stats.put("frames", frames.get());
+        stats.put("droppedMalformed", malformed.get());
+        stats.put("droppedRateLimited", rateLimited.get());
+        stats.put("droppedDuplicates", duplicates.get());
+        stats.put("outOfOrder", outOfOrder.get());
+        stats.put("sources", sources.size());
+        stats.put("droppedSourcesFull", sourcesFull.get());
+        stats.put("trackedImeis", recentFixes.size());
+        stats.put("untrackedFrames", untracked.get());
+        return stats;
+    }
+}
@@ -2,6 +2,10 @@ package mahoro.backend.model;
 
 public enum AlertType {
     GEOFENCE_VIOLATION,
+    GEOFENCE_REENTRY,
     LOW_BATTERY,
-    MOVEMENT_DETECTED
+    MOVEMENT_DETECTED,
+    OVER_SPEED,
+    DEVICE_STOPPED,
+    DEVICE_OFFLINE
 }
\ No newline at end of file
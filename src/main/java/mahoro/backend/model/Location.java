@@ -48,6 +48,11 @@ public class Location {
     @Column(name = "center_longitude")
     private Double centerLongitude;
 
+    // GeoJSON Polygon or MultiPolygon geometry
+    @Column(name = "boundary", columnDefinition = "text")
+    @JsonIgnore
+    private String boundary;
+
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "parent_id")
     @JsonIgnore
@@ -105,6 +110,14 @@ public class Location {
         this.centerLongitude = centerLongitude;
     }
 
+    public String getBoundary() {
+        return boundary;
+    }
+
+    public void setBoundary(String boundary) {
+        this.boundary = boundary;
+    }
+
     public Set<Location> getChildren() {
         return children;
     }
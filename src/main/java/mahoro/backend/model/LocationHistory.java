@@ -10,7 +10,8 @@ import com.fasterxml.jackson.annotation.JsonBackReference;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 
 @Entity
-@Table(name = "location_history")
+@Table(name = "location_history",
+        indexes = @Index(name = "idx_location_history_device_timestamp", columnList = "device_id, timestamp"))
 public class LocationHistory {
 
     @Id
@@ -25,6 +26,13 @@ public class LocationHistory {
 
     private String recordedAddress;
 
+    // Derived from the previous fix at ingest; null for a device's first fix or a late one
+    @Column(name = "speed_kmh")
+    private Double speedKmh;
+
+    @Column(name = "heading_degrees")
+    private Double headingDegrees;
+
    
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "device_id", nullable = false)
@@ -99,6 +107,26 @@ public class LocationHistory {
     }
 
 
+    public Double getSpeedKmh() {
+        return speedKmh;
+    }
+
+
+    public void setSpeedKmh(Double speedKmh) {
+        this.speedKmh = speedKmh;
+    }
+
+
+    public Double getHeadingDegrees() {
+        return headingDegrees;
+    }
+
+
+    public void setHeadingDegrees(Double headingDegrees) {
+        this.headingDegrees = headingDegrees;
+    }
+
+
     public Device getDevice() {
         return device;
     }
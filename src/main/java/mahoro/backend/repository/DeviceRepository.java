@@ -1,5 +1,6 @@
 package mahoro.backend.repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -19,6 +20,8 @@ public interface DeviceRepository extends JpaRepository<Device, UUID>, JpaSpecif
     
     Optional<Device> findByImei(String imei);
     
+    List<Device> findByImeiIn(Collection<String> imeis);
+    
     Optional<Device> findBySerialNumber(String serialNumber);
     
     boolean existsByImei(String imei);
@@ -41,4 +44,10 @@ public interface DeviceRepository extends JpaRepository<Device, UUID>, JpaSpecif
     
     @Query("SELECT COUNT(d) FROM Device d WHERE d.user.userId = :userId")
     long countByUserId(@Param("userId") UUID userId);
+
+    @Query("SELECT d.deviceId, d.user.userId FROM Device d WHERE d.user IS NOT NULL")
+    List<Object[]> findDeviceOwnerIds();
+
+    @Query("SELECT d.deviceId, u.userId, d.lastReportedAt FROM Device d LEFT JOIN d.user u")
+    List<Object[]> findPresence();
 }
\ No newline at end of file
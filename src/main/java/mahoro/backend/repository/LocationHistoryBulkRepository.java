@@ -0,0 +1,14 @@
+package mahoro.backend.repository;
+
+import java.util.List;
+
+import mahoro.backend.model.LocationHistory;
+
+public interface LocationHistoryBulkRepository {
+
+    /**
+     * Inserts new location rows straight through JDBC, bypassing the persistence context. Ids are
+     * assigned here and set on the given objects, which are returned but not managed.
+     */
+    List<LocationHistory> insertAll(List<LocationHistory> locations);
+}
@@ -0,0 +1,166 @@
+package mahoro.backend.repository;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.UUID;
+
+import javax.sql.DataSource;
+
+import org.postgresql.PGConnection;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import mahoro.backend.model.LocationHistory;
+
+@Slf4j
+@RequiredArgsConstructor
+public class LocationHistoryBulkRepositoryImpl implements LocationHistoryBulkRepository {
+
+    private static final String COLUMNS =
+            "location_history_id, latitude, longitude, timestamp, recorded_address, speed_kmh, heading_degrees, "
+                    + "device_id, person_id";
+
+    private static final String COPY_SQL = "COPY location_history (" + COLUMNS + ") FROM STDIN (FORMAT BINARY)";
+
+    private static final String INSERT_SQL = "INSERT INTO location_history (" + COLUMNS + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final byte[] COPY_SIGNATURE = {'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xFF, '\r', '\n', 0};
+
+    // Seconds between 1970-01-01 and 2000-01-01, the epoch of PostgreSQL's binary timestamps
+    private static final long POSTGRES_EPOCH_SECONDS = 946_684_800L;
+
+    private final DataSource dataSource;
+
+    // Below this size the COPY round trip costs more than it saves
+    @Value("${tracking.bulk-insert.copy-min-rows:500}")
+    private int copyMinRows = 500;
+
+    private volatile Boolean postgres;
+
+    @Override
+    public List<LocationHistory> insertAll(List<LocationHistory> locations) {
+        if (locations.isEmpty()) {
+            return locations;
+        }
+        for (LocationHistory location : locations) {
+            if (location.getLocationHistoryId() == null) {
+                location.setLocationHistoryId(UUID.randomUUID());
+            }
+        }
+        // Joins the surrounding transaction, if any, so the rows commit or roll back with it
+        Connection connection = DataSourceUtils.getConnection(dataSource);
+        try {
+            if (locations.size() >= copyMinRows && isPostgres(connection)) {
+                copy(connection.unwrap(PGConnection.class), locations);
+            } else {
+                batchInsert(connection, locations);
+            }
+        } catch (SQLException | IOException e) {
+            throw new RuntimeException("Bulk insert of " + locations.size() + " locations failed: " + e.getMessage(), e);
+        } finally {
+            DataSourceUtils.releaseConnection(connection, dataSource);
+        }
+        return locations;
+    }
+
+    private boolean isPostgres(Connection connection) throws SQLException {
+        if (postgres == null) {
+            postgres = connection.isWrapperFor(PGConnection.class);
+            log.info("Bulk location inserts will use {}", postgres ? "binary COPY" : "batched INSERT");
+        }
+        return postgres;
+    }
+
+    private void copy(PGConnection connection, List<LocationHistory> locations) throws SQLException, IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(32 + locations.size() * 96);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.write(COPY_SIGNATURE);
+        out.writeInt(0);
+        out.writeInt(0);
+        for (LocationHistory location : locations) {
+            out.writeShort(9);
+            writeUuid(out, location.getLocationHistoryId());
+            writeDouble(out, location.getLatitude());
+            writeDouble(out, location.getLongitude());
+            writeTimestamp(out, location.getTimestamp());
+            writeText(out, location.getRecordedAddress());
+            writeDouble(out, location.getSpeedKmh());
+            writeDouble(out, location.getHeadingDegrees());
+            writeUuid(out, location.getDevice().getDeviceId());
+            writeUuid(out, location.getRecordedBy() != null ? location.getRecordedBy().getUserId() : null);
+        }
+        out.writeShort(-1);
+        out.flush();
+
+        long rows = connection.getCopyAPI().copyIn(COPY_SQL, new ByteArrayInputStream(bytes.toByteArray()));
+        log.debug("Copied {} locations", rows);
+    }
+
+    // On the same connection as COPY, so both paths join the surrounding transaction the same way
+    private void batchInsert(Connection connection, List<LocationHistory> locations) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement(INSERT_SQL)) {
+            for (LocationHistory location : locations) {
+                ps.setObject(1, location.getLocationHistoryId());
+                ps.setObject(2, location.getLatitude(), Types.DOUBLE);
+                ps.setObject(3, location.getLongitude(), Types.DOUBLE);
+                ps.setTimestamp(4, Timestamp.valueOf(location.getTimestamp()));
+                ps.setString(5, location.getRecordedAddress());
+                ps.setObject(6, location.getSpeedKmh(), Types.DOUBLE);
+                ps.setObject(7, location.getHeadingDegrees(), Types.DOUBLE);
+                ps.setObject(8, location.getDevice().getDeviceId());
+                ps.setObject(9, location.getRecordedBy() != null ? location.getRecordedBy().getUserId() : null);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+
+    private static void writeUuid(DataOutputStream out, UUID value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(16);
+        out.writeLong(value.getMostSignificantBits());
+        out.writeLong(value.getLeastSignificantBits());
+    }
+
+    private static void writeDouble(DataOutputStream out, Double value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(8);
+        out.writeDouble(value);
+    }
+
+    // timestamp without time zone: microseconds since 2000-01-01 of the wall-clock value
+    private static void writeTimestamp(DataOutputStream out, LocalDateTime value) throws IOException {
+        out.writeInt(8);
+        long seconds = value.toEpochSecond(ZoneOffset.UTC) - POSTGRES_EPOCH_SECONDS;
+        out.writeLong(seconds * 1_000_000L + value.getNano() / 1_000);
+    }
+
+    private static void writeText(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(encoded.length);
+        out.write(encoded);
+    }
+}
@@ -15,7 +15,7 @@ import org.springframework.stereotype.Repository;
 import mahoro.backend.model.LocationHistory;
 
 @Repository
-public interface LocationHistoryRepository extends JpaRepository<LocationHistory, UUID> {
+public interface LocationHistoryRepository extends JpaRepository<LocationHistory, UUID>, LocationHistoryBulkRepository {
     
     Optional<LocationHistory> findFirstByDevice_DeviceIdOrderByTimestampDesc(UUID deviceId);
     
@@ -44,6 +44,14 @@ public interface LocationHistoryRepository extends JpaRepository<LocationHistory
           List<LocationHistory> findByDevice_DeviceIdOrderByTimestampDesc(UUID deviceId);
     
     Optional<LocationHistory> findTopByDevice_DeviceIdOrderByTimestampDesc(UUID deviceId);
+
+    // Newest row of every device, as plain columns so no entities or devices are loaded. DISTINCT ON
+    // walks the (device_id, timestamp) index once instead of running a MAX subquery per row, and
+    // returns exactly one row per device even when two fixes share the newest timestamp.
+    @Query(value = "SELECT DISTINCT ON (device_id) device_id, location_history_id, latitude, longitude, timestamp, " +
+           "recorded_address, speed_kmh, heading_degrees FROM location_history " +
+           "ORDER BY device_id, timestamp DESC", nativeQuery = true)
+    List<Object[]> findLatestPositions();
     
     List<LocationHistory> findByDevice_DeviceIdAndTimestampAfterOrderByTimestampDesc(
             UUID deviceId, LocalDateTime timestamp);
@@ -28,6 +28,15 @@ public interface LocationRepository extends JpaRepository<Location, UUID>, JpaSp
     Page<Location> findByType(LocationType type, Pageable pageable);
 
     boolean existsByNameAndType(String name, LocationType type);
+
+    List<Location> findAllByName(String name);
+
+    @Query("SELECT l FROM Location l WHERE (l.centerLatitude IS NOT NULL AND l.centerLongitude IS NOT NULL) " +
+           "OR l.boundary IS NOT NULL")
+    List<Location> findAllFenced();
+
+    @Query("SELECT l.locationId, p.locationId, l.type, l.name FROM Location l LEFT JOIN l.parent p")
+    List<Object[]> findHierarchy();
     
     @Query("SELECT new mahoro.backend.dto.LocationDTO(l.locationId, l.name, l.type, l.centerLatitude, l.centerLongitude, l.parent.locationId) FROM Location l WHERE l.parent.locationId = :parentId")
     List<LocationDTO> findChildrenDTOs(@Param("parentId") UUID parentId);
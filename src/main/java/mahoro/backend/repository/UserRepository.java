@@ -27,6 +27,9 @@ public interface UserRepository extends JpaRepository<User, UUID>, JpaSpecificat
 
     Page<User> findByAssignedLocation(Location location, Pageable pageable);
 
+    @Query("SELECT u.userId, u.assignedLocation.locationId FROM User u WHERE u.assignedLocation IS NOT NULL")
+    List<Object[]> findAssignedLocationIds();
+
     boolean existsByEmail(String email);
 
     // Fix this method - it should return Optional<User>
@@ -0,0 +1,43 @@
+package mahoro.backend.service;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Defers changes to in-memory state until the surrounding transaction has committed, so that a
+ * rolled-back write never shows up in a cache or index and readers never see rows that are not
+ * in the database yet. Outside a transaction the change is applied at once.
+ */
+@Slf4j
+final class AfterCommit {
+
+    // Set while deferred changes run: a synchronization registered then would never be called,
+    // so a change made from inside another one is applied directly
+    private static final ThreadLocal<Boolean> APPLYING = ThreadLocal.withInitial(() -> false);
+
+    private AfterCommit() {
+    }
+
+    static void run(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive() || APPLYING.get()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                APPLYING.set(true);
+                try {
+                    action.run();
+                } catch (RuntimeException e) {
+                    // The data is committed; a failed cache update must not skip the others or fail the request
+                    log.error("Failed to apply a committed change to in-memory state: {}", e.getMessage(), e);
+                } finally {
+                    APPLYING.set(false);
+                }
+            }
+        });
+    }
+}
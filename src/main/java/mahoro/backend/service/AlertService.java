@@ -2,6 +2,7 @@ package mahoro.backend.service;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -68,6 +69,27 @@ public class AlertService {
     public TrackingAlert createLowBatteryAlert(Device device, String message) {
         return createAlert(device.getDeviceId(), message, AlertType.LOW_BATTERY, null, null);
     }
+
+    /**
+     * One DEVICE_OFFLINE alert per device, saved in a single batch. Devices deleted in the meantime
+     * are skipped.
+     */
+    @Transactional
+    public List<TrackingAlert> createOfflineAlerts(Collection<UUID> deviceIds, String message) {
+        LocalDateTime now = LocalDateTime.now();
+        List<TrackingAlert> alerts = new ArrayList<>(deviceIds.size());
+        for (Device device : deviceRepository.findAllById(deviceIds)) {
+            TrackingAlert alert = new TrackingAlert();
+            alert.setDevice(device);
+            alert.setMessage(message);
+            alert.setAlertType(AlertType.DEVICE_OFFLINE);
+            alert.setCreatedAt(now);
+            alert.setResolved(false);
+            alerts.add(alert);
+        }
+        log.info("Creating {} offline alerts: {}", alerts.size(), message);
+        return alertRepository.saveAll(alerts);
+    }
     
 
     
@@ -131,12 +153,16 @@ public class AlertService {
         long geofence = alerts.stream().filter(a -> a.getAlertType() == AlertType.GEOFENCE_VIOLATION).count();
         long battery = alerts.stream().filter(a -> a.getAlertType() == AlertType.LOW_BATTERY).count();
         long movement = alerts.stream().filter(a -> a.getAlertType() == AlertType.MOVEMENT_DETECTED).count();
+        long overSpeed = alerts.stream().filter(a -> a.getAlertType() == AlertType.OVER_SPEED).count();
+        long offline = alerts.stream().filter(a -> a.getAlertType() == AlertType.DEVICE_OFFLINE).count();
         
         stats.put("total", total);
         stats.put("unresolved", unresolved);
         stats.put("geofence", geofence);
         stats.put("battery", battery);
         stats.put("movement", movement);
+        stats.put("overSpeed", overSpeed);
+        stats.put("offline", offline);
         
         return stats;
     }
@@ -0,0 +1,136 @@
+package mahoro.backend.service;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import lombok.extern.slf4j.Slf4j;
+import mahoro.backend.state.FleetStateTable;
+
+/**
+ * Latest battery level per device, kept in memory only as 12-byte rows of a FleetStateTable.
+ * A device is flagged low when it reports at or below the low threshold and cleared once it
+ * reports at or above the recovery threshold, so a level wavering around the threshold, or a dying
+ * device reporting every few seconds, raises one alert per discharge rather than one per report.
+ * Ingest works on a {@link Pending} copy of a device's row and writes it back after commit.
+ */
+@Slf4j
+@Service
+public class BatteryMonitor {
+
+    public enum Crossing { NONE, LOW, RECOVERED }
+
+    public record Reading(int percent, LocalDateTime timestamp) {}
+
+    @Value("${tracking.battery.low-percent:15}")
+    private int lowPercent = 15;
+
+    @Value("${tracking.battery.recover-percent:25}")
+    private int recoverPercent = 25;
+
+    // Row layout in the state table: percent with the LOW bit above it, and the reading time as a
+    // long of epoch millis
+    private static final int LEVEL = 0;
+    private static final int TIME = 1;
+    private static final int WIDTH = 3;
+    private static final int LOW = 1 << 8;
+    private static final int PERCENT = 0xFF;
+
+    private final FleetStateTable states = new FleetStateTable(WIDTH, 0);
+
+    /**
+     * A device's battery state copied out of the table. Readings fed to it change only the copy
+     * until apply writes it back.
+     */
+    public final class Pending {
+        private final UUID deviceId;
+        private final FleetStateTable.Row row;
+        private boolean fresh;
+
+        private Pending(UUID deviceId, FleetStateTable.Row row) {
+            this.deviceId = deviceId;
+            this.row = row;
+            this.fresh = row.isNew();
+        }
+
+        public Crossing update(Reading reading) {
+            Crossing crossing = advance(row, fresh, reading);
+            fresh = false;
+            return crossing;
+        }
+
+        public void apply() {
+            states.put(deviceId, row);
+        }
+    }
+
+    private final AtomicLong readings = new AtomicLong();
+    private final AtomicLong lowCrossings = new AtomicLong();
+    private final AtomicLong recoveries = new AtomicLong();
+
+    /**
+     * Records a reading and returns the threshold it crosses, if any. Readings older than the latest
+     * one are ignored.
+     */
+    public Crossing update(UUID deviceId, Reading reading) {
+        return states.compute(deviceId, row -> advance(row, row.isNew(), reading));
+    }
+
+    public Pending begin(UUID deviceId) {
+        return new Pending(deviceId, states.copy(deviceId));
+    }
+
+    private Crossing advance(FleetStateTable.Row row, boolean fresh, Reading reading) {
+        readings.incrementAndGet();
+        long time = reading.timestamp().toInstant(ZoneOffset.UTC).toEpochMilli();
+        if (!fresh && time < row.getLong(TIME)) {
+            return Crossing.NONE;
+        }
+        boolean low = !fresh && (row.getInt(LEVEL) & LOW) != 0;
+        Crossing crossing = Crossing.NONE;
+        if (!low && reading.percent() <= lowPercent) {
+            low = true;
+            lowCrossings.incrementAndGet();
+            crossing = Crossing.LOW;
+        } else if (low && reading.percent() >= recoverPercent) {
+            low = false;
+            recoveries.incrementAndGet();
+            crossing = Crossing.RECOVERED;
+        }
+        row.setInt(LEVEL, reading.percent() | (low ? LOW : 0));
+        row.setLong(TIME, time);
+        return crossing;
+    }
+
+    public Reading latest(UUID deviceId) {
+        int[] row = new int[WIDTH];
+        if (!states.read(deviceId, row)) {
+            return null;
+        }
+        return new Reading(row[LEVEL] & PERCENT,
+                LocalDateTime.ofInstant(Instant.ofEpochMilli(FleetStateTable.getLong(row, TIME)), ZoneOffset.UTC));
+    }
+
+    public void forget(UUID deviceId) {
+        states.remove(deviceId);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("trackedDevices", states.size());
+        stats.put("low", states.count(LEVEL, level -> (level & LOW) != 0));
+        stats.put("readings", readings.get());
+        stats.put("lowCrossings", lowCrossings.get());
+        stats.put("recoveries", recoveries.get());
+        stats.put("lowPercent", lowPercent);
+        stats.put("recoverPercent", recoverPercent);
+        return stats;
+    }
+}
@@ -0,0 +1,140 @@
+package mahoro.backend.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import mahoro.backend.model.Device;
+import mahoro.backend.repository.DeviceRepository;
+
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class DeviceImeiCache {
+
+    private final DeviceRepository deviceRepository;
+
+    @Value("${tracking.imei-cache.max-size:100000}")
+    private int maxSize = 100000;
+
+    @Value("${tracking.imei-cache.ttl-seconds:600}")
+    private long ttlSeconds = 600;
+
+    @Value("${tracking.imei-cache.negative-ttl-seconds:60}")
+    private long negativeTtlSeconds = 60;
+
+    // A null deviceId marks an IMEI that is known not to exist
+    private record Entry(UUID deviceId, long expiresAt) {}
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong negativeHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public Optional<UUID> resolve(String imei) {
+        if (imei == null) {
+            return Optional.empty();
+        }
+        long now = System.nanoTime();
+        Entry entry = entries.get(imei);
+        if (entry != null && entry.expiresAt() - now > 0) {
+            if (entry.deviceId() == null) {
+                negativeHits.incrementAndGet();
+            } else {
+                hits.incrementAndGet();
+            }
+            return Optional.ofNullable(entry.deviceId());
+        }
+
+        misses.incrementAndGet();
+        UUID deviceId = deviceRepository.findByImei(imei).map(Device::getDeviceId).orElse(null);
+        put(imei, deviceId, now);
+        return Optional.ofNullable(deviceId);
+    }
+
+    public Map<String, UUID> resolveAll(Collection<String> imeis) {
+        Map<String, UUID> resolved = new HashMap<>();
+        List<String> missing = new ArrayList<>();
+        long now = System.nanoTime();
+
+        for (String imei : imeis) {
+            Entry entry = entries.get(imei);
+            if (entry != null && entry.expiresAt() - now > 0) {
+                if (entry.deviceId() == null) {
+                    negativeHits.incrementAndGet();
+                } else {
+                    hits.incrementAndGet();
+                    resolved.put(imei, entry.deviceId());
+                }
+            } else {
+                missing.add(imei);
+            }
+        }
+
+        if (!missing.isEmpty()) {
+            misses.addAndGet(missing.size());
+            for (Device device : deviceRepository.findByImeiIn(missing)) {
+                resolved.put(device.getImei(), device.getDeviceId());
+            }
+            for (String imei : missing) {
+                put(imei, resolved.get(imei), now);
+            }
+        }
+        return resolved;
+    }
+
+    public void invalidate(String imei) {
+        if (imei != null) {
+            entries.remove(imei);
+        }
+    }
+
+    public void evictDevice(UUID deviceId) {
+        entries.values().removeIf(entry -> deviceId.equals(entry.deviceId()));
+    }
+
+    private void put(String imei, UUID deviceId, long now) {
+        long ttl = deviceId != null ? ttlSeconds : negativeTtlSeconds;
+        entries.put(imei, new Entry(deviceId, now + TimeUnit.SECONDS.toNanos(ttl)));
+        if (entries.size() > maxSize) {
+            trim(now);
+        }
+    }
+
+    private void trim(long now) {
+        // Expired entries go first; if that is not enough, drop arbitrary entries down to 90% of capacity
+        entries.values().removeIf(entry -> entry.expiresAt() - now <= 0);
+        Iterator<String> it = entries.keySet().iterator();
+        int target = maxSize - maxSize / 10;
+        while (entries.size() > target && it.hasNext()) {
+            it.next();
+            it.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("size", entries.size());
+        stats.put("hits", hits.get());
+        stats.put("negativeHits", negativeHits.get());
+        stats.put("misses", misses.get());
+        stats.put("evictions", evictions.get());
+        return stats;
+    }
+}
@@ -1,6 +1,7 @@
 package mahoro.backend.service;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -26,6 +27,16 @@ public class DeviceService {
     
     private final DeviceRepository deviceRepository;
     private final UserRepository userRepository;
+    private final LastSeenTracker lastSeenTracker;
+    private final DeviceImeiCache deviceImeiCache;
+    private final DuplicateReportFilter duplicateReportFilter;
+    private final PointThinningFilter pointThinningFilter;
+    private final GeofenceIndex geofenceIndex;
+    private final GeofenceStateTracker geofenceStateTracker;
+    private final MotionTracker motionTracker;
+    private final BatteryMonitor batteryMonitor;
+    private final LatestPositionCache latestPositionCache;
+    private final PresenceTracker presenceTracker;
     
     @Transactional
     public Device createDevice(Device device) {
@@ -59,6 +70,13 @@ public class DeviceService {
             }
             
             Device savedDevice = deviceRepository.save(device);
+            // Drop any negative entry left by a tracker that reported before it was registered; not before
+            // the commit, or a lookup in between would cache the old answer again
+            AfterCommit.run(() -> deviceImeiCache.invalidate(savedDevice.getImei()));
+            UUID ownerId = savedDevice.getUser() != null ? savedDevice.getUser().getUserId() : null;
+            geofenceIndex.deviceAssigned(savedDevice.getDeviceId(), ownerId);
+            // Per-user counts move only with a committed row
+            AfterCommit.run(() -> presenceTracker.deviceAssigned(savedDevice.getDeviceId(), ownerId));
             log.info("Device created successfully: {}", savedDevice.getDeviceId());
             return savedDevice;
             
@@ -139,13 +157,8 @@ public class DeviceService {
     public Map<String, Object> getDeviceStats(UUID userId) {
         Map<String, Object> stats = new HashMap<>();
         
-        List<Device> devices = deviceRepository.findByUser_UserId(userId);
-        
-        long total = devices.size();
-        long online = devices.stream()
-            .filter(d -> d.getLastReportedAt() != null && 
-                        d.getLastReportedAt().isAfter(LocalDateTime.now().minusMinutes(5)))
-            .count();
+        long total = presenceTracker.deviceCount(userId);
+        long online = presenceTracker.onlineCount(userId);
         long offline = total - online;
         
         stats.put("total", total);
@@ -186,7 +199,13 @@ public class DeviceService {
                 if (deviceRepository.existsByImei(deviceDetails.getImei())) {
                     throw new RuntimeException("IMEI already exists: " + deviceDetails.getImei());
                 }
-                device.setImei(deviceDetails.getImei());
+                String oldImei = device.getImei();
+                String newImei = deviceDetails.getImei();
+                AfterCommit.run(() -> {
+                    deviceImeiCache.invalidate(oldImei);
+                    deviceImeiCache.invalidate(newImei);
+                });
+                device.setImei(newImei);
             }
             
             if (deviceDetails.getSerialNumber() != null && !deviceDetails.getSerialNumber().equals(device.getSerialNumber())) {
@@ -196,7 +215,11 @@ public class DeviceService {
                 device.setSerialNumber(deviceDetails.getSerialNumber());
             }
             
-            return deviceRepository.save(device);
+            Device savedDevice = deviceRepository.save(device);
+            UUID ownerId = savedDevice.getUser() != null ? savedDevice.getUser().getUserId() : null;
+            geofenceIndex.deviceAssigned(id, ownerId);
+            AfterCommit.run(() -> presenceTracker.deviceAssigned(id, ownerId));
+            return savedDevice;
         } catch (Exception e) {
             log.error("Error updating device {}: {}", id, e.getMessage());
             throw new RuntimeException("Failed to update device: " + e.getMessage());
@@ -205,10 +228,12 @@ public class DeviceService {
     
     public List<Device> getDevicesWithRecentActivity(UUID userId) {
         try {
-            List<Device> devices = deviceRepository.findByUser_UserId(userId);
+            List<Device> devices = new ArrayList<>(deviceRepository.findByUser_UserId(userId));
             devices.sort((d1, d2) -> {
-                LocalDateTime t1 = d1.getLastReportedAt() != null ? d1.getLastReportedAt() : LocalDateTime.MIN;
-                LocalDateTime t2 = d2.getLastReportedAt() != null ? d2.getLastReportedAt() : LocalDateTime.MIN;
+                LocalDateTime t1 = lastSeenTracker.getLastSeen(d1.getDeviceId(), d1.getLastReportedAt());
+                LocalDateTime t2 = lastSeenTracker.getLastSeen(d2.getDeviceId(), d2.getLastReportedAt());
+                t1 = t1 != null ? t1 : LocalDateTime.MIN;
+                t2 = t2 != null ? t2 : LocalDateTime.MIN;
                 return t2.compareTo(t1);
             });
             
@@ -227,6 +252,19 @@ public class DeviceService {
             }
             
             deviceRepository.deleteById(id);
+            geofenceIndex.deviceRemoved(id);
+            // Tracker state goes only once the delete has committed
+            AfterCommit.run(() -> {
+                lastSeenTracker.forget(id);
+                deviceImeiCache.evictDevice(id);
+                duplicateReportFilter.forget(id);
+                pointThinningFilter.forget(id);
+                geofenceStateTracker.forget(id);
+                motionTracker.forget(id);
+                batteryMonitor.forget(id);
+            });
+            latestPositionCache.forget(id);
+            AfterCommit.run(() -> presenceTracker.deviceRemoved(id));
             log.info("Device deleted: {}", id);
         } catch (Exception e) {
             log.error("Error deleting device {}: {}", id, e.getMessage());
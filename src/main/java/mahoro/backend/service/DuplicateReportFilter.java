@@ -0,0 +1,168 @@
+package mahoro.backend.service;
+
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import lombok.extern.slf4j.Slf4j;
+import mahoro.backend.dto.LocationReportDTO;
+
+/**
+ * Recognises retransmitted reports without going to the database. Each device keeps two separate
+ * windows. Sequence numbers go into a high-water mark plus a 64-bit window of the numbers just
+ * below it, in the style of an anti-replay window; a sequence that falls below the window is never
+ * treated as a duplicate, since there is no record left to compare it against. Reports without a
+ * sequence are matched by their client timestamp to the millisecond against the last few
+ * timestamps the device sent, so trackers reporting several fixes a second keep every fix. Reports
+ * carrying neither are never treated as duplicates.
+ */
+@Slf4j
+@Service
+public class DuplicateReportFilter {
+
+    private static final int WINDOW = Long.SIZE;
+    private static final int RECENT_TIMESTAMPS = 16;
+
+    @Value("${tracking.dedup.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${tracking.dedup.max-devices:100000}")
+    private int maxDevices = 100000;
+
+    private static final class DeviceWindows {
+        long highWater = Long.MIN_VALUE;
+        // Bit i set means sequence highWater - i has been seen
+        long seen;
+        // Epoch millis of the latest timestamp-only reports, overwritten round-robin
+        long[] timestamps;
+        int nextTimestamp;
+    }
+
+    private final Map<UUID, DeviceWindows> windows = new ConcurrentHashMap<>();
+
+    private final AtomicLong duplicates = new AtomicLong();
+    private final AtomicLong belowWindow = new AtomicLong();
+
+    /**
+     * Records the report for the device and returns false if it had already been recorded.
+     */
+    public boolean markNew(UUID deviceId, LocationReportDTO report) {
+        if (!enabled || (report.sequence() == null && report.timestamp() == null)) {
+            return true;
+        }
+        DeviceWindows window = windows.get(deviceId);
+        if (window == null) {
+            if (windows.size() >= maxDevices) {
+                trim();
+            }
+            window = windows.computeIfAbsent(deviceId, id -> new DeviceWindows());
+        }
+
+        boolean fresh;
+        synchronized (window) {
+            fresh = report.sequence() != null
+                    ? markSequence(window, report.sequence())
+                    : markTimestamp(window, millisOf(report));
+        }
+        if (!fresh) {
+            duplicates.incrementAndGet();
+        }
+        return fresh;
+    }
+
+    private boolean markSequence(DeviceWindows window, long sequence) {
+        if (window.highWater == Long.MIN_VALUE || sequence > window.highWater) {
+            long shift = window.highWater == Long.MIN_VALUE ? WINDOW : sequence - window.highWater;
+            window.seen = shift >= WINDOW || shift < 0 ? 1L : (window.seen << shift) | 1L;
+            window.highWater = sequence;
+            return true;
+        }
+        long offset = window.highWater - sequence;
+        if (offset >= WINDOW || offset < 0) {
+            belowWindow.incrementAndGet();
+            return true;
+        }
+        long bit = 1L << offset;
+        if ((window.seen & bit) != 0) {
+            return false;
+        }
+        window.seen |= bit;
+        return true;
+    }
+
+    private static boolean markTimestamp(DeviceWindows window, long millis) {
+        if (window.timestamps == null) {
+            window.timestamps = new long[RECENT_TIMESTAMPS];
+            Arrays.fill(window.timestamps, Long.MIN_VALUE);
+        }
+        for (long seen : window.timestamps) {
+            if (seen == millis) {
+                return false;
+            }
+        }
+        window.timestamps[window.nextTimestamp] = millis;
+        window.nextTimestamp = (window.nextTimestamp + 1) % RECENT_TIMESTAMPS;
+        return true;
+    }
+
+    /**
+     * Forgets a report that was marked but could not be stored, so that its retransmission is accepted.
+     */
+    public void release(UUID deviceId, LocationReportDTO report) {
+        DeviceWindows window = windows.get(deviceId);
+        if (window == null) {
+            return;
+        }
+        synchronized (window) {
+            if (report.sequence() != null) {
+                long offset = window.highWater - report.sequence();
+                if (offset >= 0 && offset < WINDOW) {
+                    window.seen &= ~(1L << offset);
+                }
+            } else if (report.timestamp() != null && window.timestamps != null) {
+                long millis = millisOf(report);
+                for (int i = 0; i < RECENT_TIMESTAMPS; i++) {
+                    if (window.timestamps[i] == millis) {
+                        window.timestamps[i] = Long.MIN_VALUE;
+                    }
+                }
+            }
+        }
+    }
+
+    public void forget(UUID deviceId) {
+        windows.remove(deviceId);
+    }
+
+    private static long millisOf(LocationReportDTO report) {
+        return report.timestamp().toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    private void trim() {
+        // Dropping a window only means a late retransmission for that device may be stored once more
+        Iterator<UUID> it = windows.keySet().iterator();
+        int target = maxDevices - maxDevices / 10;
+        while (windows.size() > target && it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+        log.debug("Trimmed duplicate filter to {} devices", windows.size());
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("devices", windows.size());
+        stats.put("duplicates", duplicates.get());
+        stats.put("belowWindow", belowWindow.get());
+        return stats;
+    }
+}
@@ -0,0 +1,319 @@
+package mahoro.backend.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import mahoro.backend.geo.Boundary;
+import mahoro.backend.geo.GeofenceKernel;
+import mahoro.backend.geo.StrTree;
+import mahoro.backend.model.Location;
+import mahoro.backend.model.LocationType;
+import mahoro.backend.repository.DeviceRepository;
+import mahoro.backend.repository.LocationRepository;
+import mahoro.backend.repository.UserRepository;
+
+/**
+ * Keeps device -> owner -> assigned location -> fence in memory so that ingest never has to walk
+ * the lazy Device.user and User.assignedLocation associations. The three links are held
+ * separately, so moving a user or re-centering a location is a single map update however many
+ * devices depend on it. Loaded once at startup and kept current by the services that change them.
+ *
+ * <p>Locations with an imported boundary are fenced by that polygon instead of the circle, and all
+ * boundaries are also packed into an R-tree to answer which areas contain a point.
+ *
+ * <p>The location tree is mirrored as parent links, and the bounded ancestors of each assigned
+ * location are resolved once and cached, so graded checks against the cell, sector and district
+ * never call Location.getParent().
+ *
+ * <p>Changes made inside a transaction are applied once it commits, so the index never routes
+ * alerts by an assignment or boundary that was rolled back.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class GeofenceIndex {
+
+    private final DeviceRepository deviceRepository;
+    private final UserRepository userRepository;
+    private final LocationRepository locationRepository;
+
+    @Value("${tracking.geofence.radius-km:1.0}")
+    private double radiusKm = 1.0;
+
+    public record Fence(UUID locationId, double centerLatitude, double centerLongitude, double radiusKm,
+            Boundary boundary, GeofenceKernel kernel) {
+
+        public Fence(UUID locationId, double centerLatitude, double centerLongitude, double radiusKm, Boundary boundary) {
+            this(locationId, centerLatitude, centerLongitude, radiusKm, boundary,
+                    new GeofenceKernel(centerLatitude, centerLongitude));
+        }
+
+        public Fence(UUID locationId, double centerLatitude, double centerLongitude, double radiusKm) {
+            this(locationId, centerLatitude, centerLongitude, radiusKm, null);
+        }
+
+        public boolean contains(double latitude, double longitude, double distanceKm) {
+            return boundary != null ? boundary.contains(latitude, longitude) : distanceKm <= radiusKm;
+        }
+
+        /**
+         * Sorts points into GeofenceKernel zones: INSIDE the fence, OUTSIDE it by more than the
+         * hysteresis distance, or in the BAND between.
+         */
+        public void classify(double[] latitudes, double[] longitudes, int count, double hysteresisKm, byte[] zones) {
+            if (boundary == null) {
+                kernel.classify(latitudes, longitudes, count, radiusKm, radiusKm + hysteresisKm, zones);
+                return;
+            }
+            for (int i = 0; i < count; i++) {
+                if (boundary.contains(latitudes[i], longitudes[i])) {
+                    zones[i] = GeofenceKernel.INSIDE;
+                } else {
+                    zones[i] = boundary.distanceToEdgeMeters(latitudes[i], longitudes[i]) > hysteresisKm * 1000
+                            ? GeofenceKernel.OUTSIDE
+                            : GeofenceKernel.BAND;
+                }
+            }
+        }
+    }
+
+    /**
+     * A bounded area around an assigned location, with the type and name used in alerts.
+     */
+    public record FenceLevel(LocationType type, String name, Fence fence) {}
+
+    // Deepest possible chain, the assigned location included
+    public static final int MAX_LEVELS = LocationType.values().length;
+
+    private record Node(UUID parentId, LocationType type, String name) {}
+
+    private final Map<UUID, UUID> ownerByDevice = new ConcurrentHashMap<>();
+    private final Map<UUID, UUID> locationByUser = new ConcurrentHashMap<>();
+    private final Map<UUID, Fence> fenceByLocation = new ConcurrentHashMap<>();
+    private final Map<UUID, Node> nodeByLocation = new ConcurrentHashMap<>();
+    private final Map<UUID, List<FenceLevel>> ancestorsByLocation = new ConcurrentHashMap<>();
+
+    private volatile StrTree<Fence> areas = new StrTree<>(List.of());
+
+    private final AtomicLong lookups = new AtomicLong();
+    private final AtomicLong fenced = new AtomicLong();
+
+    @PostConstruct
+    void load() {
+        for (Object[] row : deviceRepository.findDeviceOwnerIds()) {
+            ownerByDevice.put((UUID) row[0], (UUID) row[1]);
+        }
+        for (Object[] row : userRepository.findAssignedLocationIds()) {
+            locationByUser.put((UUID) row[0], (UUID) row[1]);
+        }
+        for (Object[] row : locationRepository.findHierarchy()) {
+            nodeByLocation.put((UUID) row[0], new Node((UUID) row[1], (LocationType) row[2], (String) row[3]));
+        }
+        locationsUpdated(locationRepository.findAllFenced());
+        log.info("Geofence index loaded: {} devices, {} users, {} fenced locations, {} boundaries",
+                ownerByDevice.size(), locationByUser.size(), fenceByLocation.size(), areas.size());
+    }
+
+    /**
+     * The fence the device has to stay inside, or null when its owner has no located assignment.
+     */
+    public Fence fenceFor(UUID deviceId) {
+        lookups.incrementAndGet();
+        UUID userId = ownerByDevice.get(deviceId);
+        UUID locationId = userId != null ? locationByUser.get(userId) : null;
+        Fence fence = locationId != null ? fenceByLocation.get(locationId) : null;
+        if (fence != null) {
+            fenced.incrementAndGet();
+        }
+        return fence;
+    }
+
+    public void deviceAssigned(UUID deviceId, UUID userId) {
+        AfterCommit.run(() -> {
+            if (userId == null) {
+                ownerByDevice.remove(deviceId);
+            } else {
+                ownerByDevice.put(deviceId, userId);
+            }
+        });
+    }
+
+    public void deviceRemoved(UUID deviceId) {
+        AfterCommit.run(() -> ownerByDevice.remove(deviceId));
+    }
+
+    public void userAssigned(UUID userId, UUID locationId) {
+        AfterCommit.run(() -> {
+            if (locationId == null) {
+                locationByUser.remove(userId);
+            } else {
+                locationByUser.put(userId, locationId);
+            }
+        });
+    }
+
+    public void userRemoved(UUID userId) {
+        AfterCommit.run(() -> locationByUser.remove(userId));
+    }
+
+    public void locationUpdated(Location location) {
+        locationsUpdated(List.of(location));
+    }
+
+    /**
+     * Applies a set of location changes with a single R-tree rebuild, for boundary imports.
+     */
+    public void locationsUpdated(Collection<Location> locations) {
+        // The entities are read now, while they are attached; only the maps wait for the commit
+        Map<UUID, Node> nodes = new LinkedHashMap<>();
+        Map<UUID, Fence> fences = new HashMap<>();
+        for (Location location : locations) {
+            Location parent = location.getParent();
+            nodes.put(location.getLocationId(), new Node(parent != null ? parent.getLocationId() : null,
+                    location.getType(), location.getName()));
+            fences.put(location.getLocationId(), fenceOf(location));
+        }
+        AfterCommit.run(() -> applyLocations(nodes, fences));
+    }
+
+    private void applyLocations(Map<UUID, Node> nodes, Map<UUID, Fence> fences) {
+        boolean boundariesChanged = false;
+        for (Map.Entry<UUID, Node> entry : nodes.entrySet()) {
+            UUID locationId = entry.getKey();
+            nodeByLocation.put(locationId, entry.getValue());
+            Fence fence = fences.get(locationId);
+            Fence previous = fence != null
+                    ? fenceByLocation.put(locationId, fence)
+                    : fenceByLocation.remove(locationId);
+            boundariesChanged |= (previous != null && previous.boundary() != null)
+                    || (fence != null && fence.boundary() != null);
+        }
+        ancestorsByLocation.clear();
+        if (boundariesChanged) {
+            rebuildAreas();
+        }
+    }
+
+    public void locationRemoved(UUID locationId) {
+        AfterCommit.run(() -> {
+            nodeByLocation.remove(locationId);
+            ancestorsByLocation.clear();
+            Fence previous = fenceByLocation.remove(locationId);
+            if (previous != null && previous.boundary() != null) {
+                rebuildAreas();
+            }
+        });
+    }
+
+    /**
+     * Bounded ancestors of a location, innermost first. Ancestors without a boundary are skipped;
+     * a circle around a district center says nothing about whether a point is in the district.
+     */
+    public List<FenceLevel> ancestorFences(UUID locationId) {
+        return ancestorsByLocation.computeIfAbsent(locationId, this::resolveAncestors);
+    }
+
+    private List<FenceLevel> resolveAncestors(UUID locationId) {
+        List<FenceLevel> levels = new ArrayList<>();
+        Node node = nodeByLocation.get(locationId);
+        UUID parentId = node != null ? node.parentId() : null;
+        // Bounded so that a cycle in the data cannot loop forever
+        for (int depth = 1; parentId != null && depth < MAX_LEVELS; depth++) {
+            Node parent = nodeByLocation.get(parentId);
+            if (parent == null) {
+                break;
+            }
+            Fence fence = fenceByLocation.get(parentId);
+            if (fence != null && fence.boundary() != null) {
+                levels.add(new FenceLevel(parent.type(), parent.name(), fence));
+            }
+            parentId = parent.parentId();
+        }
+        return List.copyOf(levels);
+    }
+
+    private Fence fenceOf(Location location) {
+        Boundary boundary = null;
+        if (location.getBoundary() != null) {
+            try {
+                boundary = Boundary.parse(location.getBoundary());
+            } catch (IllegalArgumentException e) {
+                log.warn("Ignoring unreadable boundary of location {}: {}", location.getLocationId(), e.getMessage());
+            }
+        }
+        if (location.getCenterLatitude() != null && location.getCenterLongitude() != null) {
+            return new Fence(location.getLocationId(), location.getCenterLatitude(), location.getCenterLongitude(),
+                    radiusKm, boundary);
+        }
+        if (boundary != null) {
+            // Without a stored center, distances in alerts are measured from the middle of the boundary's box
+            return new Fence(location.getLocationId(),
+                    (boundary.getMinLatitude() + boundary.getMaxLatitude()) / 2,
+                    (boundary.getMinLongitude() + boundary.getMaxLongitude()) / 2, radiusKm, boundary);
+        }
+        return null;
+    }
+
+    private synchronized void rebuildAreas() {
+        List<StrTree.Entry<Fence>> entries = new ArrayList<>();
+        for (Fence fence : fenceByLocation.values()) {
+            Boundary boundary = fence.boundary();
+            if (boundary != null) {
+                entries.add(new StrTree.Entry<>(boundary.getMinLongitude(), boundary.getMinLatitude(),
+                        boundary.getMaxLongitude(), boundary.getMaxLatitude(), fence));
+            }
+        }
+        areas = new StrTree<>(entries);
+    }
+
+    /**
+     * Ids of the locations whose boundary contains the point, smallest area first, so a village
+     * comes before the cell, sector and district around it.
+     */
+    public List<UUID> locate(double latitude, double longitude) {
+        List<Fence> containing = new ArrayList<>();
+        areas.query(longitude, latitude, fence -> {
+            if (fence.boundary().contains(latitude, longitude)) {
+                containing.add(fence);
+            }
+        });
+        containing.sort(Comparator.comparingDouble(fence -> boxArea(fence.boundary())));
+        List<UUID> ids = new ArrayList<>(containing.size());
+        for (Fence fence : containing) {
+            ids.add(fence.locationId());
+        }
+        return ids;
+    }
+
+    private static double boxArea(Boundary boundary) {
+        return (boundary.getMaxLongitude() - boundary.getMinLongitude())
+                * (boundary.getMaxLatitude() - boundary.getMinLatitude());
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("devices", ownerByDevice.size());
+        stats.put("users", locationByUser.size());
+        stats.put("fences", fenceByLocation.size());
+        stats.put("boundaries", areas.size());
+        stats.put("locations", nodeByLocation.size());
+        stats.put("cachedAncestorPaths", ancestorsByLocation.size());
+        stats.put("lookups", lookups.get());
+        stats.put("fencedLookups", fenced.get());
+        return stats;
+    }
+}
@@ -0,0 +1,184 @@
+package mahoro.backend.service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import lombok.extern.slf4j.Slf4j;
+import mahoro.backend.geo.GeofenceKernel;
+
+/**
+ * Per-device inside/outside state for geofences, so that alerts are raised when a device crosses
+ * its fence rather than on every report it sends from outside. A device counts as having left only
+ * once it is more than the hysteresis distance beyond the border, and as back only once it is inside
+ * again, so GPS jitter around the border cannot flap the state. Either change must also hold for the
+ * dwell time, measured on report timestamps, before it is reported.
+ *
+ * <p>State is kept per level of the device's fence path: level 0 is the assigned location and the
+ * levels above it are its bounded ancestors, each crossing on its own.
+ *
+ * <p>Ingest works on a {@link Pending} copy of a device's state and applies it once the
+ * transaction that stores the fixes and alerts has committed.
+ */
+@Slf4j
+@Service
+public class GeofenceStateTracker {
+
+    public enum Transition { NONE, EXITED, ENTERED }
+
+    @Value("${tracking.geofence.hysteresis-meters:100}")
+    private double hysteresisMeters = 100;
+
+    @Value("${tracking.geofence.dwell-seconds:60}")
+    private long dwellSeconds = 60;
+
+    private static final class FenceState {
+        UUID locationId;
+        boolean outside;
+        // Report time at which the device was first seen on the other side, or null
+        LocalDateTime crossingSince;
+
+        FenceState copy() {
+            FenceState copy = new FenceState();
+            copy.locationId = locationId;
+            copy.outside = outside;
+            copy.crossingSince = crossingSince;
+            return copy;
+        }
+    }
+
+    /**
+     * A device's fence state copied out of the tracker. Positions fed to it change only the copy
+     * until apply replaces the tracked state with it.
+     */
+    public final class Pending {
+        private final UUID deviceId;
+        private final FenceState[] levels;
+
+        private Pending(UUID deviceId, FenceState[] levels) {
+            this.deviceId = deviceId;
+            this.levels = levels;
+        }
+
+        public Transition update(int level, UUID locationId, byte zone, LocalDateTime timestamp) {
+            return advance(levels, level, locationId, zone, timestamp);
+        }
+
+        public void apply() {
+            states.put(deviceId, levels);
+        }
+    }
+
+    private final Map<UUID, FenceState[]> states = new ConcurrentHashMap<>();
+
+    private final AtomicLong exits = new AtomicLong();
+    private final AtomicLong entries = new AtomicLong();
+    private final AtomicLong suppressed = new AtomicLong();
+
+    public double getHysteresisKm() {
+        return hysteresisMeters / 1000;
+    }
+
+    /**
+     * Feeds one position given as its signed distance from the fence border, negative inside.
+     */
+    public Transition updateDistance(UUID deviceId, UUID locationId, double signedDistanceKm, LocalDateTime timestamp) {
+        byte zone = signedDistanceKm < 0 ? GeofenceKernel.INSIDE
+                : signedDistanceKm > getHysteresisKm() ? GeofenceKernel.OUTSIDE
+                : GeofenceKernel.BAND;
+        return update(deviceId, locationId, zone, timestamp);
+    }
+
+    public Transition update(UUID deviceId, UUID locationId, byte zone, LocalDateTime timestamp) {
+        return update(deviceId, 0, locationId, zone, timestamp);
+    }
+
+    /**
+     * Feeds one position at a level of the fence path, already sorted into a GeofenceKernel zone,
+     * and returns the transition it completes, if any.
+     */
+    public Transition update(UUID deviceId, int level, UUID locationId, byte zone, LocalDateTime timestamp) {
+        FenceState[] levels = states.computeIfAbsent(deviceId, id -> new FenceState[GeofenceIndex.MAX_LEVELS]);
+        synchronized (levels) {
+            return advance(levels, level, locationId, zone, timestamp);
+        }
+    }
+
+    public Pending begin(UUID deviceId) {
+        FenceState[] copy = new FenceState[GeofenceIndex.MAX_LEVELS];
+        FenceState[] levels = states.get(deviceId);
+        if (levels != null) {
+            synchronized (levels) {
+                for (int i = 0; i < levels.length; i++) {
+                    copy[i] = levels[i] != null ? levels[i].copy() : null;
+                }
+            }
+        }
+        return new Pending(deviceId, copy);
+    }
+
+    private Transition advance(FenceState[] levels, int level, UUID locationId, byte zone, LocalDateTime timestamp) {
+        if (levels[level] == null) {
+            levels[level] = new FenceState();
+        }
+        FenceState state = levels[level];
+        if (!locationId.equals(state.locationId)) {
+            if (level == 0) {
+                // A new assignment also brings new ancestors
+                Arrays.fill(levels, 1, levels.length, null);
+            }
+            // New or changed fence: start from inside so that being outside it is reported once
+            state.locationId = locationId;
+            state.outside = false;
+            state.crossingSince = null;
+        }
+        boolean crossing = state.outside ? zone == GeofenceKernel.INSIDE : zone == GeofenceKernel.OUTSIDE;
+        if (!crossing) {
+            // Any crossing that was building up is abandoned
+            if (state.outside) {
+                suppressed.incrementAndGet();
+            }
+            state.crossingSince = null;
+            return Transition.NONE;
+        }
+        if (state.crossingSince == null || timestamp.isBefore(state.crossingSince)) {
+            state.crossingSince = timestamp;
+        }
+        if (Duration.between(state.crossingSince, timestamp).getSeconds() < dwellSeconds) {
+            return Transition.NONE;
+        }
+        state.outside = !state.outside;
+        state.crossingSince = null;
+        if (state.outside) {
+            exits.incrementAndGet();
+            return Transition.EXITED;
+        }
+        entries.incrementAndGet();
+        return Transition.ENTERED;
+    }
+
+    public void forget(UUID deviceId) {
+        states.remove(deviceId);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("trackedDevices", states.size());
+        stats.put("outside", states.values().stream()
+                .filter(levels -> levels[0] != null && levels[0].outside).count());
+        stats.put("exits", exits.get());
+        stats.put("entries", entries.get());
+        stats.put("suppressedReports", suppressed.get());
+        stats.put("hysteresisMeters", hysteresisMeters);
+        stats.put("dwellSeconds", dwellSeconds);
+        return stats;
+    }
+}
@@ -0,0 +1,202 @@
+package mahoro.backend.service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import mahoro.backend.dto.LocationReportDTO;
+
+/**
+ * Admission control for the tracking endpoints: a token bucket per device plus a cap on how many
+ * ingest requests run at once. Each bucket is a single theoretical-arrival-time value updated by
+ * CAS (the GCRA form of a token bucket), so checking a device takes no locks.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class IngestRateLimiter {
+
+    private static final int TOP_THROTTLED = 10;
+
+    private final DeviceImeiCache deviceImeiCache;
+
+    @Value("${tracking.rate-limit.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${tracking.rate-limit.reports-per-second:2}")
+    private double reportsPerSecond = 2;
+
+    @Value("${tracking.rate-limit.burst:20}")
+    private int burst = 20;
+
+    @Value("${tracking.rate-limit.max-concurrent:200}")
+    private int maxConcurrent = 200;
+
+    private long emissionIntervalNanos;
+    private long burstToleranceNanos;
+    private Semaphore inFlight;
+
+    private static final class Bucket {
+        final AtomicLong theoreticalArrival;
+        final AtomicLong throttled = new AtomicLong();
+
+        Bucket(long now) {
+            theoreticalArrival = new AtomicLong(now);
+        }
+    }
+
+    // Keyed by deviceId; an IMEI the cache cannot resolve keeps a bucket of its own
+    private final Map<Object, Bucket> buckets = new ConcurrentHashMap<>();
+
+    private final AtomicLong admitted = new AtomicLong();
+    private final AtomicLong throttledRequests = new AtomicLong();
+    private final AtomicLong concurrencyRejections = new AtomicLong();
+
+    @PostConstruct
+    void start() {
+        emissionIntervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / reportsPerSecond);
+        burstToleranceNanos = emissionIntervalNanos * (burst - 1);
+        inFlight = new Semaphore(maxConcurrent);
+    }
+
+    /**
+     * Takes one token for the report's device. Returns 0 when admitted, otherwise the number of
+     * nanoseconds until the device may report again.
+     */
+    public long tryAcquire(LocationReportDTO report) {
+        return tryAcquireAll(List.of(report));
+    }
+
+    /**
+     * Takes one token per distinct device in the batch, so a buffered upload costs the same as a single report.
+     * Reports by IMEI are charged to the device it belongs to. The batch is admitted whole or not at
+     * all: when one device is throttled, the tokens already taken for the others are given back.
+     */
+    public long tryAcquireAll(List<LocationReportDTO> reports) {
+        if (!enabled) {
+            return 0;
+        }
+        List<Bucket> taken = new ArrayList<>();
+        for (Object key : keysOf(reports)) {
+            long now = System.nanoTime();
+            Bucket bucket = buckets.computeIfAbsent(key, k -> new Bucket(now));
+            long wait = tryAcquire(bucket, now);
+            if (wait > 0) {
+                taken.forEach(this::refund);
+                return wait;
+            }
+            taken.add(bucket);
+        }
+        return 0;
+    }
+
+    private Set<Object> keysOf(List<LocationReportDTO> reports) {
+        Set<String> imeis = new HashSet<>();
+        for (LocationReportDTO report : reports) {
+            if (report.deviceId() == null && report.imei() != null) {
+                imeis.add(report.imei());
+            }
+        }
+        Map<String, UUID> deviceIdsByImei = imeis.isEmpty() ? Map.of() : deviceImeiCache.resolveAll(imeis);
+
+        Set<Object> keys = new LinkedHashSet<>();
+        for (LocationReportDTO report : reports) {
+            Object key = report.deviceId() != null ? report.deviceId()
+                    : deviceIdsByImei.get(report.imei());
+            key = key != null ? key : report.imei();
+            if (key != null) {
+                keys.add(key);
+            }
+        }
+        return keys;
+    }
+
+    private long tryAcquire(Bucket bucket, long now) {
+        while (true) {
+            long arrival = bucket.theoreticalArrival.get();
+            long base = arrival - now > 0 ? arrival : now;
+            long wait = base - burstToleranceNanos - now;
+            if (wait > 0) {
+                bucket.throttled.incrementAndGet();
+                throttledRequests.incrementAndGet();
+                return wait;
+            }
+            if (bucket.theoreticalArrival.compareAndSet(arrival, base + emissionIntervalNanos)) {
+                admitted.incrementAndGet();
+                return 0;
+            }
+        }
+    }
+
+    // Undoes one admission; an arrival time pushed back to the past just means a full bucket
+    private void refund(Bucket bucket) {
+        bucket.theoreticalArrival.addAndGet(-emissionIntervalNanos);
+        admitted.decrementAndGet();
+    }
+
+    public boolean tryEnter() {
+        if (!enabled) {
+            return true;
+        }
+        if (inFlight.tryAcquire()) {
+            return true;
+        }
+        concurrencyRejections.incrementAndGet();
+        return false;
+    }
+
+    public void exit() {
+        if (enabled) {
+            inFlight.release();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${tracking.rate-limit.cleanup-interval-ms:60000}")
+    void evictIdle() {
+        // A bucket whose arrival time has passed is full again and carries no state worth keeping
+        long now = System.nanoTime();
+        int before = buckets.size();
+        buckets.values().removeIf(bucket -> bucket.theoreticalArrival.get() - now <= 0);
+        if (before != buckets.size()) {
+            log.debug("Evicted {} idle rate-limit buckets", before - buckets.size());
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("admitted", admitted.get());
+        stats.put("throttled", throttledRequests.get());
+        stats.put("concurrencyRejections", concurrencyRejections.get());
+        stats.put("inFlight", inFlight != null ? maxConcurrent - inFlight.availablePermits() : 0);
+        stats.put("trackedDevices", buckets.size());
+
+        Map<String, Long> topThrottled = new LinkedHashMap<>();
+        buckets.entrySet().stream()
+                .filter(entry -> entry.getValue().throttled.get() > 0)
+                .sorted(Comparator.comparingLong(entry -> -entry.getValue().throttled.get()))
+                .limit(TOP_THROTTLED)
+                .forEach(entry -> topThrottled.put(String.valueOf(entry.getKey()), entry.getValue().throttled.get()));
+        stats.put("throttledDevices", buckets.values().stream().filter(bucket -> bucket.throttled.get() > 0).count());
+        stats.put("topThrottled", topThrottled);
+        return stats;
+    }
+}
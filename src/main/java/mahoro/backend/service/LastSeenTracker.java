@@ -0,0 +1,111 @@
+package mahoro.backend.service;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class LastSeenTracker {
+
+    private static final String FLUSH_SQL =
+            "UPDATE devices SET last_reported_at = ? " +
+            "WHERE device_id = ? AND (last_reported_at IS NULL OR last_reported_at < ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final PresenceTracker presenceTracker;
+
+    // Latest report time per device, as seen by this instance
+    private final Map<UUID, LocalDateTime> lastSeen = new ConcurrentHashMap<>();
+
+    // Devices whose last_reported_at column is behind lastSeen
+    private final Map<UUID, LocalDateTime> pending = new ConcurrentHashMap<>();
+
+    private final AtomicLong touches = new AtomicLong();
+    private final AtomicLong rowsFlushed = new AtomicLong();
+    private final AtomicLong flushes = new AtomicLong();
+
+    public void touch(UUID deviceId, LocalDateTime reportedAt) {
+        touches.incrementAndGet();
+        lastSeen.merge(deviceId, reportedAt, LastSeenTracker::latest);
+        pending.merge(deviceId, reportedAt, LastSeenTracker::latest);
+        presenceTracker.touch(deviceId, reportedAt);
+    }
+
+    public LocalDateTime getLastSeen(UUID deviceId, LocalDateTime persisted) {
+        LocalDateTime seen = lastSeen.get(deviceId);
+        if (seen == null) {
+            return persisted;
+        }
+        return persisted == null ? seen : latest(seen, persisted);
+    }
+
+    public void forget(UUID deviceId) {
+        lastSeen.remove(deviceId);
+        pending.remove(deviceId);
+    }
+
+    @Scheduled(fixedDelayString = "${tracking.last-seen.flush-interval-ms:30000}")
+    public void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        List<UUID> deviceIds = new ArrayList<>(pending.size());
+        List<Object[]> batch = new ArrayList<>(pending.size());
+        for (Map.Entry<UUID, LocalDateTime> entry : pending.entrySet()) {
+            // Only drop the entry if no newer report arrived while we were snapshotting
+            if (pending.remove(entry.getKey(), entry.getValue())) {
+                Timestamp reportedAt = Timestamp.valueOf(entry.getValue());
+                deviceIds.add(entry.getKey());
+                batch.add(new Object[] { reportedAt, entry.getKey(), reportedAt });
+            }
+        }
+
+        try {
+            jdbcTemplate.batchUpdate(FLUSH_SQL, batch);
+            rowsFlushed.addAndGet(batch.size());
+            flushes.incrementAndGet();
+            log.debug("Flushed last-seen time for {} devices", batch.size());
+        } catch (Exception e) {
+            log.error("Failed to flush last-seen times for {} devices: {}", batch.size(), e.getMessage());
+            for (int i = 0; i < deviceIds.size(); i++) {
+                pending.merge(deviceIds.get(i), ((Timestamp) batch.get(i)[0]).toLocalDateTime(), LastSeenTracker::latest);
+            }
+        }
+    }
+
+    @PreDestroy
+    void flushOnShutdown() {
+        flush();
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("trackedDevices", lastSeen.size());
+        stats.put("pendingDevices", pending.size());
+        stats.put("touches", touches.get());
+        stats.put("rowsFlushed", rowsFlushed.get());
+        stats.put("flushes", flushes.get());
+        return stats;
+    }
+
+    private static LocalDateTime latest(LocalDateTime a, LocalDateTime b) {
+        return a.isAfter(b) ? a : b;
+    }
+}
@@ -0,0 +1,103 @@
+package mahoro.backend.service;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import mahoro.backend.model.LocationHistory;
+import mahoro.backend.repository.LocationHistoryRepository;
+
+/**
+ * Newest stored position of every device, loaded once at startup and then written through by
+ * every path that inserts location history, so current-location and status reads never query
+ * the database. A device missing here has no history at all. Rows written inside a transaction
+ * appear once it commits, so a rolled-back insert is never served as a device's position.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class LatestPositionCache {
+
+    private final LocationHistoryRepository locationHistoryRepository;
+
+    // Same property names as the LocationHistory JSON it replaces
+    public record Position(UUID locationHistoryId, Double latitude, Double longitude, LocalDateTime timestamp,
+            String recordedAddress, Double speedKmh, Double headingDegrees) {
+
+        static Position of(LocationHistory location) {
+            return new Position(location.getLocationHistoryId(), location.getLatitude(), location.getLongitude(),
+                    location.getTimestamp(), location.getRecordedAddress(), location.getSpeedKmh(),
+                    location.getHeadingDegrees());
+        }
+    }
+
+    private final Map<UUID, Position> positions = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    @PostConstruct
+    void load() {
+        long started = System.currentTimeMillis();
+        for (Object[] row : locationHistoryRepository.findLatestPositions()) {
+            put((UUID) row[0], new Position((UUID) row[1], (Double) row[2], (Double) row[3], toLocalDateTime(row[4]),
+                    (String) row[5], (Double) row[6], (Double) row[7]));
+        }
+        log.info("Latest positions of {} devices loaded in {} ms", positions.size(),
+                System.currentTimeMillis() - started);
+    }
+
+    // The native query may hand back a JDBC Timestamp rather than a LocalDateTime
+    private static LocalDateTime toLocalDateTime(Object value) {
+        return value instanceof Timestamp timestamp ? timestamp.toLocalDateTime() : (LocalDateTime) value;
+    }
+
+    public Optional<Position> get(UUID deviceId) {
+        Position position = positions.get(deviceId);
+        (position != null ? hits : misses).incrementAndGet();
+        return Optional.ofNullable(position);
+    }
+
+    /**
+     * Records newly stored rows; rows older than what is already cached for their device are ignored,
+     * so back-filled history does not move a device.
+     */
+    public void update(Collection<LocationHistory> stored) {
+        Map<UUID, Position> latest = new HashMap<>();
+        for (LocationHistory location : stored) {
+            latest.merge(location.getDevice().getDeviceId(), Position.of(location), LatestPositionCache::newer);
+        }
+        AfterCommit.run(() -> latest.forEach(this::put));
+    }
+
+    private void put(UUID deviceId, Position position) {
+        positions.merge(deviceId, position, LatestPositionCache::newer);
+    }
+
+    private static Position newer(Position current, Position candidate) {
+        return candidate.timestamp().isBefore(current.timestamp()) ? current : candidate;
+    }
+
+    public void forget(UUID deviceId) {
+        AfterCommit.run(() -> positions.remove(deviceId));
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("devices", positions.size());
+        stats.put("hits", hits.get());
+        stats.put("misses", misses.get());
+        return stats;
+    }
+}
@@ -0,0 +1,366 @@
+package mahoro.backend.service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import mahoro.backend.dto.LocationReportDTO;
+import mahoro.backend.model.Device;
+import mahoro.backend.model.LocationHistory;
+import mahoro.backend.repository.DeviceRepository;
+import mahoro.backend.repository.LocationHistoryRepository;
+
+/**
+ * Streams historical tracks into location_history without going through the live ingest path:
+ * no geofence checks, no thinning, and large write batches. Imported rows move a device's latest
+ * stored position when they are newer than it, but never its last-seen time or presence, which
+ * only live reports drive. Progress is checkpointed per job after every committed batch, so a
+ * failed import can be re-sent with the same job id and picks up after the last committed line.
+ * A batch is marked pending in the checkpoint before it is inserted; if the import died before
+ * the checkpoint caught up, the resumed run drops rows of that batch already in the table.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class LocationImportService {
+
+    public enum Format { CSV, NDJSON }
+
+    private static final int MAX_LOGGED_REJECTIONS = 20;
+
+    private final LocationHistoryRepository locationHistoryRepository;
+    private final DeviceRepository deviceRepository;
+    private final DeviceImeiCache deviceImeiCache;
+    private final LatestPositionCache latestPositionCache;
+    private final ObjectMapper objectMapper;
+
+    @Value("${tracking.import.batch-size:5000}")
+    private int batchSize = 5000;
+
+    @Value("${tracking.import.checkpoint-dir:${java.io.tmpdir}/tracking-import}")
+    private String checkpointDir = System.getProperty("java.io.tmpdir") + "/tracking-import";
+
+    private final Map<String, ImportProgress> jobs = new ConcurrentHashMap<>();
+
+    public static final class ImportProgress {
+        private final String jobId;
+        private final long resumedFrom;
+        private final long startedAt = System.currentTimeMillis();
+        private final AtomicLong linesRead = new AtomicLong();
+        private final AtomicLong rowsWritten = new AtomicLong();
+        private final AtomicLong rowsRejected = new AtomicLong();
+        private final AtomicLong rowsAlreadyStored = new AtomicLong();
+        private volatile long committedLine;
+        // Last line of a batch whose insert may have committed without its checkpoint
+        private long pendingLine;
+        private volatile long finishedAt;
+        private volatile String status = "RUNNING";
+        private volatile String error;
+
+        ImportProgress(String jobId, long resumedFrom) {
+            this.jobId = jobId;
+            this.resumedFrom = resumedFrom;
+            this.committedLine = resumedFrom;
+        }
+
+        public Map<String, Object> toMap() {
+            long end = finishedAt > 0 ? finishedAt : System.currentTimeMillis();
+            double seconds = Math.max(1, end - startedAt) / 1000.0;
+            Map<String, Object> map = new HashMap<>();
+            map.put("jobId", jobId);
+            map.put("status", status);
+            map.put("resumedFromLine", resumedFrom);
+            map.put("committedLine", committedLine);
+            map.put("linesRead", linesRead.get());
+            map.put("rowsWritten", rowsWritten.get());
+            map.put("rowsRejected", rowsRejected.get());
+            map.put("rowsAlreadyStored", rowsAlreadyStored.get());
+            map.put("rowsPerSecond", rowsWritten.get() / seconds);
+            map.put("error", error);
+            return map;
+        }
+    }
+
+    public ImportProgress getProgress(String jobId) {
+        return jobs.get(jobId);
+    }
+
+    public ImportProgress importStream(String jobId, Format format, InputStream input) throws IOException {
+        if (jobId == null || !jobId.matches("[A-Za-z0-9._-]{1,64}")) {
+            throw new IllegalArgumentException("jobId must be 1-64 letters, digits, '.', '_' or '-'");
+        }
+        Path checkpoint = Paths.get(checkpointDir).resolve(jobId + ".checkpoint");
+        Properties saved = readCheckpoint(checkpoint);
+        if (Boolean.parseBoolean(saved.getProperty("completed"))) {
+            ImportProgress done = new ImportProgress(jobId, Long.parseLong(saved.getProperty("line", "0")));
+            done.status = "ALREADY_COMPLETED";
+            done.finishedAt = System.currentTimeMillis();
+            return done;
+        }
+
+        ImportProgress progress = new ImportProgress(jobId, Long.parseLong(saved.getProperty("line", "0")));
+        progress.pendingLine = Long.parseLong(saved.getProperty("pending", "0"));
+        jobs.compute(jobId, (id, existing) -> {
+            if (existing != null && "RUNNING".equals(existing.status)) {
+                throw new IllegalStateException("Import " + jobId + " is already running");
+            }
+            return progress;
+        });
+        log.info("Starting {} import {} from line {}", format, jobId, progress.resumedFrom);
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8), 1 << 16)) {
+            CsvLayout layout = format == Format.CSV ? CsvLayout.parse(reader.readLine()) : null;
+            List<LocationReportDTO> batch = new ArrayList<>(batchSize);
+            long line = 0;
+            String text;
+            while ((text = reader.readLine()) != null) {
+                line++;
+                if (line <= progress.resumedFrom || text.isBlank()) {
+                    continue;
+                }
+                progress.linesRead.incrementAndGet();
+                try {
+                    LocationReportDTO report = format == Format.CSV
+                            ? layout.read(text)
+                            : objectMapper.readValue(text, LocationReportDTO.class);
+                    if (report.timestamp() == null) {
+                        throw new IllegalArgumentException("timestamp is required");
+                    }
+                    batch.add(report);
+                } catch (Exception e) {
+                    reject(progress, "line " + line + ": " + e.getMessage());
+                }
+                if (batch.size() >= batchSize) {
+                    writeBatch(progress, batch, line, checkpoint);
+                }
+            }
+            writeBatch(progress, batch, line, checkpoint);
+            writeCheckpoint(checkpoint, line, 0, true);
+            progress.status = "COMPLETED";
+        } catch (IOException | RuntimeException e) {
+            progress.status = "FAILED";
+            progress.error = e.getMessage();
+            log.error("Import {} failed after line {}: {}", jobId, progress.committedLine, e.getMessage());
+            throw e;
+        } finally {
+            progress.finishedAt = System.currentTimeMillis();
+        }
+        log.info("Import {} finished: {}", jobId, progress.toMap());
+        return progress;
+    }
+
+    private void writeBatch(ImportProgress progress, List<LocationReportDTO> batch, long line, Path checkpoint)
+            throws IOException {
+        if (!batch.isEmpty()) {
+            Set<String> imeis = new HashSet<>();
+            for (LocationReportDTO report : batch) {
+                if (report.deviceId() == null && report.imei() != null) {
+                    imeis.add(report.imei());
+                }
+            }
+            Map<String, UUID> deviceIdsByImei = imeis.isEmpty() ? Map.of() : deviceImeiCache.resolveAll(imeis);
+
+            Set<UUID> deviceIds = new HashSet<>(deviceIdsByImei.values());
+            for (LocationReportDTO report : batch) {
+                if (report.deviceId() != null) {
+                    deviceIds.add(report.deviceId());
+                }
+            }
+            // Historical files cover few devices, so a batch loads only a handful of them
+            Map<UUID, Device> devicesById = new HashMap<>();
+            for (Device device : deviceRepository.findAllById(deviceIds)) {
+                devicesById.put(device.getDeviceId(), device);
+            }
+
+            List<LocationHistory> rows = new ArrayList<>(batch.size());
+            for (LocationReportDTO report : batch) {
+                UUID deviceId = report.deviceId() != null ? report.deviceId() : deviceIdsByImei.get(report.imei());
+                Device device = deviceId != null ? devicesById.get(deviceId) : null;
+                if (device == null) {
+                    reject(progress, "unknown device " + (report.deviceId() != null ? report.deviceId() : report.imei()));
+                    continue;
+                }
+                LocationHistory row = new LocationHistory();
+                row.setDevice(device);
+                row.setLatitude(report.latitude());
+                row.setLongitude(report.longitude());
+                row.setRecordedAddress(report.address());
+                row.setTimestamp(report.timestamp());
+                rows.add(row);
+            }
+            if (progress.committedLine < progress.pendingLine) {
+                rows = withoutStored(progress, rows);
+            }
+
+            writeCheckpoint(checkpoint, progress.committedLine, line, false);
+            locationHistoryRepository.insertAll(rows);
+            latestPositionCache.update(rows);
+            progress.rowsWritten.addAndGet(rows.size());
+            batch.clear();
+        }
+        progress.committedLine = line;
+        writeCheckpoint(checkpoint, line, 0, false);
+    }
+
+    // Rows of a possibly committed batch are matched on device and fix time
+    private List<LocationHistory> withoutStored(ImportProgress progress, List<LocationHistory> rows) {
+        Map<UUID, List<LocationHistory>> rowsByDevice = new HashMap<>();
+        for (LocationHistory row : rows) {
+            rowsByDevice.computeIfAbsent(row.getDevice().getDeviceId(), id -> new ArrayList<>()).add(row);
+        }
+        Map<UUID, Set<LocalDateTime>> storedByDevice = new HashMap<>();
+        rowsByDevice.forEach((deviceId, deviceRows) -> {
+            LocalDateTime from = deviceRows.get(0).getTimestamp();
+            LocalDateTime to = from;
+            for (LocationHistory row : deviceRows) {
+                from = row.getTimestamp().isBefore(from) ? row.getTimestamp() : from;
+                to = row.getTimestamp().isAfter(to) ? row.getTimestamp() : to;
+            }
+            Set<LocalDateTime> stored = new HashSet<>();
+            for (LocationHistory existing : locationHistoryRepository
+                    .findByDevice_DeviceIdAndTimestampBetweenOrderByTimestampDesc(deviceId, from, to)) {
+                stored.add(existing.getTimestamp());
+            }
+            storedByDevice.put(deviceId, stored);
+        });
+
+        List<LocationHistory> fresh = new ArrayList<>(rows.size());
+        for (LocationHistory row : rows) {
+            if (storedByDevice.get(row.getDevice().getDeviceId()).contains(row.getTimestamp())) {
+                progress.rowsAlreadyStored.incrementAndGet();
+            } else {
+                fresh.add(row);
+            }
+        }
+        return fresh;
+    }
+
+    private void reject(ImportProgress progress, String reason) {
+        if (progress.rowsRejected.incrementAndGet() <= MAX_LOGGED_REJECTIONS) {
+            log.warn("Import {} skipping row, {}", progress.jobId, reason);
+        }
+    }
+
+    private static Properties readCheckpoint(Path checkpoint) throws IOException {
+        Properties properties = new Properties();
+        if (Files.exists(checkpoint)) {
+            try (Reader reader = Files.newBufferedReader(checkpoint)) {
+                properties.load(reader);
+            }
+        }
+        return properties;
+    }
+
+    private static void writeCheckpoint(Path checkpoint, long line, long pending, boolean completed)
+            throws IOException {
+        Files.createDirectories(checkpoint.getParent());
+        Path temp = checkpoint.resolveSibling(checkpoint.getFileName() + ".tmp");
+        Properties properties = new Properties();
+        properties.setProperty("line", Long.toString(line));
+        if (pending > 0) {
+            properties.setProperty("pending", Long.toString(pending));
+        }
+        properties.setProperty("completed", Boolean.toString(completed));
+        try (Writer writer = Files.newBufferedWriter(temp)) {
+            properties.store(writer, null);
+        }
+        Files.move(temp, checkpoint, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Column positions taken from the header row; imei or deviceId, latitude, longitude and timestamp are required
+    private record CsvLayout(int imei, int deviceId, int latitude, int longitude, int timestamp, int address) {
+
+        static CsvLayout parse(String header) {
+            if (header == null) {
+                throw new IllegalArgumentException("CSV import needs a header row");
+            }
+            List<String> columns = split(header);
+            CsvLayout layout = new CsvLayout(columns.indexOf("imei"), columns.indexOf("deviceId"),
+                    columns.indexOf("latitude"), columns.indexOf("longitude"),
+                    columns.indexOf("timestamp"), columns.indexOf("address"));
+            if ((layout.imei < 0 && layout.deviceId < 0) || layout.latitude < 0 || layout.longitude < 0
+                    || layout.timestamp < 0) {
+                throw new IllegalArgumentException(
+                        "CSV header must name imei or deviceId, latitude, longitude and timestamp");
+            }
+            return layout;
+        }
+
+        LocationReportDTO read(String text) {
+            List<String> fields = split(text);
+            String imeiValue = field(fields, imei);
+            String deviceIdValue = field(fields, deviceId);
+            double lat = Double.parseDouble(fields.get(latitude));
+            double lon = Double.parseDouble(fields.get(longitude));
+            if (lat < -90 || lat > 90 || lon < -180 || lon > 180) {
+                throw new IllegalArgumentException("Coordinates out of range");
+            }
+            return new LocationReportDTO(
+                    deviceIdValue != null ? UUID.fromString(deviceIdValue) : null,
+                    imeiValue,
+                    lat,
+                    lon,
+                    field(fields, address),
+                    LocalDateTime.parse(fields.get(timestamp)),
+                    null);
+        }
+
+        private static String field(List<String> fields, int index) {
+            if (index < 0 || index >= fields.size() || fields.get(index).isEmpty()) {
+                return null;
+            }
+            return fields.get(index);
+        }
+
+        // Comma separated, with double quotes around fields that contain commas
+        private static List<String> split(String text) {
+            List<String> fields = new ArrayList<>();
+            StringBuilder current = new StringBuilder();
+            boolean quoted = false;
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (c == '"') {
+                    if (quoted && i + 1 < text.length() && text.charAt(i + 1) == '"') {
+                        current.append('"');
+                        i++;
+                    } else {
+                        quoted = !quoted;
+                    }
+                } else if (c == ',' && !quoted) {
+                    fields.add(current.toString().trim());
+                    current.setLength(0);
+                } else {
+                    current.append(c);
+                }
+            }
+            fields.add(current.toString().trim());
+            return fields;
+        }
+    }
+}
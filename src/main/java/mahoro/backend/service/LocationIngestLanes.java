@@ -0,0 +1,299 @@
+package mahoro.backend.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import mahoro.backend.dto.LocationReportDTO;
+import mahoro.backend.model.LocationHistory;
+
+/**
+ * Runs ingestion on a fixed set of single-threaded lanes, choosing the lane from the deviceId.
+ * All points for a device are therefore stored one batch at a time and in arrival order, so two
+ * requests for the same device can no longer race on last-seen or raise the same alert twice.
+ * Every caller of LocationTrackingService.reportLocations goes through a lane: the HTTP endpoints,
+ * the socket listeners, write-behind group commits and journal replay. Historical imports write
+ * rows without touching per-device tracker state, so they bypass the lanes.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class LocationIngestLanes {
+
+    private final LocationTrackingService locationTrackingService;
+    private final DeviceImeiCache deviceImeiCache;
+
+    // 0 means one lane per available processor
+    @Value("${tracking.lanes.count:0}")
+    private int laneCount;
+
+    @Value("${tracking.lanes.queue-capacity:1000}")
+    private int queueCapacity = 1000;
+
+    private Lane[] lanes;
+    private volatile boolean running;
+
+    private final AtomicLong rejected = new AtomicLong();
+
+    /**
+     * What one lane did with its share of a batch: the locations it stored, or the error that
+     * rolled its share back.
+     */
+    public record LaneResult(int lane, int reports, List<LocationHistory> saved, RuntimeException failure) {
+
+        public boolean failed() {
+            return failure != null;
+        }
+    }
+
+    public record BatchResult(List<LaneResult> lanes) {
+
+        public List<LocationHistory> saved() {
+            List<LocationHistory> saved = new ArrayList<>();
+            lanes.forEach(lane -> saved.addAll(lane.saved()));
+            return saved;
+        }
+
+        public int failed() {
+            return lanes.stream().filter(LaneResult::failed).mapToInt(LaneResult::reports).sum();
+        }
+    }
+
+    private final class Lane implements Runnable {
+        final BlockingQueue<Runnable> queue = new LinkedBlockingQueue<>();
+        // One permit per free place in the queue, taken before queuing so that a batch can claim
+        // a place on every lane it needs before it queues anything
+        final Semaphore space = new Semaphore(queueCapacity);
+        final Thread thread;
+        volatile long processed;
+
+        Lane(int index) {
+            thread = new Thread(this, "ingest-lane-" + index);
+        }
+
+        @Override
+        public void run() {
+            while (running || !queue.isEmpty()) {
+                try {
+                    Runnable task = queue.poll(500, TimeUnit.MILLISECONDS);
+                    if (task != null) {
+                        space.release();
+                        task.run();
+                        processed++;
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    @PostConstruct
+    void start() {
+        int count = laneCount > 0 ? laneCount : Runtime.getRuntime().availableProcessors();
+        lanes = new Lane[count];
+        running = true;
+        for (int i = 0; i < count; i++) {
+            lanes[i] = new Lane(i);
+            lanes[i].thread.start();
+        }
+        log.info("Started {} ingest lanes with queue capacity {}", count, queueCapacity);
+    }
+
+    public int laneFor(UUID deviceId) {
+        int hash = deviceId.hashCode();
+        return Math.floorMod(hash ^ (hash >>> 16), lanes.length);
+    }
+
+    /**
+     * Groups reports by lane, keeping their original order within each lane.
+     */
+    public Map<Integer, List<LocationReportDTO>> partition(List<LocationReportDTO> reports) {
+        int[] laneOf = lanesOf(reports);
+        Map<Integer, List<LocationReportDTO>> byLane = new LinkedHashMap<>();
+        for (int i = 0; i < reports.size(); i++) {
+            byLane.computeIfAbsent(laneOf[i], l -> new ArrayList<>()).add(reports.get(i));
+        }
+        return byLane;
+    }
+
+    /**
+     * The lane of each report, in report order.
+     */
+    public int[] lanesOf(List<LocationReportDTO> reports) {
+        Set<String> imeis = new HashSet<>();
+        for (LocationReportDTO report : reports) {
+            if (report.deviceId() == null && report.imei() != null) {
+                imeis.add(report.imei());
+            }
+        }
+        Map<String, UUID> deviceIdsByImei = imeis.isEmpty() ? Map.of() : deviceImeiCache.resolveAll(imeis);
+
+        int[] laneOf = new int[reports.size()];
+        for (int i = 0; i < laneOf.length; i++) {
+            LocationReportDTO report = reports.get(i);
+            UUID deviceId = report.deviceId() != null ? report.deviceId() : deviceIdsByImei.get(report.imei());
+            // Unknown devices are rejected by the lane; any lane will do for them
+            laneOf[i] = deviceId != null ? laneFor(deviceId) : 0;
+        }
+        return laneOf;
+    }
+
+    /**
+     * Queues a task on a lane, waiting for space. Used by the socket listeners, where waiting
+     * stops them reading and pushes back on the trackers, and by write-behind, where it holds up
+     * the writer until the lanes catch up.
+     */
+    public CompletableFuture<Void> execute(int lane, Runnable task) throws InterruptedException {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        lanes[lane].space.acquire();
+        lanes[lane].queue.add(() -> {
+            try {
+                task.run();
+                done.complete(null);
+            } catch (RuntimeException e) {
+                done.completeExceptionally(e);
+            }
+        });
+        return done;
+    }
+
+    /**
+     * Queues a task on a lane, failing with {@link RejectedExecutionException} when the lane is full.
+     */
+    public <T> CompletableFuture<T> trySubmit(int lane, Supplier<T> task) {
+        reserve(List.of(lane));
+        return enqueue(lane, task);
+    }
+
+    // Takes a queue place on every one of the lanes, or on none of them
+    private void reserve(Collection<Integer> laneIndexes) {
+        if (!running) {
+            throw new RejectedExecutionException("Ingest lanes are shutting down");
+        }
+        List<Integer> reserved = new ArrayList<>(laneIndexes.size());
+        for (int lane : laneIndexes) {
+            if (!lanes[lane].space.tryAcquire()) {
+                reserved.forEach(taken -> lanes[taken].space.release());
+                rejected.incrementAndGet();
+                throw new RejectedExecutionException("Ingest lane " + lane + " is full, retry later");
+            }
+            reserved.add(lane);
+        }
+    }
+
+    private <T> CompletableFuture<T> enqueue(int lane, Supplier<T> task) {
+        CompletableFuture<T> done = new CompletableFuture<>();
+        lanes[lane].queue.add(() -> {
+            try {
+                done.complete(task.get());
+            } catch (RuntimeException e) {
+                done.completeExceptionally(e);
+            }
+        });
+        return done;
+    }
+
+    /**
+     * Stores the reports on their lanes and waits for all of them, failing with the first lane's
+     * error if any lane failed.
+     */
+    public List<LocationHistory> reportLocations(List<LocationReportDTO> reports) {
+        BatchResult result = reportBatch(reports);
+        for (LaneResult lane : result.lanes()) {
+            if (lane.failed()) {
+                throw lane.failure();
+            }
+        }
+        return result.saved();
+    }
+
+    /**
+     * Stores the reports on their lanes and waits for all of them. A batch that spans several lanes
+     * is committed per lane, so a failure on one lane does not undo the others; each lane's outcome
+     * is reported separately. The batch is queued only if every lane it needs has room, so a full
+     * lane rejects it before any part of it is stored.
+     */
+    public BatchResult reportBatch(List<LocationReportDTO> reports) {
+        if (reports == null || reports.isEmpty()) {
+            throw new IllegalArgumentException("At least one location is required");
+        }
+        if (reports.size() > LocationTrackingService.MAX_BATCH_SIZE) {
+            throw new IllegalArgumentException("A batch may contain at most "
+                    + LocationTrackingService.MAX_BATCH_SIZE + " locations");
+        }
+        Map<Integer, List<LocationReportDTO>> byLane = partition(reports);
+        reserve(byLane.keySet());
+        Map<Integer, CompletableFuture<List<LocationHistory>>> pending = new LinkedHashMap<>();
+        byLane.forEach((lane, part) -> pending.put(lane, enqueue(lane, () -> locationTrackingService.reportLocations(part))));
+
+        List<LaneResult> results = new ArrayList<>(pending.size());
+        pending.forEach((lane, future) -> {
+            int count = byLane.get(lane).size();
+            try {
+                results.add(new LaneResult(lane, count, future.join(), null));
+            } catch (CompletionException e) {
+                RuntimeException cause = e.getCause() instanceof RuntimeException runtime ? runtime : e;
+                results.add(new LaneResult(lane, count, List.of(), cause));
+            }
+        });
+        return new BatchResult(results);
+    }
+
+    @PreDestroy
+    void stop() {
+        running = false;
+        for (Lane lane : lanes) {
+            try {
+                lane.thread.join(10_000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (!lane.queue.isEmpty()) {
+                log.warn("{} still had {} queued batches at shutdown", lane.thread.getName(), lane.queue.size());
+            }
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        List<Integer> depths = new ArrayList<>(lanes.length);
+        List<Long> processed = new ArrayList<>(lanes.length);
+        int total = 0;
+        for (Lane lane : lanes) {
+            int depth = lane.queue.size();
+            depths.add(depth);
+            processed.add(lane.processed);
+            total += depth;
+        }
+        stats.put("lanes", lanes.length);
+        stats.put("queueDepth", total);
+        stats.put("laneQueueDepths", depths);
+        stats.put("laneProcessed", processed);
+        stats.put("rejected", rejected.get());
+        return stats;
+    }
+}
@@ -0,0 +1,434 @@
+package mahoro.backend.service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import mahoro.backend.dto.LocationReportDTO;
+
+/**
+ * Append-only journal of accepted reports that have not reached location_history yet. Entries go
+ * into fixed-size memory-mapped segments; a position is the segment number in the high 32 bits and
+ * the end offset of the entry in the low 32. The write-behind flusher commits the position of each
+ * stored batch, and segments wholly below the committed position are deleted.
+ *
+ * <p>Mapped pages survive a crash of the JVM as soon as they are written. A crash of the machine
+ * loses at most the last fsync interval; an interval of 0 forces every append to disk.
+ */
+@Slf4j
+@Service
+public class LocationJournal {
+
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String CHECKPOINT_FILE = "journal.checkpoint";
+
+    // Entry header: payload length, then CRC32C of the payload. A zero length marks the end of a segment.
+    private static final int HEADER_BYTES = 8;
+
+    private static final int HAS_DEVICE_ID = 1;
+    private static final int HAS_IMEI = 2;
+    private static final int HAS_ADDRESS = 4;
+    private static final int HAS_SEQUENCE = 8;
+    private static final int HAS_BATTERY = 16;
+    // The stored time is when the server received the report, not a timestamp the client sent
+    private static final int SERVER_TIME = 32;
+
+    @Value("${tracking.journal.enabled:false}")
+    private boolean enabled;
+
+    @Value("${tracking.journal.dir:${java.io.tmpdir}/tracking-journal}")
+    private String directory = System.getProperty("java.io.tmpdir") + "/tracking-journal";
+
+    @Value("${tracking.journal.segment-bytes:67108864}")
+    private int segmentBytes = 64 * 1024 * 1024;
+
+    @Value("${tracking.journal.fsync-interval-ms:50}")
+    private long fsyncIntervalMs = 50;
+
+    private Path dir;
+    private MappedByteBuffer checkpoint;
+
+    // Locks rather than monitors, and no fsync while holding one, so virtual threads appending to the
+    // journal never pin their carrier behind disk I/O
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private final ReentrantLock syncLock = new ReentrantLock();
+    private MappedByteBuffer segment;
+    private long segmentId;
+    private volatile boolean dirty;
+    // Segments rolled over since the last sync, forced by the next one
+    private final List<MappedByteBuffer> finishedSegments = new ArrayList<>();
+
+    private final AtomicLong committed = new AtomicLong();
+    private volatile long persistedCommit;
+    // Segments below this id hold entries from before the restart and stay until they have been replayed
+    private volatile long replayBelow;
+
+    private Thread syncer;
+    private volatile boolean running;
+
+    private final AtomicLong appends = new AtomicLong();
+    private final AtomicLong bytesAppended = new AtomicLong();
+    private final AtomicLong syncs = new AtomicLong();
+    private final AtomicLong replayed = new AtomicLong();
+    private final AtomicLong segmentsDeleted = new AtomicLong();
+
+    @PostConstruct
+    void start() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            dir = Paths.get(directory);
+            Files.createDirectories(dir);
+            try (FileChannel channel = FileChannel.open(dir.resolve(CHECKPOINT_FILE),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                checkpoint = channel.map(FileChannel.MapMode.READ_WRITE, 0, Long.BYTES);
+            }
+            persistedCommit = checkpoint.getLong(0);
+            committed.set(persistedCommit);
+
+            TreeMap<Long, Path> existing = segments();
+            // Never reuse a segment number at or below the checkpoint, or replay would skip the new segment
+            long next = Math.max(existing.isEmpty() ? 1 : existing.lastKey() + 1, (persistedCommit >>> 32) + 1);
+            replayBelow = existing.isEmpty() ? 0 : next;
+            appendLock.lock();
+            try {
+                openSegment(next);
+            } finally {
+                appendLock.unlock();
+            }
+            if (!existing.isEmpty()) {
+                log.info("Location journal has {} segment(s) from a previous run awaiting replay", existing.size());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open location journal in " + directory, e);
+        }
+        running = true;
+        syncer = new Thread(this::syncLoop, "journal-sync");
+        syncer.setDaemon(true);
+        syncer.start();
+        log.info("Location journal enabled in {} ({} byte segments, fsync every {} ms)",
+                dir, segmentBytes, fsyncIntervalMs);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Writes the report to the journal and returns its position. The caller must commit positions
+     * in the order they were handed out.
+     */
+    public long append(LocationReportDTO report) {
+        byte[] payload = encode(report);
+        CRC32C crc = new CRC32C();
+        crc.update(payload);
+        int length = HEADER_BYTES + payload.length;
+        if (length + Integer.BYTES > segmentBytes) {
+            throw new IllegalArgumentException("Location report too large for the journal");
+        }
+        long position;
+        appendLock.lock();
+        try {
+            if (segment.remaining() < length + Integer.BYTES) {
+                finishedSegments.add(rollSegment());
+            }
+            segment.putInt(payload.length);
+            segment.putInt((int) crc.getValue());
+            segment.put(payload);
+            position = (segmentId << 32) | segment.position();
+            dirty = true;
+        } finally {
+            appendLock.unlock();
+        }
+        appends.incrementAndGet();
+        bytesAppended.addAndGet(length);
+        return position;
+    }
+
+    /**
+     * With fsync-interval-ms=0, forces everything appended so far before returning; otherwise the
+     * background sync does it. Appending never forces, so callers can append under a lock of their
+     * own and call this once they have released it.
+     */
+    public void syncAppended() {
+        if (enabled && fsyncIntervalMs <= 0) {
+            sync();
+        }
+    }
+
+    /**
+     * Marks every entry up to and including the position as stored in the database.
+     */
+    public void commit(long position) {
+        committed.accumulateAndGet(position, Math::max);
+    }
+
+    /**
+     * Hands the entries left over from the previous run to the sink in batches, oldest first, then
+     * deletes their segments. Entries torn by a crash mid-write end their segment.
+     */
+    public int replay(int batchSize, Consumer<List<LocationReportDTO>> sink) {
+        if (!enabled || replayBelow == 0) {
+            return 0;
+        }
+        int count = 0;
+        try {
+            for (Map.Entry<Long, Path> entry : segments().headMap(replayBelow).entrySet()) {
+                // The checkpoint is not moved while old segments are pending, so it still marks where the last run stopped
+                long checkpointSegment = persistedCommit >>> 32;
+                if (entry.getKey() < checkpointSegment) {
+                    continue;
+                }
+                long skipUntil = entry.getKey() == checkpointSegment ? persistedCommit & 0xFFFFFFFFL : 0;
+                List<LocationReportDTO> batch = new ArrayList<>(batchSize);
+                ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(entry.getValue()));
+                while (buffer.remaining() >= HEADER_BYTES) {
+                    int length = buffer.getInt();
+                    int expected = buffer.getInt();
+                    if (length <= 0 || length > buffer.remaining()) {
+                        break;
+                    }
+                    byte[] payload = new byte[length];
+                    buffer.get(payload);
+                    CRC32C crc = new CRC32C();
+                    crc.update(payload);
+                    if ((int) crc.getValue() != expected) {
+                        log.warn("Torn journal entry at {}:{}, ignoring the rest of the segment",
+                                entry.getValue().getFileName(), buffer.position() - length - HEADER_BYTES);
+                        break;
+                    }
+                    if (buffer.position() <= skipUntil) {
+                        continue;
+                    }
+                    batch.add(decode(ByteBuffer.wrap(payload)));
+                    if (batch.size() >= batchSize) {
+                        sink.accept(List.copyOf(batch));
+                        count += batch.size();
+                        batch.clear();
+                    }
+                }
+                if (!batch.isEmpty()) {
+                    sink.accept(List.copyOf(batch));
+                    count += batch.size();
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot replay location journal", e);
+        }
+        // Everything before the current run is in the database now
+        commit(replayBelow << 32);
+        replayBelow = 0;
+        replayed.addAndGet(count);
+        sync();
+        log.info("Replayed {} journaled locations", count);
+        return count;
+    }
+
+    private void syncLoop() {
+        while (running) {
+            try {
+                TimeUnit.MILLISECONDS.sleep(Math.max(fsyncIntervalMs, 10));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            try {
+                sync();
+            } catch (RuntimeException e) {
+                log.error("Location journal sync failed: {}", e.getMessage());
+            }
+        }
+    }
+
+    void sync() {
+        syncLock.lock();
+        try {
+            if (dirty) {
+                MappedByteBuffer current;
+                List<MappedByteBuffer> finished;
+                appendLock.lock();
+                try {
+                    current = segment;
+                    finished = List.copyOf(finishedSegments);
+                    finishedSegments.clear();
+                    dirty = false;
+                } finally {
+                    appendLock.unlock();
+                }
+                finished.forEach(MappedByteBuffer::force);
+                current.force();
+                syncs.incrementAndGet();
+            }
+            long commit = committed.get();
+            if (commit == persistedCommit || replayBelow != 0) {
+                // Until the old segments are replayed the checkpoint has to keep pointing into them
+                return;
+            }
+            checkpoint.putLong(0, commit);
+            checkpoint.force();
+            persistedCommit = commit;
+            truncate(commit >>> 32);
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    private void truncate(long belowSegment) {
+        try {
+            for (Path path : segments().headMap(belowSegment).values()) {
+                Files.deleteIfExists(path);
+                segmentsDeleted.incrementAndGet();
+            }
+        } catch (IOException e) {
+            log.warn("Could not delete flushed journal segments: {}", e.getMessage());
+        }
+    }
+
+    // Returns the finished segment, which the next sync forces outside the append lock
+    private MappedByteBuffer rollSegment() {
+        MappedByteBuffer finished = segment;
+        if (finished.remaining() >= Integer.BYTES) {
+            finished.putInt(0);
+        }
+        openSegment(segmentId + 1);
+        return finished;
+    }
+
+    private void openSegment(long id) {
+        Path path = dir.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX));
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot create journal segment " + path, e);
+        }
+        segmentId = id;
+    }
+
+    private TreeMap<Long, Path> segments() throws IOException {
+        TreeMap<Long, Path> found = new TreeMap<>();
+        try (var files = Files.list(dir)) {
+            files.forEach(path -> {
+                String name = path.getFileName().toString();
+                if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+                    found.put(Long.parseLong(name.substring(SEGMENT_PREFIX.length(),
+                            name.length() - SEGMENT_SUFFIX.length())), path);
+                }
+            });
+        }
+        return found;
+    }
+
+    private static byte[] encode(LocationReportDTO report) {
+        byte[] imei = report.imei() != null ? report.imei().getBytes(StandardCharsets.UTF_8) : null;
+        byte[] address = report.address() != null ? report.address().getBytes(StandardCharsets.UTF_8) : null;
+        int flags = (report.deviceId() != null ? HAS_DEVICE_ID : 0) | (imei != null ? HAS_IMEI : 0)
+                | (address != null ? HAS_ADDRESS : 0) | (report.sequence() != null ? HAS_SEQUENCE : 0)
+                | (report.battery() != null ? HAS_BATTERY : 0) | (report.timestamp() == null ? SERVER_TIME : 0);
+        LocalDateTime time = report.timestamp() != null ? report.timestamp() : report.receivedAt();
+        int size = 1 + (report.deviceId() != null ? 16 : 0) + 16 + 12 + (report.sequence() != null ? 8 : 0)
+                + (report.battery() != null ? 1 : 0)
+                + (imei != null ? 4 + imei.length : 0) + (address != null ? 4 + address.length : 0);
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.put((byte) flags);
+        if (report.deviceId() != null) {
+            buffer.putLong(report.deviceId().getMostSignificantBits());
+            buffer.putLong(report.deviceId().getLeastSignificantBits());
+        }
+        buffer.putDouble(report.latitude());
+        buffer.putDouble(report.longitude());
+        buffer.putLong(time.toEpochSecond(ZoneOffset.UTC));
+        buffer.putInt(time.getNano());
+        if (report.sequence() != null) {
+            buffer.putLong(report.sequence());
+        }
+        if (report.battery() != null) {
+            buffer.put(report.battery().byteValue());
+        }
+        if (imei != null) {
+            buffer.putInt(imei.length).put(imei);
+        }
+        if (address != null) {
+            buffer.putInt(address.length).put(address);
+        }
+        return buffer.array();
+    }
+
+    private static LocationReportDTO decode(ByteBuffer buffer) {
+        int flags = buffer.get() & 0xFF;
+        UUID deviceId = (flags & HAS_DEVICE_ID) != 0 ? new UUID(buffer.getLong(), buffer.getLong()) : null;
+        double latitude = buffer.getDouble();
+        double longitude = buffer.getDouble();
+        LocalDateTime time = LocalDateTime.ofEpochSecond(buffer.getLong(), buffer.getInt(), ZoneOffset.UTC);
+        Long sequence = (flags & HAS_SEQUENCE) != 0 ? buffer.getLong() : null;
+        Integer battery = (flags & HAS_BATTERY) != 0 ? buffer.get() & 0xFF : null;
+        String imei = (flags & HAS_IMEI) != 0 ? readString(buffer) : null;
+        String address = (flags & HAS_ADDRESS) != 0 ? readString(buffer) : null;
+        boolean serverTime = (flags & SERVER_TIME) != 0;
+        return new LocationReportDTO(deviceId, imei, latitude, longitude, address, serverTime ? null : time, sequence,
+                battery, serverTime ? time : null);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @PreDestroy
+    void stop() {
+        if (!enabled || syncer == null) {
+            return;
+        }
+        running = false;
+        syncer.interrupt();
+        try {
+            syncer.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        sync();
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("appends", appends.get());
+        stats.put("bytesAppended", bytesAppended.get());
+        stats.put("syncs", syncs.get());
+        stats.put("replayed", replayed.get());
+        stats.put("segmentsDeleted", segmentsDeleted.get());
+        stats.put("segment", segmentId);
+        stats.put("committedSegment", committed.get() >>> 32);
+        stats.put("fsyncIntervalMs", fsyncIntervalMs);
+        return stats;
+    }
+}
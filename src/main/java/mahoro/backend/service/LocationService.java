@@ -5,11 +5,17 @@ import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import com.fasterxml.jackson.databind.JsonNode;
+
+import mahoro.backend.geo.Boundary;
 import mahoro.backend.model.Location;
 import mahoro.backend.model.LocationType;
 import mahoro.backend.repository.LocationRepository;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -17,9 +23,11 @@ import java.util.UUID;
 public class LocationService {
 
     private final LocationRepository locationRepository;
+    private final GeofenceIndex geofenceIndex;
 
-    public LocationService(LocationRepository locationRepository) {
+    public LocationService(LocationRepository locationRepository, GeofenceIndex geofenceIndex) {
         this.locationRepository = locationRepository;
+        this.geofenceIndex = geofenceIndex;
     }
 
     @Transactional
@@ -35,7 +43,9 @@ public class LocationService {
             }
             location.setParent(parent);
         }
-        return locationRepository.save(location);
+        Location saved = locationRepository.save(location);
+        geofenceIndex.locationUpdated(saved);
+        return saved;
     }
 
 
@@ -73,11 +83,104 @@ public class LocationService {
             location.setParent(parent);
         }
         
-        return locationRepository.save(location);
+        Location saved = locationRepository.save(location);
+        geofenceIndex.locationUpdated(saved);
+        return saved;
     }
     
+    /**
+     * Stores the geometries of a GeoJSON FeatureCollection as location boundaries. Each feature names
+     * its location with a locationId or a name property; a name shared by several locations can be
+     * narrowed with type and parent (a name) or parentId properties. Features that match no location,
+     * or more than one, are reported back.
+     */
+    @Transactional
+    public Map<String, Object> importBoundaries(JsonNode featureCollection) {
+        if (featureCollection == null || !"FeatureCollection".equals(featureCollection.path("type").asText())) {
+            throw new IllegalArgumentException("Expected a GeoJSON FeatureCollection");
+        }
+        List<Location> updated = new ArrayList<>();
+        List<String> unmatched = new ArrayList<>();
+        List<String> ambiguous = new ArrayList<>();
+        for (JsonNode feature : featureCollection.path("features")) {
+            JsonNode properties = feature.path("properties");
+            String locationId = properties.path("locationId").asText(null);
+            String name = properties.path("name").asText(null);
+            List<Location> candidates;
+            try {
+                candidates = locationId != null
+                        ? locationRepository.findById(UUID.fromString(locationId)).map(List::of).orElse(List.of())
+                        : name != null ? narrow(locationRepository.findAllByName(name), properties) : List.of();
+            } catch (IllegalArgumentException e) {
+                // A malformed locationId, type or parentId only costs this feature
+                candidates = List.of();
+            }
+            String key = locationId != null ? locationId : String.valueOf(name);
+            if (candidates.size() != 1) {
+                unmatched.add(key);
+                if (candidates.size() > 1) {
+                    ambiguous.add(key);
+                }
+                continue;
+            }
+            Location location = candidates.get(0);
+            JsonNode geometry = feature.path("geometry");
+            // Parsing validates the geometry before it is stored
+            Boundary.fromGeoJson(geometry);
+            location.setBoundary(geometry.toString());
+            updated.add(location);
+        }
+        locationRepository.saveAll(updated);
+        geofenceIndex.locationsUpdated(updated);
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("imported", updated.size());
+        result.put("unmatched", unmatched);
+        result.put("ambiguous", ambiguous);
+        return result;
+    }
+
+    // Keeps the locations that agree with the feature's optional type, parent and parentId properties
+    private static List<Location> narrow(List<Location> candidates, JsonNode properties) {
+        String type = properties.path("type").asText(null);
+        String parent = properties.path("parent").asText(null);
+        String parentId = properties.path("parentId").asText(null);
+        LocationType wantedType = type != null ? LocationType.valueOf(type.trim().toUpperCase()) : null;
+        UUID wantedParentId = parentId != null ? UUID.fromString(parentId) : null;
+        List<Location> matches = new ArrayList<>(candidates.size());
+        for (Location candidate : candidates) {
+            Location candidateParent = candidate.getParent();
+            if ((wantedType == null || wantedType == candidate.getType())
+                    && (parent == null || candidateParent != null && parent.equalsIgnoreCase(candidateParent.getName()))
+                    && (wantedParentId == null || candidateParent != null
+                            && wantedParentId.equals(candidateParent.getLocationId()))) {
+                matches.add(candidate);
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Locations whose boundary contains the point, innermost first.
+     */
+    public List<Location> findContaining(double latitude, double longitude) {
+        List<UUID> ids = geofenceIndex.locate(latitude, longitude);
+        Map<UUID, Location> byId = new HashMap<>();
+        for (Location location : locationRepository.findAllById(ids)) {
+            byId.put(location.getLocationId(), location);
+        }
+        List<Location> locations = new ArrayList<>(ids.size());
+        for (UUID id : ids) {
+            if (byId.containsKey(id)) {
+                locations.add(byId.get(id));
+            }
+        }
+        return locations;
+    }
+
     public void deleteLocation(UUID id) {
         Location location = findById(id);
         locationRepository.delete(location);
+        geofenceIndex.locationRemoved(id);
     }
 }
\ No newline at end of file
@@ -1,18 +1,29 @@
 package mahoro.backend.service;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import mahoro.backend.dto.LocationReportDTO;
+import mahoro.backend.geo.GeofenceKernel;
 import mahoro.backend.model.AlertType;
 import mahoro.backend.model.Device;
-import mahoro.backend.model.Location;
 import mahoro.backend.model.LocationHistory;
 import mahoro.backend.repository.DeviceRepository;
 import mahoro.backend.repository.LocationHistoryRepository;
@@ -22,45 +33,186 @@ import mahoro.backend.repository.LocationHistoryRepository;
 @RequiredArgsConstructor
 public class LocationTrackingService {
 
+    public static final int MAX_BATCH_SIZE = 1000;
+
     private final DeviceRepository deviceRepository;
     private final LocationHistoryRepository locationHistoryRepository;
     private final AlertService alertService;
+    private final LastSeenTracker lastSeenTracker;
+    private final DeviceImeiCache deviceImeiCache;
+    private final DuplicateReportFilter duplicateReportFilter;
+    private final PointThinningFilter pointThinningFilter;
+    private final GeofenceIndex geofenceIndex;
+    private final GeofenceStateTracker geofenceStateTracker;
+    private final MotionTracker motionTracker;
+    private final BatteryMonitor batteryMonitor;
+    private final LatestPositionCache latestPositionCache;
+
+    @Value("${tracking.bulk-insert.min-rows:100}")
+    private int bulkInsertMinRows = 100;
 
     @Transactional
-    public LocationHistory reportLocation(UUID deviceId, Double latitude, Double longitude, String address) {
+    public List<LocationHistory> reportLocations(List<LocationReportDTO> reports) {
+        if (reports == null || reports.isEmpty()) {
+            throw new IllegalArgumentException("At least one location is required");
+        }
+        if (reports.size() > MAX_BATCH_SIZE) {
+            throw new IllegalArgumentException("A batch may contain at most " + MAX_BATCH_SIZE + " locations");
+        }
+
+        List<UUID> deviceIds = resolveDeviceIds(reports);
+
+        // Retransmissions are answered from memory; only first sightings reach the database
+        List<LocationReportDTO> fresh = new ArrayList<>(reports.size());
+        List<UUID> freshDeviceIds = new ArrayList<>(reports.size());
+        for (int i = 0; i < reports.size(); i++) {
+            if (duplicateReportFilter.markNew(deviceIds.get(i), reports.get(i))) {
+                fresh.add(reports.get(i));
+                freshDeviceIds.add(deviceIds.get(i));
+            }
+        }
+        if (fresh.isEmpty()) {
+            log.debug("Dropped batch of {} duplicate locations", reports.size());
+            return List.of();
+        }
+
+        // The marks only hold once the batch is committed; a failed store or commit lets the retransmission in
+        boolean inTransaction = TransactionSynchronizationManager.isSynchronizationActive();
+        if (inTransaction) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status != STATUS_COMMITTED) {
+                        releaseMarks(fresh, freshDeviceIds);
+                    }
+                }
+            });
+        }
         try {
-            Device device = deviceRepository.findById(deviceId)
-                    .orElseThrow(() -> new RuntimeException("Device not found"));
+            return storeLocations(fresh, freshDeviceIds);
+        } catch (RuntimeException e) {
+            if (!inTransaction) {
+                releaseMarks(fresh, freshDeviceIds);
+            }
+            throw e;
+        }
+    }
+
+    private void releaseMarks(List<LocationReportDTO> reports, List<UUID> deviceIds) {
+        for (int i = 0; i < reports.size(); i++) {
+            duplicateReportFilter.release(deviceIds.get(i), reports.get(i));
+        }
+    }
+
+    private List<LocationHistory> storeLocations(List<LocationReportDTO> reports, List<UUID> deviceIds) {
+        Map<UUID, Device> devicesById = new HashMap<>();
+        for (Device device : deviceRepository.findAllById(new HashSet<>(deviceIds))) {
+            devicesById.put(device.getDeviceId(), device);
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        List<LocationHistory> locations = new ArrayList<>(reports.size());
+        Map<UUID, LocationHistory> latestByDevice = new LinkedHashMap<>();
+        Map<UUID, List<LocationHistory>> pointsByDevice = new LinkedHashMap<>();
+        Map<UUID, List<BatteryMonitor.Reading>> batteryByDevice = new LinkedHashMap<>();
+        Map<UUID, PointThinningFilter.Anchor> anchors = new HashMap<>();
+
+        for (int i = 0; i < reports.size(); i++) {
+            LocationReportDTO report = reports.get(i);
+            if (Double.isNaN(report.latitude()) || Double.isNaN(report.longitude())) {
+                throw new IllegalArgumentException("Latitude and longitude are required");
+            }
+            Device device = devicesById.get(deviceIds.get(i));
+            if (device == null) {
+                throw new RuntimeException("Device not found: "
+                        + (report.deviceId() != null ? report.deviceId() : report.imei()));
+            }
 
             LocationHistory location = new LocationHistory();
             location.setDevice(device);
-            location.setLatitude(latitude);
-            location.setLongitude(longitude);
-            location.setRecordedAddress(address);
-            location.setTimestamp(LocalDateTime.now());
-
-            // Update device's last reported time
-            device.setLastReportedAt(LocalDateTime.now());
-            deviceRepository.save(device);
-
-            // Check for geofence violations (if any geofence is set)
-            checkGeofenceViolations(device, latitude, longitude);
-
-            LocationHistory savedLocation = locationHistoryRepository.save(location);
-            log.info("Location reported for device {}: {}, {}", deviceId, latitude, longitude);
-            
-            return savedLocation;
-        } catch (Exception e) {
-            log.error("Error reporting location for device {}: {}", deviceId, e.getMessage());
-            throw new RuntimeException("Failed to report location: " + e.getMessage());
+            location.setLatitude(report.latitude());
+            location.setLongitude(report.longitude());
+            location.setRecordedAddress(report.address());
+            location.setTimestamp(report.timestamp() != null ? report.timestamp()
+                    : report.receivedAt() != null ? report.receivedAt() : now);
+
+            // Thinned fixes are not stored but still count as the device's latest sighting
+            UUID deviceId = device.getDeviceId();
+            PointThinningFilter.Anchor anchor = anchors.containsKey(deviceId)
+                    ? anchors.get(deviceId)
+                    : pointThinningFilter.lastStored(deviceId);
+            if (!pointThinningFilter.isRedundant(device.getDeviceType(), anchor,
+                    report.latitude(), report.longitude(), location.getTimestamp())) {
+                locations.add(location);
+                if (anchor == null || !location.getTimestamp().isBefore(anchor.timestamp())) {
+                    anchors.put(deviceId, new PointThinningFilter.Anchor(
+                            report.latitude(), report.longitude(), location.getTimestamp()));
+                }
+            }
+
+            pointsByDevice.computeIfAbsent(deviceId, id -> new ArrayList<>()).add(location);
+            if (report.battery() != null) {
+                batteryByDevice.computeIfAbsent(deviceId, id -> new ArrayList<>())
+                        .add(new BatteryMonitor.Reading(report.battery(), location.getTimestamp()));
+            }
+            latestByDevice.merge(device.getDeviceId(), location,
+                    (current, candidate) -> candidate.getTimestamp().isBefore(current.getTimestamp()) ? current : candidate);
+        }
+
+        // Every fix is checked in time order, thinned ones included, so a buffered upload cannot hide an excursion
+        pointsByDevice.forEach((deviceId, points) -> {
+            points.sort(Comparator.comparing(LocationHistory::getTimestamp));
+            trackMotion(points);
+            checkGeofenceViolations(deviceId, points);
+        });
+        batteryByDevice.forEach((deviceId, readings) -> checkBattery(devicesById.get(deviceId), readings));
+
+        List<LocationHistory> savedLocations;
+        if (locations.isEmpty()) {
+            savedLocations = List.of();
+        } else if (locations.size() >= bulkInsertMinRows) {
+            // Large group commits skip the persistence context and go straight to JDBC (COPY on PostgreSQL)
+            savedLocations = locationHistoryRepository.insertAll(locations);
+        } else {
+            savedLocations = locationHistoryRepository.saveAll(locations);
         }
+        latestPositionCache.update(savedLocations);
+        // A rolled-back batch must neither move the anchor, which would thin its retry as stationary,
+        // nor mark the device as seen
+        AfterCommit.run(() -> {
+            anchors.forEach(pointThinningFilter::remember);
+            for (LocationHistory latest : latestByDevice.values()) {
+                lastSeenTracker.touch(latest.getDevice().getDeviceId(), latest.getTimestamp());
+            }
+        });
+        log.info("Batch of {} locations reported for {} devices, {} stored", reports.size(), latestByDevice.size(),
+                savedLocations.size());
+
+        return savedLocations;
     }
 
-    @Transactional
-    public LocationHistory reportLocationByImei(String imei, Double latitude, Double longitude) {
-        Device device = deviceRepository.findByImei(imei)
-                .orElseThrow(() -> new RuntimeException("Device not found with IMEI: " + imei));
-        return reportLocation(device.getDeviceId(), latitude, longitude, null);
+    // Device ids in report order; IMEIs are resolved through the cache so duplicates can be spotted without a query
+    private List<UUID> resolveDeviceIds(List<LocationReportDTO> reports) {
+        Set<String> imeis = new HashSet<>();
+        for (LocationReportDTO report : reports) {
+            if (report.deviceId() == null) {
+                if (report.imei() == null) {
+                    throw new IllegalArgumentException("Each location needs a deviceId or an imei");
+                }
+                imeis.add(report.imei());
+            }
+        }
+        Map<String, UUID> deviceIdsByImei = imeis.isEmpty() ? Map.of() : deviceImeiCache.resolveAll(imeis);
+
+        List<UUID> deviceIds = new ArrayList<>(reports.size());
+        for (LocationReportDTO report : reports) {
+            UUID deviceId = report.deviceId() != null ? report.deviceId() : deviceIdsByImei.get(report.imei());
+            if (deviceId == null) {
+                throw new RuntimeException("Device not found: " + report.imei());
+            }
+            deviceIds.add(deviceId);
+        }
+        return deviceIds;
     }
 
     public List<LocationHistory> getLocationHistory(UUID deviceId, int hours) {
@@ -69,6 +221,10 @@ public class LocationTrackingService {
                 deviceId, since);
     }
 
+    public Optional<LatestPositionCache.Position> getCurrentPosition(UUID deviceId) {
+        return latestPositionCache.get(deviceId);
+    }
+
     public Optional<LocationHistory> getLatestLocation(UUID deviceId) {
         return locationHistoryRepository.findTopByDevice_DeviceIdOrderByTimestampDesc(deviceId);
     }
@@ -77,49 +233,171 @@ public class LocationTrackingService {
         return locationHistoryRepository.findByDevice_DeviceIdOrderByTimestampDesc(deviceId);
     }
 
-    private void checkGeofenceViolations(Device device, Double latitude, Double longitude) {
-        // Check if device is outside assigned location (geofence)
-        if (device.getUser() != null && device.getUser().getAssignedLocation() != null) {
-            Location assignedLocation = device.getUser().getAssignedLocation();
-            if (assignedLocation.getCenterLatitude() != null && assignedLocation.getCenterLongitude() != null) {
-                double distance = calculateDistance(
-                        latitude, longitude,
-                        assignedLocation.getCenterLatitude(), assignedLocation.getCenterLongitude()
-                );
-               
-                if (distance > 1.0) { 
-                    try {
-                        alertService.createAlert(
-                            device.getDeviceId(),
-                            String.format("Device moved %,.2f km outside assigned location", distance),
-                            AlertType.GEOFENCE_VIOLATION,
-                            latitude,
-                            longitude
-                        );
-                        log.warn("Geofence violation detected for device {}: moved {} km from assigned location", 
-                                device.getDeviceId(), String.format("%.2f", distance));
-                    } catch (Exception e) {
-                        log.error("Failed to create geofence alert for device {}: {}", device.getDeviceId(), e.getMessage());
-                    }
+    private void checkBattery(Device device, List<BatteryMonitor.Reading> readings) {
+        readings.sort(Comparator.comparing(BatteryMonitor.Reading::timestamp));
+        BatteryMonitor.Pending state = batteryMonitor.begin(device.getDeviceId());
+        for (BatteryMonitor.Reading reading : readings) {
+            BatteryMonitor.Crossing crossing = state.update(reading);
+            if (crossing == BatteryMonitor.Crossing.LOW) {
+                createLowBatteryAlert(device, (double) reading.percent());
+            } else if (crossing == BatteryMonitor.Crossing.RECOVERED) {
+                log.info("Battery of device {} recovered to {}%", device.getDeviceId(), reading.percent());
+            }
+        }
+        AfterCommit.run(state::apply);
+    }
+
+    // Points must be of one device and in time order; its motion state is written back once they are committed
+    private void trackMotion(List<LocationHistory> points) {
+        Device device = points.get(0).getDevice();
+        MotionTracker.Pending state = motionTracker.begin(device.getDeviceId());
+        for (LocationHistory point : points) {
+            MotionTracker.Motion motion = state.update(point.getLatitude(), point.getLongitude(), point.getTimestamp());
+            point.setSpeedKmh(motion.speedKmh());
+            point.setHeadingDegrees(motion.headingDegrees());
+            for (MotionTracker.Event event : motion.events()) {
+                raiseMotionAlert(device, event, motion.speedKmh(), point);
+            }
+        }
+        AfterCommit.run(state::apply);
+    }
+
+    private void raiseMotionAlert(Device device, MotionTracker.Event event, Double speedKmh, LocationHistory point) {
+        // Starting and stopping only matter for devices that are meant to stay put
+        boolean stationary = motionTracker.isStationaryType(device.getDeviceType());
+        switch (event) {
+            case MOVEMENT -> {
+                if (stationary) {
+                    createMovementAlert(device, point.getLatitude(), point.getLongitude());
+                }
+            }
+            case STOPPED -> {
+                if (stationary) {
+                    createMotionAlert(device, "Device came to rest again", AlertType.DEVICE_STOPPED, point);
                 }
             }
+            case OVER_SPEED -> createMotionAlert(device,
+                    String.format("Device moving at %.0f km/h", speedKmh), AlertType.OVER_SPEED, point);
+        }
+    }
+
+    private void createMotionAlert(Device device, String message, AlertType type, LocationHistory point) {
+        try {
+            alertService.createAlert(device.getDeviceId(), message, type, point.getLatitude(), point.getLongitude());
+        } catch (Exception e) {
+            log.error("Failed to create {} alert for device {}: {}", type, device.getDeviceId(), e.getMessage());
         }
     }
 
-    private double calculateDistance(double lat1, double lon1, double lat2, double lon2) {
-    
-        final int R = 6371; 
-        
-        double latDistance = Math.toRadians(lat2 - lat1);
-        double lonDistance = Math.toRadians(lon2 - lon1);
-        
-        double a = Math.sin(latDistance / 2) * Math.sin(latDistance / 2)
-                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2))
-                * Math.sin(lonDistance / 2) * Math.sin(lonDistance / 2);
-        
-        double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
-        
-        return R * c;
+    // Points must be in time order
+    private void checkGeofenceViolations(UUID deviceId, List<LocationHistory> points) {
+        // Fence and its ancestors come from memory; the device's user and location tree are never loaded here
+        GeofenceIndex.Fence fence = geofenceIndex.fenceFor(deviceId);
+        if (fence == null) {
+            AfterCommit.run(() -> geofenceStateTracker.forget(deviceId));
+            return;
+        }
+        List<GeofenceIndex.FenceLevel> ancestors = geofenceIndex.ancestorFences(fence.locationId());
+        int count = points.size();
+        double[] latitudes = new double[count];
+        double[] longitudes = new double[count];
+        for (int i = 0; i < count; i++) {
+            latitudes[i] = points.get(i).getLatitude();
+            longitudes[i] = points.get(i).getLongitude();
+        }
+        double hysteresisKm = geofenceStateTracker.getHysteresisKm();
+        byte[][] zones = new byte[ancestors.size() + 1][count];
+        fence.classify(latitudes, longitudes, count, hysteresisKm, zones[0]);
+        for (int level = 1; level < zones.length; level++) {
+            // Ancestors are all polygons, but a circle around the assigned location can reach past its parent
+            boolean nested = level > 1 || fence.boundary() != null;
+            classifyAncestor(ancestors.get(level - 1).fence(), latitudes, longitudes, hysteresisKm,
+                    nested ? zones[level - 1] : null, zones[level]);
+        }
+
+        // Only crossings raise alerts, and a fix that crosses several levels at once raises one:
+        // the widest area left, or the narrowest area returned to. The crossing state advances on
+        // a copy that replaces the device's state only if the alerts are committed.
+        GeofenceStateTracker.Pending state = geofenceStateTracker.begin(deviceId);
+        for (int i = 0; i < count; i++) {
+            int exitedLevel = -1;
+            int enteredLevel = -1;
+            for (int level = 0; level < zones.length; level++) {
+                UUID locationId = level == 0 ? fence.locationId() : ancestors.get(level - 1).fence().locationId();
+                GeofenceStateTracker.Transition transition = state.update(level, locationId,
+                        zones[level][i], points.get(i).getTimestamp());
+                if (transition == GeofenceStateTracker.Transition.EXITED) {
+                    exitedLevel = level;
+                } else if (transition == GeofenceStateTracker.Transition.ENTERED && enteredLevel < 0) {
+                    enteredLevel = level;
+                }
+            }
+            if (exitedLevel >= 0) {
+                raiseGeofenceAlert(deviceId, fence, exitedLevel == 0 ? null : ancestors.get(exitedLevel - 1),
+                        true, latitudes[i], longitudes[i]);
+            }
+            if (enteredLevel >= 0) {
+                raiseGeofenceAlert(deviceId, fence, enteredLevel == 0 ? null : ancestors.get(enteredLevel - 1),
+                        false, latitudes[i], longitudes[i]);
+            }
+        }
+        AfterCommit.run(state::apply);
+    }
+
+    // Polygons nest, so a fix inside the polygon below is inside this one too and only the rest are
+    // tested; without an inner polygon (null) every fix is tested
+    private static void classifyAncestor(GeofenceIndex.Fence ancestor, double[] latitudes, double[] longitudes,
+            double hysteresisKm, byte[] inner, byte[] zones) {
+        if (inner == null) {
+            ancestor.classify(latitudes, longitudes, zones.length, hysteresisKm, zones);
+            return;
+        }
+        int pending = 0;
+        int[] indexes = new int[inner.length];
+        for (int i = 0; i < inner.length; i++) {
+            if (inner[i] == GeofenceKernel.INSIDE) {
+                zones[i] = GeofenceKernel.INSIDE;
+            } else {
+                indexes[pending++] = i;
+            }
+        }
+        if (pending == 0) {
+            return;
+        }
+        double[] pendingLatitudes = new double[pending];
+        double[] pendingLongitudes = new double[pending];
+        for (int j = 0; j < pending; j++) {
+            pendingLatitudes[j] = latitudes[indexes[j]];
+            pendingLongitudes[j] = longitudes[indexes[j]];
+        }
+        byte[] pendingZones = new byte[pending];
+        ancestor.classify(pendingLatitudes, pendingLongitudes, pending, hysteresisKm, pendingZones);
+        for (int j = 0; j < pending; j++) {
+            zones[indexes[j]] = pendingZones[j];
+        }
+    }
+
+    private void raiseGeofenceAlert(UUID deviceId, GeofenceIndex.Fence fence, GeofenceIndex.FenceLevel ancestor,
+            boolean exited, double latitude, double longitude) {
+        double distance = fence.kernel().distanceKm(latitude, longitude);
+        String area = ancestor == null
+                ? "its assigned area"
+                : "the " + ancestor.type().name().toLowerCase() + " " + ancestor.name() + " around its assigned area";
+        try {
+            alertService.createAlert(
+                deviceId,
+                exited
+                    ? String.format("Device left %s, %,.2f km from the center", area, distance)
+                    : "Device returned to " + area,
+                exited ? AlertType.GEOFENCE_VIOLATION : AlertType.GEOFENCE_REENTRY,
+                latitude,
+                longitude
+            );
+            log.warn("Geofence {} of {} for device {} at {} km from its assigned location",
+                    exited ? "exit" : "re-entry", area, deviceId, String.format("%.2f", distance));
+        } catch (Exception e) {
+            log.error("Failed to create geofence alert for device {}: {}", deviceId, e.getMessage());
+        }
     }
 
    
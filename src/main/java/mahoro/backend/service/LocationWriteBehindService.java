@@ -0,0 +1,318 @@
+package mahoro.backend.service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import mahoro.backend.dto.LocationReportDTO;
+
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class LocationWriteBehindService {
+
+    public enum Durability {
+        // Acknowledge as soon as the point is queued; a crash loses whatever has not been flushed yet
+        ACCEPTED,
+        // Acknowledge once the group commit containing the point has completed
+        COMMITTED
+    }
+
+    private final LocationTrackingService locationTrackingService;
+    private final LocationJournal locationJournal;
+    private final LocationIngestLanes locationIngestLanes;
+
+    @Value("${tracking.ingest.async.enabled:false}")
+    private boolean enabled;
+
+    @Value("${tracking.ingest.async.queue-capacity:10000}")
+    private int queueCapacity;
+
+    @Value("${tracking.ingest.async.batch-size:500}")
+    private int batchSize;
+
+    @Value("${tracking.ingest.async.max-delay-ms:200}")
+    private long maxDelayMs;
+
+    @Value("${tracking.ingest.async.durability:ACCEPTED}")
+    private Durability durability;
+
+    @Value("${tracking.ingest.async.shutdown-timeout-ms:10000}")
+    private long shutdownTimeoutMs;
+
+    private BlockingQueue<PendingReport> queue;
+    // A lock rather than a monitor, so virtual threads waiting to enqueue do not pin their carrier. The
+    // journal is only forced after it has been released
+    private final ReentrantLock enqueueLock = new ReentrantLock();
+    private Thread writer;
+    private volatile boolean running;
+
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong commits = new AtomicLong();
+    private volatile int lastBatchSize;
+    private volatile long lastCommitMillis;
+
+    @PostConstruct
+    void start() {
+        // Points acknowledged but not yet stored when the previous run stopped go in first. The socket
+        // listeners and the controllers depend on this bean and the web server starts after every bean,
+        // so nothing live is ingested until the replay is done
+        locationJournal.replay(LocationTrackingService.MAX_BATCH_SIZE, this::storeReplayed);
+        if (!enabled) {
+            return;
+        }
+        batchSize = Math.min(batchSize, LocationTrackingService.MAX_BATCH_SIZE);
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        running = true;
+        writer = new Thread(this::drainLoop, "location-writer");
+        writer.start();
+        log.info("Write-behind ingestion enabled (capacity {}, batch {}, max delay {} ms, durability {})",
+                queueCapacity, batchSize, maxDelayMs, durability);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public Durability getDurability() {
+        return durability;
+    }
+
+    public CompletableFuture<Void> submit(LocationReportDTO report) {
+        return submitAll(List.of(report)).get(0);
+    }
+
+    /**
+     * Queues the reports, all or none: when the queue cannot take the whole batch it is rejected with
+     * {@link RejectedExecutionException} and nothing is queued or journaled.
+     */
+    public List<CompletableFuture<Void>> submitAll(List<LocationReportDTO> reports) {
+        if (!enabled) {
+            throw new IllegalStateException("Write-behind ingestion is disabled");
+        }
+        if (!running) {
+            throw new IllegalStateException("Write-behind ingestion is shutting down");
+        }
+        List<CompletableFuture<Void>> futures = new ArrayList<>(reports.size());
+        enqueueLock.lock();
+        try {
+            // Only submitters take queue space and they all hold the lock, so the whole batch fits
+            if (queue.remainingCapacity() < reports.size()) {
+                rejected.addAndGet(reports.size());
+                throw new RejectedExecutionException("Ingest queue is full, retry later");
+            }
+            for (LocationReportDTO report : reports) {
+                if (report.timestamp() == null) {
+                    // Stamp at acceptance time, not at flush time; kept apart from the timestamp so that
+                    // points stamped in the same millisecond are not taken for retransmissions
+                    report = new LocationReportDTO(report.deviceId(), report.imei(), report.latitude(),
+                            report.longitude(), report.address(), null, report.sequence(), report.battery(),
+                            LocalDateTime.now());
+                }
+                CompletableFuture<Void> done = new CompletableFuture<>();
+                // Journal and queue order must match, so that committing a batch's last position covers every earlier entry
+                long position = locationJournal.isEnabled() ? locationJournal.append(report) : 0;
+                queue.offer(new PendingReport(report, done, position));
+                futures.add(durability == Durability.ACCEPTED ? CompletableFuture.completedFuture(null) : done);
+            }
+        } finally {
+            enqueueLock.unlock();
+        }
+        if (locationJournal.isEnabled()) {
+            // With fsync-interval-ms=0 nothing is acknowledged before it is on disk
+            locationJournal.syncAppended();
+        }
+        accepted.addAndGet(reports.size());
+        return futures;
+    }
+
+    private void drainLoop() {
+        List<PendingReport> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingReport first = queue.poll(maxDelayMs, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxDelayMs);
+                while (batch.size() < batchSize) {
+                    if (queue.drainTo(batch, batchSize - batch.size()) > 0) {
+                        continue;
+                    }
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        break;
+                    }
+                    PendingReport next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                flush(batch);
+            } catch (InterruptedException e) {
+                // Shutdown interrupts only after the timeout; whatever is still queued is flushed below
+                Thread.currentThread().interrupt();
+                break;
+            } finally {
+                batch.clear();
+            }
+        }
+        if (!queue.isEmpty()) {
+            queue.drainTo(batch);
+            flush(batch);
+        }
+    }
+
+    private void flush(List<PendingReport> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        if (storeOnLanes(batch) && locationJournal.isEnabled()) {
+            locationJournal.commit(batch.get(batch.size() - 1).journalPosition());
+        }
+        commits.incrementAndGet();
+        lastBatchSize = batch.size();
+        lastCommitMillis = System.currentTimeMillis() - start;
+    }
+
+    // Each lane stores its share of the batch in one commit, so write-behind keeps the per-device single
+    // writer the other ingest paths have. Returns false if interrupted before every share was queued
+    private boolean storeOnLanes(List<PendingReport> batch) {
+        List<LocationReportDTO> reports = new ArrayList<>(batch.size());
+        for (PendingReport pending : batch) {
+            reports.add(pending.report());
+        }
+        int[] laneOf = locationIngestLanes.lanesOf(reports);
+        Map<Integer, List<PendingReport>> byLane = new LinkedHashMap<>();
+        for (int i = 0; i < laneOf.length; i++) {
+            byLane.computeIfAbsent(laneOf[i], lane -> new ArrayList<>()).add(batch.get(i));
+        }
+
+        List<CompletableFuture<Void>> queued = new ArrayList<>(byLane.size());
+        boolean complete = true;
+        for (Map.Entry<Integer, List<PendingReport>> share : byLane.entrySet()) {
+            if (complete) {
+                try {
+                    queued.add(locationIngestLanes.execute(share.getKey(), () -> storeGroup(share.getValue())));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    complete = false;
+                }
+            }
+            if (!complete) {
+                // Left uncommitted in the journal, so a journaled point is replayed on the next start
+                failed.addAndGet(share.getValue().size());
+                RejectedExecutionException interrupted = new RejectedExecutionException("Interrupted before the location was stored");
+                share.getValue().forEach(pending -> pending.done().completeExceptionally(interrupted));
+            }
+        }
+        queued.forEach(CompletableFuture::join);
+        return complete;
+    }
+
+    private void storeGroup(List<PendingReport> group) {
+        List<LocationReportDTO> reports = new ArrayList<>(group.size());
+        for (PendingReport pending : group) {
+            reports.add(pending.report());
+        }
+        try {
+            locationTrackingService.reportLocations(reports);
+            written.addAndGet(group.size());
+            group.forEach(pending -> pending.done().complete(null));
+        } catch (Exception e) {
+            // One bad point (e.g. an unknown device) must not drop the rest of the group
+            log.warn("Group commit of {} locations failed, retrying individually: {}", group.size(), e.getMessage());
+            for (PendingReport pending : group) {
+                try {
+                    storeSingle(pending.report());
+                    pending.done().complete(null);
+                } catch (Exception single) {
+                    pending.done().completeExceptionally(single);
+                }
+            }
+        }
+    }
+
+    private void storeSingle(LocationReportDTO report) {
+        try {
+            locationTrackingService.reportLocations(List.of(report));
+            written.incrementAndGet();
+        } catch (RuntimeException e) {
+            failed.incrementAndGet();
+            log.error("Dropping location for device {}: {}",
+                    report.deviceId() != null ? report.deviceId() : report.imei(), e.getMessage());
+            throw e;
+        }
+    }
+
+    // Reports recovered from the journal after a restart, stored like a group commit
+    private void storeReplayed(List<LocationReportDTO> reports) {
+        List<PendingReport> batch = new ArrayList<>(reports.size());
+        for (LocationReportDTO report : reports) {
+            batch.add(new PendingReport(report, new CompletableFuture<>(), 0));
+        }
+        storeOnLanes(batch);
+    }
+
+    @PreDestroy
+    void stop() {
+        if (!enabled || writer == null) {
+            return;
+        }
+        log.info("Draining {} queued locations before shutdown", queue.size());
+        running = false;
+        try {
+            writer.join(shutdownTimeoutMs);
+            if (writer.isAlive()) {
+                writer.interrupt();
+                writer.join(shutdownTimeoutMs);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!queue.isEmpty()) {
+            log.error("Shutdown timed out with {} locations still queued", queue.size());
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("durability", durability);
+        stats.put("queueDepth", queue != null ? queue.size() : 0);
+        stats.put("queueCapacity", queueCapacity);
+        stats.put("accepted", accepted.get());
+        stats.put("rejected", rejected.get());
+        stats.put("written", written.get());
+        stats.put("failed", failed.get());
+        stats.put("commits", commits.get());
+        stats.put("lastBatchSize", lastBatchSize);
+        stats.put("lastCommitMillis", lastCommitMillis);
+        return stats;
+    }
+
+    private record PendingReport(LocationReportDTO report, CompletableFuture<Void> done, long journalPosition) {}
+}
@@ -0,0 +1,247 @@
+package mahoro.backend.service;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import mahoro.backend.model.DeviceType;
+import mahoro.backend.state.FleetStateTable;
+
+/**
+ * Incremental motion state per device: the last fix, the speed and heading derived from it, and
+ * since when the device has been still, held as primitive rows in a FleetStateTable. Each report
+ * updates the state in constant time and may complete an event. A still device starts moving once
+ * a leg is faster than the moving speed and has also taken it beyond the jitter radius of where it
+ * came to rest; it counts as stopped again once it has stayed below that speed for the stopped
+ * time.
+ *
+ * <p>Ingest works on a {@link Pending} copy of a device's row and writes it back once the
+ * transaction that stores the fixes and their alerts has committed.
+ */
+@Slf4j
+@Service
+public class MotionTracker {
+
+    public enum Event { MOVEMENT, OVER_SPEED, STOPPED }
+
+    public record Motion(Double speedKmh, Double headingDegrees, List<Event> events) {
+
+        static final Motion UNKNOWN = new Motion(null, null, List.of());
+    }
+
+    private static final double EARTH_RADIUS_METERS = 6_371_000;
+
+    @Value("${tracking.motion.moving-speed-kmh:5}")
+    private double movingSpeedKmh = 5;
+
+    @Value("${tracking.motion.over-speed-kmh:120}")
+    private double overSpeedKmh = 120;
+
+    @Value("${tracking.motion.jitter-meters:25}")
+    private double jitterMeters = 25;
+
+    @Value("${tracking.motion.stopped-seconds:300}")
+    private long stoppedSeconds = 300;
+
+    // A fix this soon after the last one is not used as a leg end: over a few hundred milliseconds,
+    // GPS noise alone reads as motorway speed
+    @Value("${tracking.motion.min-leg-millis:1000}")
+    private long minLegMillis = 1000;
+
+    // Device types that are expected to stay put, so that moving at all is worth an alert
+    @Value("${tracking.motion.stationary-types:PC,SERVER}")
+    private String stationaryTypeSpec = "PC,SERVER";
+
+    private final Set<DeviceType> stationaryTypes = EnumSet.noneOf(DeviceType.class);
+
+    // Row layout in the state table, 32 bytes a device: float coordinates (about 0.2 m apart at
+    // these latitudes), the fix time as a long of epoch millis of the local report time, and the
+    // flags. Positions are rounded to float before use so that a repeated fix has zero distance.
+    private static final int LATITUDE = 0;
+    private static final int LONGITUDE = 1;
+    private static final int TIME = 2;
+    private static final int FLAGS = 4;
+    // Time (epoch seconds, unsigned) and place of the first slow fix since the device last moved,
+    // valid while STILL is set
+    private static final int STILL_SINCE = 5;
+    private static final int STILL_LATITUDE = 6;
+    private static final int STILL_LONGITUDE = 7;
+    private static final int WIDTH = 8;
+
+    private static final int MOVING = 1;
+    private static final int OVER_SPEED = 2;
+    private static final int STILL = 4;
+
+    private final FleetStateTable states = new FleetStateTable(WIDTH, 0);
+
+    /**
+     * A device's motion state copied out of the table. Fixes fed to it change only the copy until
+     * apply writes it back.
+     */
+    public final class Pending {
+        private final UUID deviceId;
+        private final FleetStateTable.Row row;
+        private boolean fresh;
+
+        private Pending(UUID deviceId, FleetStateTable.Row row) {
+            this.deviceId = deviceId;
+            this.row = row;
+            this.fresh = row.isNew();
+        }
+
+        public Motion update(double latitude, double longitude, LocalDateTime timestamp) {
+            Motion motion = advance(row, fresh, latitude, longitude, timestamp);
+            fresh = false;
+            return motion;
+        }
+
+        public void apply() {
+            states.put(deviceId, row);
+        }
+    }
+
+    private final AtomicLong movements = new AtomicLong();
+    private final AtomicLong overSpeeds = new AtomicLong();
+    private final AtomicLong stops = new AtomicLong();
+    private final AtomicLong lateFixes = new AtomicLong();
+    private final AtomicLong shortLegs = new AtomicLong();
+
+    @PostConstruct
+    void start() {
+        for (String type : stationaryTypeSpec.split(",")) {
+            if (!type.isBlank()) {
+                stationaryTypes.add(DeviceType.valueOf(type.trim()));
+            }
+        }
+        log.info("Motion tracking: moving above {} km/h, over-speed above {} km/h, stopped after {}s, legs of {} ms or more",
+                movingSpeedKmh, overSpeedKmh, stoppedSeconds, minLegMillis);
+    }
+
+    public boolean isStationaryType(DeviceType type) {
+        return type != null && stationaryTypes.contains(type);
+    }
+
+    /**
+     * Feeds one fix and returns the speed and heading of the leg that ends at it, with any events
+     * it completes. Fixes older than the last one are late and leave the state untouched, and so
+     * do fixes less than the minimum leg time after it.
+     */
+    public Motion update(UUID deviceId, double latitude, double longitude, LocalDateTime timestamp) {
+        return states.compute(deviceId, row -> advance(row, row.isNew(), latitude, longitude, timestamp));
+    }
+
+    public Pending begin(UUID deviceId) {
+        return new Pending(deviceId, states.copy(deviceId));
+    }
+
+    private Motion advance(FleetStateTable.Row row, boolean fresh, double reportedLatitude, double reportedLongitude,
+            LocalDateTime timestamp) {
+        float latitude = (float) reportedLatitude;
+        float longitude = (float) reportedLongitude;
+        long time = timestamp.toInstant(ZoneOffset.UTC).toEpochMilli();
+        if (fresh) {
+            row.setFloat(LATITUDE, latitude);
+            row.setFloat(LONGITUDE, longitude);
+            row.setLong(TIME, time);
+            rest(row, latitude, longitude, time);
+            return Motion.UNKNOWN;
+        }
+        long millis = time - row.getLong(TIME);
+        if (millis <= 0) {
+            lateFixes.incrementAndGet();
+            return Motion.UNKNOWN;
+        }
+        if (millis < minLegMillis) {
+            // The leg keeps its start, so the next fix measures over the whole interval
+            shortLegs.incrementAndGet();
+            return Motion.UNKNOWN;
+        }
+
+        double previousLatitude = row.getFloat(LATITUDE);
+        double x = Math.toRadians(longitude - row.getFloat(LONGITUDE))
+                * Math.cos(Math.toRadians((latitude + previousLatitude) / 2));
+        double y = Math.toRadians(latitude - previousLatitude);
+        double speedKmh = Math.sqrt(x * x + y * y) * EARTH_RADIUS_METERS / millis * 3600;
+        int flags = row.getInt(FLAGS);
+        boolean fast = speedKmh >= movingSpeedKmh && ((flags & STILL) == 0 || distanceMeters(
+                row.getFloat(STILL_LATITUDE), row.getFloat(STILL_LONGITUDE), latitude, longitude) > jitterMeters);
+        row.setFloat(LATITUDE, latitude);
+        row.setFloat(LONGITUDE, longitude);
+        row.setLong(TIME, time);
+
+        List<Event> completed = new ArrayList<>(2);
+        Double heading = null;
+        if (fast) {
+            // Only a real leg has a meaningful direction; jitter while parked points anywhere
+            heading = (Math.toDegrees(Math.atan2(x, y)) + 360) % 360;
+            flags &= ~STILL;
+            if ((flags & MOVING) == 0) {
+                flags |= MOVING;
+                completed.add(Event.MOVEMENT);
+                movements.incrementAndGet();
+            }
+            if (speedKmh > overSpeedKmh && (flags & OVER_SPEED) == 0) {
+                flags |= OVER_SPEED;
+                completed.add(Event.OVER_SPEED);
+                overSpeeds.incrementAndGet();
+            } else if (speedKmh < overSpeedKmh * 0.9) {
+                flags &= ~OVER_SPEED;
+            }
+            row.setInt(FLAGS, flags);
+        } else {
+            row.setInt(FLAGS, flags & ~OVER_SPEED);
+            if ((flags & STILL) == 0) {
+                rest(row, latitude, longitude, time);
+            }
+            long stillSeconds = time / 1000 - Integer.toUnsignedLong(row.getInt(STILL_SINCE));
+            if ((flags & MOVING) != 0 && stillSeconds >= stoppedSeconds) {
+                row.setInt(FLAGS, row.getInt(FLAGS) & ~MOVING);
+                completed.add(Event.STOPPED);
+                stops.incrementAndGet();
+            }
+        }
+        return new Motion(speedKmh, heading, completed);
+    }
+
+    private static void rest(FleetStateTable.Row row, float latitude, float longitude, long time) {
+        row.setInt(FLAGS, row.getInt(FLAGS) | STILL);
+        row.setInt(STILL_SINCE, (int) (time / 1000));
+        row.setFloat(STILL_LATITUDE, latitude);
+        row.setFloat(STILL_LONGITUDE, longitude);
+    }
+
+    private static double distanceMeters(double lat1, double lon1, double lat2, double lon2) {
+        double x = Math.toRadians(lon2 - lon1) * Math.cos(Math.toRadians((lat1 + lat2) / 2));
+        double y = Math.toRadians(lat2 - lat1);
+        return Math.sqrt(x * x + y * y) * EARTH_RADIUS_METERS;
+    }
+
+    public void forget(UUID deviceId) {
+        states.remove(deviceId);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("trackedDevices", states.size());
+        stats.put("moving", states.count(FLAGS, flags -> (flags & MOVING) != 0));
+        stats.put("stateBytes", states.footprintBytes());
+        stats.put("movements", movements.get());
+        stats.put("overSpeeds", overSpeeds.get());
+        stats.put("stops", stops.get());
+        stats.put("lateFixes", lateFixes.get());
+        stats.put("shortLegs", shortLegs.get());
+        return stats;
+    }
+}
@@ -0,0 +1,132 @@
+package mahoro.backend.service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import mahoro.backend.model.DeviceType;
+
+/**
+ * Dead-band filter for stationary devices. A fix that lies within the policy radius of the device's
+ * last stored point, and arrives before the policy interval has passed, adds nothing to the history
+ * and is not stored. Policies are set per device type as TYPE=meters:seconds pairs; a zero radius
+ * stores every fix.
+ */
+@Slf4j
+@Service
+public class PointThinningFilter {
+
+    private static final double EARTH_RADIUS_METERS = 6_371_000;
+
+    @Value("${tracking.thinning.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${tracking.thinning.policies:PC=25:3600,SERVER=25:3600,LAPTOP=25:900}")
+    private String policySpec = "PC=25:3600,SERVER=25:3600,LAPTOP=25:900";
+
+    public record Policy(double radiusMeters, long maxIntervalSeconds) {}
+
+    public record Anchor(double latitude, double longitude, LocalDateTime timestamp) {}
+
+    private final Map<DeviceType, Policy> policies = new EnumMap<>(DeviceType.class);
+
+    private final Map<UUID, Anchor> lastStored = new ConcurrentHashMap<>();
+
+    private final Map<DeviceType, AtomicLong> suppressed = new EnumMap<>(DeviceType.class);
+
+    @PostConstruct
+    void start() {
+        for (DeviceType type : DeviceType.values()) {
+            suppressed.put(type, new AtomicLong());
+        }
+        for (String entry : policySpec.split(",")) {
+            if (entry.isBlank()) {
+                continue;
+            }
+            String[] typeAndValues = entry.trim().split("=");
+            String[] values = typeAndValues.length == 2 ? typeAndValues[1].split(":") : new String[0];
+            if (values.length != 2) {
+                throw new IllegalArgumentException("Invalid thinning policy: " + entry);
+            }
+            policies.put(DeviceType.valueOf(typeAndValues[0].trim()),
+                    new Policy(Double.parseDouble(values[0]), Long.parseLong(values[1])));
+        }
+        log.info("Point thinning {} with policies {}", enabled ? "enabled" : "disabled", policies);
+    }
+
+    public Anchor lastStored(UUID deviceId) {
+        return lastStored.get(deviceId);
+    }
+
+    /**
+     * True when the fix can be dropped because the anchor already records the device at that spot.
+     */
+    public boolean isRedundant(DeviceType type, Anchor anchor, double latitude, double longitude, LocalDateTime timestamp) {
+        if (!enabled || anchor == null || type == null) {
+            return false;
+        }
+        Policy policy = policies.get(type);
+        if (policy == null || policy.radiusMeters() <= 0) {
+            return false;
+        }
+        // Late fixes are kept; they fill a gap rather than repeat the anchor
+        if (timestamp.isBefore(anchor.timestamp())
+                || Duration.between(anchor.timestamp(), timestamp).getSeconds() >= policy.maxIntervalSeconds()) {
+            return false;
+        }
+        if (distanceMeters(anchor.latitude(), anchor.longitude(), latitude, longitude) > policy.radiusMeters()) {
+            return false;
+        }
+        suppressed.get(type).incrementAndGet();
+        return true;
+    }
+
+    public void remember(UUID deviceId, Anchor anchor) {
+        lastStored.merge(deviceId, anchor,
+                (current, candidate) -> candidate.timestamp().isBefore(current.timestamp()) ? current : candidate);
+    }
+
+    public void forget(UUID deviceId) {
+        lastStored.remove(deviceId);
+    }
+
+    @Scheduled(fixedDelayString = "${tracking.thinning.cleanup-interval-ms:60000}")
+    void evictExpired() {
+        // Past the longest policy interval an anchor cannot thin anything, so it is not worth keeping
+        long longest = policies.values().stream().mapToLong(Policy::maxIntervalSeconds).max().orElse(0);
+        LocalDateTime cutoff = LocalDateTime.now().minusSeconds(longest);
+        int before = lastStored.size();
+        lastStored.values().removeIf(anchor -> anchor.timestamp().isBefore(cutoff));
+        if (before != lastStored.size()) {
+            log.debug("Evicted {} expired thinning anchors", before - lastStored.size());
+        }
+    }
+
+    // Equirectangular approximation; exact enough at dead-band distances
+    private static double distanceMeters(double lat1, double lon1, double lat2, double lon2) {
+        double x = Math.toRadians(lon2 - lon1) * Math.cos(Math.toRadians((lat1 + lat2) / 2));
+        double y = Math.toRadians(lat2 - lat1);
+        return Math.sqrt(x * x + y * y) * EARTH_RADIUS_METERS;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("trackedDevices", lastStored.size());
+        Map<String, Long> suppressedByType = new HashMap<>();
+        suppressed.forEach((type, count) -> suppressedByType.put(type.name(), count.get()));
+        stats.put("suppressed", suppressedByType);
+        return stats;
+    }
+}
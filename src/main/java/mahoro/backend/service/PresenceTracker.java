@@ -0,0 +1,303 @@
+package mahoro.backend.service;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import mahoro.backend.repository.DeviceRepository;
+import mahoro.backend.state.FleetStateTable;
+import mahoro.backend.state.TimingWheel;
+
+/**
+ * Online and offline state of every device, kept as an event instead of being recomputed from the
+ * last report time on each read. A report that brings a device online arms its expiry on a timing
+ * wheel; the wheel tick takes it offline once the online window passes without a newer report,
+ * and raises one offline alert, batched with others due in the same tick, once it has stayed
+ * offline for the alert time. Reports of a device that is already online only move its last-seen
+ * time; the armed expiry notices the newer time when it fires and re-arms itself.
+ *
+ * <p>Each transition is published as a Transition application event, and online and
+ * device counts per owner are kept up to date so that stats never scan devices.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class PresenceTracker {
+
+    public enum Status { ONLINE, OFFLINE }
+
+    public record Transition(UUID deviceId, UUID userId, Status status, LocalDateTime lastSeen) {}
+
+    private final DeviceRepository deviceRepository;
+    private final AlertService alertService;
+    private final ApplicationEventPublisher eventPublisher;
+
+    @Value("${tracking.presence.online-minutes:5}")
+    private long onlineMinutes = 5;
+
+    @Value("${tracking.presence.offline-alert-minutes:60}")
+    private long offlineAlertMinutes = 60;
+
+    @Value("${tracking.presence.tick-ms:1000}")
+    private long tickMillis = 1000;
+
+    private static final int WHEEL_SLOTS = 4096;
+
+    // Row layout in the state table: last report time as a long of epoch millis of the local report
+    // time, the owner's UUID halves as longs (both zero when unassigned) and the flags
+    private static final int LAST_SEEN = 0;
+    private static final int USER_MSB = 2;
+    private static final int USER_LSB = 4;
+    private static final int FLAGS = 6;
+    private static final int WIDTH = 7;
+
+    private static final int ONLINE = 1;
+    // The offline alert of the current offline period has been raised
+    private static final int ALERTED = 2;
+
+    private final FleetStateTable states = new FleetStateTable(WIDTH, 0);
+    private final Map<UUID, Counts> countsByUser = new ConcurrentHashMap<>();
+    private TimingWheel<UUID> wheel;
+
+    private final AtomicLong onlineTransitions = new AtomicLong();
+    private final AtomicLong offlineTransitions = new AtomicLong();
+    private final AtomicLong offlineAlerts = new AtomicLong();
+
+    private static final class Counts {
+        final AtomicLong devices = new AtomicLong();
+        final AtomicLong online = new AtomicLong();
+    }
+
+    /**
+     * Seeds every device from its persisted last report. Devices that were already offline for
+     * the alert time are taken as alerted, so a restart does not alert the whole idle fleet again.
+     */
+    @PostConstruct
+    void load() {
+        long now = now();
+        wheel = new TimingWheel<>(tickMillis, WHEEL_SLOTS, now);
+        for (Object[] device : deviceRepository.findPresence()) {
+            UUID deviceId = (UUID) device[0];
+            UUID userId = (UUID) device[1];
+            long seen = device[2] != null ? millis((LocalDateTime) device[2]) : 0;
+            states.compute(deviceId, row -> {
+                setUser(row, userId);
+                row.setLong(LAST_SEEN, seen);
+                boolean online = seen != 0 && seen + onlineMillis() > now;
+                count(userId, 1, online ? 1 : 0);
+                if (online) {
+                    row.setInt(FLAGS, ONLINE);
+                    wheel.schedule(deviceId, seen + onlineMillis());
+                } else if (seen != 0 && seen + offlineAlertMillis() <= now) {
+                    row.setInt(FLAGS, ALERTED);
+                } else if (seen != 0) {
+                    wheel.schedule(deviceId, seen + offlineAlertMillis());
+                }
+                return null;
+            });
+        }
+        log.info("Presence of {} devices loaded, {} online", states.size(),
+                states.count(FLAGS, flags -> (flags & ONLINE) != 0));
+    }
+
+    /**
+     * Records a report. A report older than the online window moves the last-seen time but does
+     * not bring an offline device online.
+     */
+    public void touch(UUID deviceId, LocalDateTime reportedAt) {
+        long seen = millis(reportedAt);
+        long now = now();
+        Transition transition = states.compute(deviceId, row -> {
+            long previous = row.getLong(LAST_SEEN);
+            if (seen <= previous) {
+                return null;
+            }
+            row.setLong(LAST_SEEN, seen);
+            int flags = row.getInt(FLAGS);
+            if ((flags & ONLINE) != 0) {
+                return null;
+            }
+            if (seen + onlineMillis() <= now) {
+                if (previous == 0 && (flags & ALERTED) == 0) {
+                    wheel.schedule(deviceId, seen + offlineAlertMillis());
+                }
+                return null;
+            }
+            row.setInt(FLAGS, ONLINE);
+            UUID userId = user(row);
+            count(userId, 0, 1);
+            wheel.schedule(deviceId, seen + onlineMillis());
+            return new Transition(deviceId, userId, Status.ONLINE, reportedAt);
+        });
+        if (transition != null) {
+            onlineTransitions.incrementAndGet();
+            eventPublisher.publishEvent(transition);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${tracking.presence.tick-ms:1000}")
+    public void tick() {
+        advance(now());
+    }
+
+    void advance(long now) {
+        List<UUID> expired = wheel.advance(now);
+        if (expired.isEmpty()) {
+            return;
+        }
+        List<UUID> overdue = new ArrayList<>();
+        for (UUID deviceId : expired) {
+            Transition transition = states.computeIfPresent(deviceId, row -> expire(deviceId, row, now, overdue));
+            if (transition != null) {
+                offlineTransitions.incrementAndGet();
+                eventPublisher.publishEvent(transition);
+            }
+        }
+        if (overdue.isEmpty()) {
+            return;
+        }
+        offlineAlerts.addAndGet(overdue.size());
+        try {
+            alertService.createOfflineAlerts(overdue,
+                    "Device has been offline for more than " + offlineAlertMinutes + " minutes");
+        } catch (Exception e) {
+            log.error("Failed to raise offline alerts for {} devices: {}", overdue.size(), e.getMessage());
+        }
+    }
+
+    // Re-arms the timer when a newer report moved the deadline, otherwise completes the transition
+    private Transition expire(UUID deviceId, FleetStateTable.Row row, long now, List<UUID> overdue) {
+        long seen = row.getLong(LAST_SEEN);
+        int flags = row.getInt(FLAGS);
+        if ((flags & ONLINE) != 0) {
+            if (seen + onlineMillis() > now) {
+                wheel.schedule(deviceId, seen + onlineMillis());
+                return null;
+            }
+            row.setInt(FLAGS, flags & ~ONLINE);
+            UUID userId = user(row);
+            count(userId, 0, -1);
+            wheel.schedule(deviceId, seen + offlineAlertMillis());
+            return new Transition(deviceId, userId, Status.OFFLINE, toLocal(seen));
+        }
+        if ((flags & ALERTED) == 0 && seen != 0) {
+            if (seen + offlineAlertMillis() > now) {
+                wheel.schedule(deviceId, seen + offlineAlertMillis());
+            } else {
+                row.setInt(FLAGS, flags | ALERTED);
+                overdue.add(deviceId);
+            }
+        }
+        return null;
+    }
+
+    public boolean isOnline(UUID deviceId) {
+        int[] row = new int[WIDTH];
+        return states.read(deviceId, row) && (row[FLAGS] & ONLINE) != 0;
+    }
+
+    public long onlineCount(UUID userId) {
+        Counts counts = countsByUser.get(userId);
+        return counts != null ? counts.online.get() : 0;
+    }
+
+    public long deviceCount(UUID userId) {
+        Counts counts = countsByUser.get(userId);
+        return counts != null ? counts.devices.get() : 0;
+    }
+
+    public void deviceAssigned(UUID deviceId, UUID userId) {
+        states.compute(deviceId, row -> {
+            UUID previous = user(row);
+            if (!row.isNew() && (previous == null ? userId == null : previous.equals(userId))) {
+                return null;
+            }
+            long online = (row.getInt(FLAGS) & ONLINE) != 0 ? 1 : 0;
+            if (!row.isNew()) {
+                count(previous, -1, -online);
+            }
+            count(userId, 1, online);
+            setUser(row, userId);
+            return null;
+        });
+    }
+
+    public void deviceRemoved(UUID deviceId) {
+        int[] row = new int[WIDTH];
+        if (states.remove(deviceId, row)) {
+            UUID userId = user(FleetStateTable.getLong(row, USER_MSB), FleetStateTable.getLong(row, USER_LSB));
+            count(userId, -1, (row[FLAGS] & ONLINE) != 0 ? -1 : 0);
+        }
+        wheel.cancel(deviceId);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("trackedDevices", states.size());
+        stats.put("online", states.count(FLAGS, flags -> (flags & ONLINE) != 0));
+        stats.put("timers", wheel.size());
+        stats.put("onlineTransitions", onlineTransitions.get());
+        stats.put("offlineTransitions", offlineTransitions.get());
+        stats.put("offlineAlerts", offlineAlerts.get());
+        stats.put("stateBytes", states.footprintBytes());
+        return stats;
+    }
+
+    private void count(UUID userId, long devices, long online) {
+        if (userId == null) {
+            return;
+        }
+        Counts counts = countsByUser.computeIfAbsent(userId, id -> new Counts());
+        counts.devices.addAndGet(devices);
+        counts.online.addAndGet(online);
+    }
+
+    private static UUID user(FleetStateTable.Row row) {
+        return user(row.getLong(USER_MSB), row.getLong(USER_LSB));
+    }
+
+    private static UUID user(long msb, long lsb) {
+        return msb == 0 && lsb == 0 ? null : new UUID(msb, lsb);
+    }
+
+    private static void setUser(FleetStateTable.Row row, UUID userId) {
+        row.setLong(USER_MSB, userId != null ? userId.getMostSignificantBits() : 0);
+        row.setLong(USER_LSB, userId != null ? userId.getLeastSignificantBits() : 0);
+    }
+
+    private long onlineMillis() {
+        return onlineMinutes * 60_000;
+    }
+
+    private long offlineAlertMillis() {
+        return offlineAlertMinutes * 60_000;
+    }
+
+    // Report times are local times, like LocalDateTime.now(), so both go through the same offset
+    private static long millis(LocalDateTime time) {
+        return time.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    private static LocalDateTime toLocal(long millis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneOffset.UTC);
+    }
+
+    private static long now() {
+        return millis(LocalDateTime.now());
+    }
+}
@@ -1,6 +1,8 @@
 package mahoro.backend.service;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.springframework.boot.CommandLineRunner;
@@ -19,6 +21,10 @@ import mahoro.backend.repository.LocationRepository;
 public class RwandaLocationSeeder implements CommandLineRunner {
 
     private final LocationRepository locationRepository;
+    private final GeofenceIndex geofenceIndex;
+
+    // Everything saved by this run; the index was loaded before the seeder ran and must be told
+    private final List<Location> seeded = new ArrayList<>();
 
     @Override
     @Transactional
@@ -26,6 +32,7 @@ public class RwandaLocationSeeder implements CommandLineRunner {
         if (locationRepository.count() == 0) {
             log.info("Seeding Rwandan locations...");
             seedRwandaLocations();
+            geofenceIndex.locationsUpdated(seeded);
             log.info("Rwandan locations seeded successfully!");
         } else {
             log.info("Locations already exist, skipping seeding.");
@@ -41,6 +48,7 @@ public class RwandaLocationSeeder implements CommandLineRunner {
             province.setName(provinceName);
             province.setType(LocationType.PROVINCE);
             province = locationRepository.save(province);
+            seeded.add(province);
             provinces.put(provinceName, province);
         }
 
@@ -103,6 +111,8 @@ public class RwandaLocationSeeder implements CommandLineRunner {
         location.setName(name);
         location.setType(type);
         location.setParent(parent);
-        return locationRepository.save(location);
+        Location saved = locationRepository.save(location);
+        seeded.add(saved);
+        return saved;
     }
 }
\ No newline at end of file
@@ -28,17 +28,20 @@ public class UserService {
     private final LocationRepository locationRepository;
     private final PasswordEncoder passwordEncoder;
     private final JavaMailSender mailSender;
+    private final GeofenceIndex geofenceIndex;
 
     private final Map<String, String> otpMap = new ConcurrentHashMap<>();
 
     public UserService(UserRepository userRepository,
                        LocationRepository locationRepository,
                        PasswordEncoder passwordEncoder,
-                       JavaMailSender mailSender) {
+                       JavaMailSender mailSender,
+                       GeofenceIndex geofenceIndex) {
         this.userRepository = userRepository;
         this.locationRepository = locationRepository;
         this.passwordEncoder = passwordEncoder;
         this.mailSender = mailSender;
+        this.geofenceIndex = geofenceIndex;
     }
 
     @Transactional
@@ -143,7 +146,10 @@ public class UserService {
         existingUser.setRole(userDetails.getRole());
         
 
-        return userRepository.save(existingUser);
+        User savedUser = userRepository.save(existingUser);
+        geofenceIndex.userAssigned(id,
+                savedUser.getAssignedLocation() != null ? savedUser.getAssignedLocation().getLocationId() : null);
+        return savedUser;
     }
 
     @Transactional
@@ -152,5 +158,6 @@ public class UserService {
             throw new IllegalArgumentException("User not found with ID: " + id);
         }
         userRepository.deleteById(id);
+        geofenceIndex.userRemoved(id);
     }
 }
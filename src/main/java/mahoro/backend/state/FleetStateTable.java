@@ -0,0 +1,389 @@
+package mahoro.backend.state;
+
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.IntPredicate;
+
+/**
+ * Fixed-width rows of 32-bit columns keyed by device UUID, for per-device state that has to stay
+ * small at a million devices. Keys are kept as two longs in an open-addressing table with linear
+ * probing and the row values in one parallel int array, so a device costs 16 bytes of key plus 4
+ * bytes per column and no object headers or pointers. Floats take one column and longs two.
+ *
+ * <p>Segments grow by a quarter rather than doubling, so the table stays between 60% and 75% full
+ * instead of dropping to 37% after every resize.
+ *
+ * <p>The table is split into segments by hash. Writers take the segment's write lock, so each
+ * segment has one writer at a time; readers do not block and instead validate an optimistic
+ * stamp, retrying under the read lock only when a write raced with them. Row updaters run under
+ * the write lock and must not call back into the table.
+ */
+public final class FleetStateTable {
+
+    public interface RowUpdater<R> {
+        R update(Row row);
+    }
+
+    /**
+     * Cursor over one row, valid only inside the updater it is passed to, or a detached copy of a
+     * row from {@link FleetStateTable#copy}.
+     */
+    public static final class Row {
+        private int[] values;
+        private int base;
+        private boolean created;
+
+        public boolean isNew() {
+            return created;
+        }
+
+        public int getInt(int column) {
+            return values[base + column];
+        }
+
+        public void setInt(int column, int value) {
+            values[base + column] = value;
+        }
+
+        public float getFloat(int column) {
+            return Float.intBitsToFloat(getInt(column));
+        }
+
+        public void setFloat(int column, float value) {
+            setInt(column, Float.floatToRawIntBits(value));
+        }
+
+        // A long spans the column and the one after it
+        public long getLong(int column) {
+            return FleetStateTable.getLong(values, base + column);
+        }
+
+        public void setLong(int column, long value) {
+            setInt(column, (int) (value >>> 32));
+            setInt(column + 1, (int) value);
+        }
+    }
+
+    private static final int SEGMENT_BITS = 6;
+    private static final int MIN_SEGMENT_CAPACITY = 16;
+    private static final double MAX_LOAD = 0.75;
+    private static final double GROWTH = 1.25;
+
+    // Keys and values of one segment, replaced together on resize so readers never mix generations
+    private static final class Slots {
+        final long[] keys;
+        final int[] values;
+        final int capacity;
+
+        Slots(int capacity, int width) {
+            keys = new long[capacity * 2];
+            values = new int[capacity * width];
+            this.capacity = capacity;
+        }
+    }
+
+    private final class Segment {
+        final StampedLock lock = new StampedLock();
+        final Row cursor = new Row();
+        volatile Slots slots;
+        int size;
+
+        Segment(int capacity) {
+            slots = new Slots(capacity, width);
+        }
+    }
+
+    private final int width;
+    private final Segment[] segments;
+
+    public FleetStateTable(int width, int expectedRows) {
+        if (width < 1) {
+            throw new IllegalArgumentException("A row needs at least one column");
+        }
+        this.width = width;
+        int perSegment = (int) Math.ceil(Math.max(0, expectedRows) / MAX_LOAD / (1 << SEGMENT_BITS));
+        int capacity = Math.max(MIN_SEGMENT_CAPACITY, perSegment);
+        segments = new Segment[1 << SEGMENT_BITS];
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = new Segment(capacity);
+        }
+    }
+
+    public int width() {
+        return width;
+    }
+
+    public static long getLong(int[] row, int column) {
+        return ((long) row[column] << 32) | (row[column + 1] & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Copies the row into the first width elements of into. Returns false, leaving into
+     * unspecified, when the key has no row.
+     */
+    public boolean read(UUID key, int[] into) {
+        long msb = key.getMostSignificantBits();
+        long lsb = key.getLeastSignificantBits();
+        long hash = hash(msb, lsb);
+        Segment segment = segments[(int) (hash >>> (64 - SEGMENT_BITS))];
+        long stamp = segment.lock.tryOptimisticRead();
+        boolean found = copyRow(segment.slots, msb, lsb, hash, into);
+        if (!segment.lock.validate(stamp)) {
+            stamp = segment.lock.readLock();
+            try {
+                found = copyRow(segment.slots, msb, lsb, hash, into);
+            } finally {
+                segment.lock.unlockRead(stamp);
+            }
+        }
+        return found;
+    }
+
+    private boolean copyRow(Slots slots, long msb, long lsb, long hash, int[] into) {
+        int slot = find(slots, msb, lsb, hash);
+        if (slot < 0) {
+            return false;
+        }
+        System.arraycopy(slots.values, slot * width, into, 0, width);
+        return true;
+    }
+
+    /**
+     * Runs the updater on the key's row under the segment's write lock, creating a zeroed row
+     * first when there is none.
+     */
+    public <R> R compute(UUID key, RowUpdater<R> updater) {
+        return update(key, updater, true);
+    }
+
+    /**
+     * Like compute, but returns null without calling the updater when the key has no row.
+     */
+    public <R> R computeIfPresent(UUID key, RowUpdater<R> updater) {
+        return update(key, updater, false);
+    }
+
+    private <R> R update(UUID key, RowUpdater<R> updater, boolean create) {
+        long msb = key.getMostSignificantBits();
+        long lsb = key.getLeastSignificantBits();
+        if (msb == 0 && lsb == 0) {
+            throw new IllegalArgumentException("The nil UUID marks empty slots and cannot be stored");
+        }
+        long hash = hash(msb, lsb);
+        Segment segment = segments[(int) (hash >>> (64 - SEGMENT_BITS))];
+        long stamp = segment.lock.writeLock();
+        try {
+            Slots slots = segment.slots;
+            int slot = find(slots, msb, lsb, hash);
+            boolean created = slot < 0;
+            if (created && !create) {
+                return null;
+            }
+            if (created) {
+                if (segment.size + 1 > slots.capacity * MAX_LOAD) {
+                    slots = grow(segment);
+                    slot = find(slots, msb, lsb, hash);
+                }
+                slot = -1 - slot;
+                slots.keys[slot * 2] = msb;
+                slots.keys[slot * 2 + 1] = lsb;
+                // Removal only clears the key, so a reused slot still holds the previous row's values
+                Arrays.fill(slots.values, slot * width, slot * width + width, 0);
+                segment.size++;
+            }
+            Row row = segment.cursor;
+            row.values = slots.values;
+            row.base = slot * width;
+            row.created = created;
+            return updater.update(row);
+        } finally {
+            segment.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * A detached copy of the key's row, zeroed and new when there is none. Changes to it stay out
+     * of the table until put writes it back, for state that may only change once a transaction
+     * has committed.
+     */
+    public Row copy(UUID key) {
+        Row row = new Row();
+        row.values = new int[width];
+        row.created = !read(key, row.values);
+        if (row.created) {
+            Arrays.fill(row.values, 0);
+        }
+        return row;
+    }
+
+    /**
+     * Replaces the key's row with a copy taken by {@link #copy}.
+     */
+    public void put(UUID key, Row copy) {
+        update(key, row -> {
+            System.arraycopy(copy.values, copy.base, row.values, row.base, width);
+            return null;
+        }, true);
+    }
+
+    public boolean remove(UUID key) {
+        return remove(key, null);
+    }
+
+    /**
+     * Removes the key's row, first copying it into removed when that is not null.
+     */
+    public boolean remove(UUID key, int[] removed) {
+        long msb = key.getMostSignificantBits();
+        long lsb = key.getLeastSignificantBits();
+        long hash = hash(msb, lsb);
+        Segment segment = segments[(int) (hash >>> (64 - SEGMENT_BITS))];
+        long stamp = segment.lock.writeLock();
+        try {
+            Slots slots = segment.slots;
+            int slot = find(slots, msb, lsb, hash);
+            if (slot < 0) {
+                return false;
+            }
+            if (removed != null) {
+                System.arraycopy(slots.values, slot * width, removed, 0, width);
+            }
+            // Backward-shift deletion: pull later entries of the probe run into the gap, no tombstones
+            int capacity = slots.capacity;
+            int gap = slot;
+            for (int next = step(gap, capacity); !isEmpty(slots, next); next = step(next, capacity)) {
+                int home = home(hash(slots.keys[next * 2], slots.keys[next * 2 + 1]), capacity);
+                if (distance(home, next, capacity) >= distance(gap, next, capacity)) {
+                    move(slots, next, gap);
+                    gap = next;
+                }
+            }
+            slots.keys[gap * 2] = 0;
+            slots.keys[gap * 2 + 1] = 0;
+            segment.size--;
+            return true;
+        } finally {
+            segment.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Number of rows whose column satisfies the predicate.
+     */
+    public long count(int column, IntPredicate predicate) {
+        long count = 0;
+        for (Segment segment : segments) {
+            long stamp = segment.lock.readLock();
+            try {
+                Slots slots = segment.slots;
+                for (int slot = 0; slot < slots.capacity; slot++) {
+                    if (!isEmpty(slots, slot) && predicate.test(slots.values[slot * width + column])) {
+                        count++;
+                    }
+                }
+            } finally {
+                segment.lock.unlockRead(stamp);
+            }
+        }
+        return count;
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            long stamp = segment.lock.readLock();
+            try {
+                size += segment.size;
+            } finally {
+                segment.lock.unlockRead(stamp);
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Bytes held by the key and value arrays, including free slots.
+     */
+    public long footprintBytes() {
+        long bytes = 0;
+        for (Segment segment : segments) {
+            Slots slots = segment.slots;
+            bytes += 8L * slots.keys.length + 4L * slots.values.length;
+        }
+        return bytes;
+    }
+
+    private Slots grow(Segment segment) {
+        Slots old = segment.slots;
+        Slots bigger = new Slots((int) Math.ceil(old.capacity * GROWTH), width);
+        for (int slot = 0; slot < old.capacity; slot++) {
+            if (!isEmpty(old, slot)) {
+                long msb = old.keys[slot * 2];
+                long lsb = old.keys[slot * 2 + 1];
+                int target = -1 - find(bigger, msb, lsb, hash(msb, lsb));
+                bigger.keys[target * 2] = msb;
+                bigger.keys[target * 2 + 1] = lsb;
+                System.arraycopy(old.values, slot * width, bigger.values, target * width, width);
+            }
+        }
+        segment.slots = bigger;
+        return bigger;
+    }
+
+    // Slot of the key, or -1 - slot of the empty slot where it would go
+    private static int find(Slots slots, long msb, long lsb, long hash) {
+        int capacity = slots.capacity;
+        long[] keys = slots.keys;
+        int slot = home(hash, capacity);
+        // Bounded so that a torn optimistic read cannot spin; a full probe never happens under the lock
+        for (int probes = 0; probes < capacity; probes++) {
+            long keyMsb = keys[slot * 2];
+            long keyLsb = keys[slot * 2 + 1];
+            if (keyMsb == 0 && keyLsb == 0) {
+                return -1 - slot;
+            }
+            if (keyMsb == msb && keyLsb == lsb) {
+                return slot;
+            }
+            slot = step(slot, capacity);
+        }
+        return -1 - slot;
+    }
+
+    private void move(Slots slots, int from, int to) {
+        slots.keys[to * 2] = slots.keys[from * 2];
+        slots.keys[to * 2 + 1] = slots.keys[from * 2 + 1];
+        System.arraycopy(slots.values, from * width, slots.values, to * width, width);
+    }
+
+    private static boolean isEmpty(Slots slots, int slot) {
+        return slots.keys[slot * 2] == 0 && slots.keys[slot * 2 + 1] == 0;
+    }
+
+    // Capacities are not powers of two, so the low 32 hash bits are scaled onto the slots
+    private static int home(long hash, int capacity) {
+        return (int) (((hash & 0xFFFFFFFFL) * capacity) >>> 32);
+    }
+
+    private static int step(int slot, int capacity) {
+        return slot + 1 == capacity ? 0 : slot + 1;
+    }
+
+    // Probe distance from one slot forward to another, wrapping at the end of the segment
+    private static int distance(int from, int to, int capacity) {
+        int distance = to - from;
+        return distance < 0 ? distance + capacity : distance;
+    }
+
+    // Murmur3 finalizer over both halves; the top bits pick the segment and the low bits the slot
+    private static long hash(long msb, long lsb) {
+        long h = msb ^ Long.rotateLeft(lsb, 32);
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
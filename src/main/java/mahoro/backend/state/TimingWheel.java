@@ -0,0 +1,118 @@
+package mahoro.backend.state;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hashed timing wheel holding at most one deadline per key. Deadlines are rounded up to whole ticks
+ * and hashed into a fixed ring of slots by tick number, so scheduling and cancelling are constant
+ * time and advancing the clock only visits the slots of the ticks that passed. A slot keeps the
+ * timers of every revolution in one unsorted list, and a visit skips those due in a later one.
+ *
+ * <p>A timer never fires early. It fires on the first advance that reaches its tick, so it can be
+ * up to one tick late plus however late the advance itself runs.
+ */
+public final class TimingWheel<K> {
+
+    private static final class Timer<K> {
+        final K key;
+        long tick;
+        Timer<K> previous;
+        Timer<K> next;
+
+        Timer(K key) {
+            this.key = key;
+        }
+    }
+
+    private final long tickMillis;
+    private final Timer<K>[] slots;
+    private final int mask;
+    private final Map<K, Timer<K>> timers = new HashMap<>();
+
+    // Last tick that has been processed
+    private long tick;
+
+    @SuppressWarnings("unchecked")
+    public TimingWheel(long tickMillis, int slotCount, long startMillis) {
+        if (tickMillis < 1 || Integer.bitCount(slotCount) != 1) {
+            throw new IllegalArgumentException("Tick must be positive and the slot count a power of two");
+        }
+        this.tickMillis = tickMillis;
+        this.slots = (Timer<K>[]) new Timer<?>[slotCount];
+        this.mask = slotCount - 1;
+        this.tick = Math.floorDiv(startMillis, tickMillis);
+    }
+
+    /**
+     * Sets the key's deadline, replacing any it had. A deadline already passed fires on the next tick.
+     */
+    public synchronized void schedule(K key, long deadlineMillis) {
+        Timer<K> timer = timers.get(key);
+        if (timer == null) {
+            timer = new Timer<>(key);
+            timers.put(key, timer);
+        } else {
+            unlink(timer);
+        }
+        timer.tick = Math.max(tick + 1, Math.floorDiv(deadlineMillis + tickMillis - 1, tickMillis));
+        int slot = (int) timer.tick & mask;
+        timer.next = slots[slot];
+        if (timer.next != null) {
+            timer.next.previous = timer;
+        }
+        slots[slot] = timer;
+    }
+
+    public synchronized boolean cancel(K key) {
+        Timer<K> timer = timers.remove(key);
+        if (timer == null) {
+            return false;
+        }
+        unlink(timer);
+        return true;
+    }
+
+    /**
+     * Moves the clock to now and returns the keys whose deadlines it passed, removing them. After a
+     * gap of a full revolution or more every slot is visited once.
+     */
+    public synchronized List<K> advance(long nowMillis) {
+        long target = Math.floorDiv(nowMillis, tickMillis);
+        List<K> expired = new ArrayList<>();
+        long last = Math.min(target, tick + slots.length);
+        for (long visit = tick + 1; visit <= last; visit++) {
+            Timer<K> timer = slots[(int) visit & mask];
+            while (timer != null) {
+                Timer<K> next = timer.next;
+                if (timer.tick <= target) {
+                    unlink(timer);
+                    timers.remove(timer.key);
+                    expired.add(timer.key);
+                }
+                timer = next;
+            }
+        }
+        tick = Math.max(tick, target);
+        return expired;
+    }
+
+    public synchronized int size() {
+        return timers.size();
+    }
+
+    private void unlink(Timer<K> timer) {
+        if (timer.previous != null) {
+            timer.previous.next = timer.next;
+        } else {
+            slots[(int) timer.tick & mask] = timer.next;
+        }
+        if (timer.next != null) {
+            timer.next.previous = timer.previous;
+        }
+        timer.previous = null;
+        timer.next = null;
+    }
+}
@@ -0,0 +1,102 @@
+package mahoro.backend.benchmark;
+
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import mahoro.backend.controller.TrackingController;
+import mahoro.backend.ingest.TcpTrackerServer;
+import mahoro.backend.ingest.TrackerIngestDispatcher;
+import mahoro.backend.ingest.UdpTrackerServer;
+import mahoro.backend.repository.DeviceRepository;
+import mahoro.backend.repository.LocationHistoryRepository;
+import mahoro.backend.service.*;
+
+/**
+ * Requests per second of the current-location and status endpoints, served through MockMvc from
+ * the latest-position cache with no database behind it. Only the read path is real: the cache,
+ * LocationTrackingService, presence, last-seen and battery state; everything else is a mock.
+ * Run with mvn -Pbenchmark test -Dbenchmark=CurrentPositionBenchmark.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CurrentPositionBenchmark {
+
+    @Param("100000")
+    public int devices;
+
+    private UUID[] ids;
+    private MockMvc mockMvc;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        private final SplittableRandom random = new SplittableRandom();
+
+        UUID next(CurrentPositionBenchmark benchmark) {
+            return benchmark.ids[random.nextInt(benchmark.ids.length)];
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        ids = new UUID[devices];
+        List<Object[]> rows = new ArrayList<>(devices);
+        LocalDateTime now = LocalDateTime.now();
+        for (int i = 0; i < devices; i++) {
+            ids[i] = UUID.randomUUID();
+            rows.add(new Object[] {ids[i], UUID.randomUUID(), -1.95, 30.06, now.minusSeconds(i), "Kigali", 12.5, 90.0});
+        }
+        LocationHistoryRepository locationHistoryRepository = mock(LocationHistoryRepository.class);
+        when(locationHistoryRepository.findLatestPositions()).thenReturn(rows);
+        LatestPositionCache latestPositionCache = new LatestPositionCache(locationHistoryRepository);
+        ReflectionTestUtils.invokeMethod(latestPositionCache, "load");
+
+        DeviceRepository deviceRepository = mock(DeviceRepository.class);
+        AlertService alertService = mock(AlertService.class);
+        PresenceTracker presenceTracker = new PresenceTracker(deviceRepository, alertService,
+                mock(ApplicationEventPublisher.class));
+        LastSeenTracker lastSeenTracker = new LastSeenTracker(mock(JdbcTemplate.class), presenceTracker);
+        BatteryMonitor batteryMonitor = new BatteryMonitor();
+        LocationTrackingService locationTrackingService = new LocationTrackingService(deviceRepository,
+                locationHistoryRepository, alertService, lastSeenTracker, mock(DeviceImeiCache.class),
+                mock(DuplicateReportFilter.class), mock(PointThinningFilter.class), mock(GeofenceIndex.class),
+                mock(GeofenceStateTracker.class), mock(MotionTracker.class), batteryMonitor, latestPositionCache);
+
+        TrackingController controller = new TrackingController(locationTrackingService,
+                mock(LocationWriteBehindService.class), mock(LocationJournal.class), mock(LocationIngestLanes.class),
+                lastSeenTracker, mock(DeviceImeiCache.class), mock(DuplicateReportFilter.class),
+                mock(IngestRateLimiter.class), mock(PointThinningFilter.class), mock(GeofenceIndex.class),
+                mock(GeofenceStateTracker.class), mock(MotionTracker.class), batteryMonitor, latestPositionCache,
+                presenceTracker, mock(TrackerIngestDispatcher.class), mock(TcpTrackerServer.class),
+                mock(UdpTrackerServer.class));
+        mockMvc = MockMvcBuilders.standaloneSetup(controller).build();
+    }
+
+    @Benchmark
+    public MvcResult currentLocation(Cursor cursor) throws Exception {
+        return mockMvc.perform(get("/api/tracking/device/{deviceId}/current-location", cursor.next(this))).andReturn();
+    }
+
+    @Benchmark
+    public MvcResult status(Cursor cursor) throws Exception {
+        return mockMvc.perform(get("/api/tracking/device/{deviceId}/status", cursor.next(this))).andReturn();
+    }
+}
@@ -0,0 +1,130 @@
+package mahoro.backend.benchmark;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import mahoro.backend.state.FleetStateTable;
+
+/**
+ * Per-device motion state held as FleetStateTable rows against the ConcurrentHashMap of state
+ * objects MotionTracker used before. Run with mvn -Pbenchmark test -Dbenchmark=FleetStateBenchmark.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class FleetStateBenchmark {
+
+    // Same shape as MotionTracker's former per-device object
+    static final class MotionState {
+        double latitude;
+        double longitude;
+        LocalDateTime timestamp;
+        boolean moving;
+        boolean overSpeed;
+        LocalDateTime stillSince;
+        double stillLatitude;
+        double stillLongitude;
+    }
+
+    private static final int WIDTH = 8;
+    private static final int TIME = 2;
+
+    @Param("1000000")
+    public int devices;
+
+    private UUID[] ids;
+    private FleetStateTable table;
+    private Map<UUID, MotionState> map;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        private final SplittableRandom random = new SplittableRandom();
+        private final int[] row = new int[WIDTH];
+
+        UUID next(FleetStateBenchmark benchmark) {
+            return benchmark.ids[random.nextInt(benchmark.ids.length)];
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        ids = new UUID[devices];
+        for (int i = 0; i < devices; i++) {
+            ids[i] = UUID.randomUUID();
+        }
+        LocalDateTime now = LocalDateTime.now();
+
+        long before = usedHeap();
+        table = new FleetStateTable(WIDTH, 0);
+        for (UUID id : ids) {
+            table.compute(id, row -> {
+                row.setFloat(0, -1.95f);
+                row.setFloat(1, 30.06f);
+                row.setLong(TIME, System.currentTimeMillis());
+                return null;
+            });
+        }
+        long tableBytes = usedHeap() - before;
+
+        before = usedHeap();
+        map = new ConcurrentHashMap<>();
+        for (UUID id : ids) {
+            MotionState state = new MotionState();
+            state.latitude = -1.95;
+            state.longitude = 30.06;
+            state.timestamp = now;
+            state.stillSince = now;
+            map.put(id, state);
+        }
+        // The map also keeps each UUID key object alive, which the table does not need
+        long mapBytes = usedHeap() - before + 32L * devices;
+
+        System.out.printf("%nBytes per device: table %d (arrays %d), map %d%n",
+                tableBytes / devices, table.footprintBytes() / devices, mapBytes / devices);
+    }
+
+    private static long usedHeap() {
+        System.gc();
+        System.gc();
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    @Benchmark
+    public long tableUpdate(Cursor cursor) {
+        return table.compute(cursor.next(this), row -> {
+            long time = row.getLong(TIME) + 1000;
+            row.setLong(TIME, time);
+            return time;
+        });
+    }
+
+    @Benchmark
+    public LocalDateTime mapUpdate(Cursor cursor) {
+        MotionState state = map.computeIfAbsent(cursor.next(this), id -> new MotionState());
+        synchronized (state) {
+            state.timestamp = state.timestamp.plusSeconds(1);
+            return state.timestamp;
+        }
+    }
+
+    @Benchmark
+    public long tableRead(Cursor cursor) {
+        table.read(cursor.next(this), cursor.row);
+        return FleetStateTable.getLong(cursor.row, TIME);
+    }
+
+    @Benchmark
+    public LocalDateTime mapRead(Cursor cursor) {
+        return map.get(cursor.next(this)).timestamp;
+    }
+}
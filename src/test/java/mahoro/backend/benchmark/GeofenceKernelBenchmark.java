@@ -0,0 +1,96 @@
+package mahoro.backend.benchmark;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import mahoro.backend.geo.GeofenceKernel;
+
+/**
+ * Classifying a batch of fixes against a circular fence, per point, with GeofenceKernel against
+ * the per-point haversine LocationTrackingService used before it. Fixes are spread over 5 km
+ * around the fence, so some land near each threshold and need the exact distance.
+ * Run with mvn -Pbenchmark test -Dbenchmark=GeofenceKernelBenchmark.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+@OperationsPerInvocation(GeofenceKernelBenchmark.POINTS)
+public class GeofenceKernelBenchmark {
+
+    static final int POINTS = 1000;
+
+    private static final double CENTER_LATITUDE = -1.95;
+    private static final double CENTER_LONGITUDE = 30.06;
+    private static final double RADIUS_KM = 1.0;
+    private static final double HYSTERESIS_KM = 0.1;
+
+    private final double[] latitudes = new double[POINTS];
+    private final double[] longitudes = new double[POINTS];
+    private final byte[] zones = new byte[POINTS];
+    private GeofenceKernel kernel;
+
+    // The reference implementation, as LocationTrackingService had it before GeofenceKernel
+    private static double calculateDistance(double lat1, double lon1, double lat2, double lon2) {
+        final int R = 6371;
+        double latDistance = Math.toRadians(lat2 - lat1);
+        double lonDistance = Math.toRadians(lon2 - lon1);
+        double a = Math.sin(latDistance / 2) * Math.sin(latDistance / 2)
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2))
+                * Math.sin(lonDistance / 2) * Math.sin(lonDistance / 2);
+        double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+        return R * c;
+    }
+
+    private static byte zoneOf(double distanceKm) {
+        return distanceKm < RADIUS_KM ? GeofenceKernel.INSIDE
+                : distanceKm > RADIUS_KM + HYSTERESIS_KM ? GeofenceKernel.OUTSIDE
+                : GeofenceKernel.BAND;
+    }
+
+    @Setup
+    public void setUp() {
+        SplittableRandom random = new SplittableRandom(42);
+        for (int i = 0; i < POINTS; i++) {
+            // About 0.045 degrees is 5 km
+            latitudes[i] = CENTER_LATITUDE + random.nextDouble(-0.045, 0.045);
+            longitudes[i] = CENTER_LONGITUDE + random.nextDouble(-0.045, 0.045);
+        }
+        kernel = new GeofenceKernel(CENTER_LATITUDE, CENTER_LONGITUDE);
+
+        // Both sides must agree before their speed is worth comparing
+        kernel.classify(latitudes, longitudes, POINTS, RADIUS_KM, RADIUS_KM + HYSTERESIS_KM, zones);
+        for (int i = 0; i < POINTS; i++) {
+            byte expected = zoneOf(calculateDistance(latitudes[i], longitudes[i], CENTER_LATITUDE, CENTER_LONGITUDE));
+            if (zones[i] != expected) {
+                throw new IllegalStateException("Kernel and reference disagree on point " + i);
+            }
+        }
+    }
+
+    @Benchmark
+    public byte[] reference() {
+        for (int i = 0; i < POINTS; i++) {
+            zones[i] = zoneOf(calculateDistance(latitudes[i], longitudes[i], CENTER_LATITUDE, CENTER_LONGITUDE));
+        }
+        return zones;
+    }
+
+    @Benchmark
+    public byte[] kernelDistance() {
+        for (int i = 0; i < POINTS; i++) {
+            zones[i] = zoneOf(kernel.distanceKm(latitudes[i], longitudes[i]));
+        }
+        return zones;
+    }
+
+    @Benchmark
+    public byte[] kernelClassify() {
+        kernel.classify(latitudes, longitudes, POINTS, RADIUS_KM, RADIUS_KM + HYSTERESIS_KM, zones);
+        return zones;
+    }
+}
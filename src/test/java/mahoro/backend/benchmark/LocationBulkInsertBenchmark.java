@@ -0,0 +1,126 @@
+package mahoro.backend.benchmark;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.postgresql.ds.PGSimpleDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import mahoro.backend.model.Device;
+import mahoro.backend.model.LocationHistory;
+import mahoro.backend.repository.LocationHistoryBulkRepositoryImpl;
+
+/**
+ * Rows per second written by LocationHistoryBulkRepositoryImpl.insertAll with binary COPY against
+ * batched INSERT, reported as the "rows" counter. It needs a PostgreSQL database with the
+ * application's schema and at least one device, given by the BENCHMARK_DB_URL, BENCHMARK_DB_USER
+ * and BENCHMARK_DB_PASSWORD environment variables; rows are written for the first device and
+ * deleted again after every iteration. Without BENCHMARK_DB_URL the benchmark fails at setup.
+ * Run with mvn -Pbenchmark test -Dbenchmark=LocationBulkInsertBenchmark.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LocationBulkInsertBenchmark {
+
+    private static final String MARKER = "bulk-insert-benchmark";
+
+    @Param({"copy", "insert"})
+    public String path;
+
+    @Param({"500", "5000"})
+    public int batchSize;
+
+    private PGSimpleDataSource dataSource;
+    private LocationHistoryBulkRepositoryImpl repository;
+    private Device device;
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Written {
+        public long rows;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            rows = 0;
+        }
+    }
+
+    @Setup
+    public void setUp() throws SQLException {
+        String url = System.getenv("BENCHMARK_DB_URL");
+        if (url == null) {
+            throw new IllegalStateException("Set BENCHMARK_DB_URL (and BENCHMARK_DB_USER, BENCHMARK_DB_PASSWORD) "
+                    + "to a PostgreSQL database with the application schema");
+        }
+        dataSource = new PGSimpleDataSource();
+        dataSource.setUrl(url);
+        dataSource.setUser(System.getenv("BENCHMARK_DB_USER"));
+        dataSource.setPassword(System.getenv("BENCHMARK_DB_PASSWORD"));
+
+        device = new Device();
+        try (Connection connection = dataSource.getConnection();
+                Statement statement = connection.createStatement();
+                ResultSet result = statement.executeQuery("SELECT device_id FROM devices LIMIT 1")) {
+            if (!result.next()) {
+                throw new IllegalStateException("The benchmark database has no devices to write history for");
+            }
+            device.setDeviceId(result.getObject(1, UUID.class));
+        }
+
+        repository = new LocationHistoryBulkRepositoryImpl(dataSource);
+        // copyMinRows decides the path, so one side of the comparison is never reachable
+        ReflectionTestUtils.setField(repository, "copyMinRows", "copy".equals(path) ? 1 : Integer.MAX_VALUE);
+    }
+
+    @TearDown(Level.Iteration)
+    public void deleteWritten() throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+                Statement statement = connection.createStatement()) {
+            statement.executeUpdate("DELETE FROM location_history WHERE recorded_address = '" + MARKER + "'");
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Batch {
+        private final SplittableRandom random = new SplittableRandom();
+        private LocalDateTime time = LocalDateTime.of(2024, 1, 1, 0, 0);
+
+        // Fresh objects every time, since insertAll assigns their ids
+        List<LocationHistory> next(LocationBulkInsertBenchmark benchmark) {
+            List<LocationHistory> rows = new ArrayList<>(benchmark.batchSize);
+            for (int i = 0; i < benchmark.batchSize; i++) {
+                time = time.plusSeconds(1);
+                LocationHistory row = new LocationHistory();
+                row.setDevice(benchmark.device);
+                row.setLatitude(-1.95 + random.nextDouble() * 0.1);
+                row.setLongitude(30.05 + random.nextDouble() * 0.1);
+                row.setTimestamp(time);
+                row.setRecordedAddress(MARKER);
+                row.setSpeedKmh(random.nextDouble() * 80);
+                row.setHeadingDegrees(random.nextDouble() * 360);
+                rows.add(row);
+            }
+            return rows;
+        }
+    }
+
+    @Benchmark
+    public List<LocationHistory> insertAll(Batch batch, Written written) {
+        List<LocationHistory> rows = batch.next(this);
+        written.rows += rows.size();
+        return repository.insertAll(rows);
+    }
+}
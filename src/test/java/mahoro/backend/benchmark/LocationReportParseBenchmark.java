@@ -0,0 +1,59 @@
+package mahoro.backend.benchmark;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import mahoro.backend.dto.LocationReportDTO;
+
+/**
+ * Reading a report body with LocationReportDeserializer against binding a Map<String, Object> and
+ * converting its values, as the tracking endpoints did before. The profile runs JMH with -prof gc,
+ * so gc.alloc.rate.norm gives the bytes allocated per parsed report.
+ * Run with mvn -Pbenchmark test -Dbenchmark=LocationReportParseBenchmark.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LocationReportParseBenchmark {
+
+    private byte[] body;
+    private ObjectReader typedReader;
+    private ObjectReader mapReader;
+
+    @Setup
+    public void setUp() {
+        body = ("{\"deviceId\":\"" + UUID.randomUUID() + "\",\"latitude\":-1.944123,\"longitude\":30.061987,"
+                + "\"address\":\"KN 4 Ave, Kigali\"}").getBytes(StandardCharsets.UTF_8);
+        ObjectMapper objectMapper = new ObjectMapper();
+        typedReader = objectMapper.readerFor(LocationReportDTO.class);
+        mapReader = objectMapper.readerFor(new TypeReference<Map<String, Object>>() { });
+    }
+
+    @Benchmark
+    public LocationReportDTO typed() throws IOException {
+        return typedReader.readValue(body);
+    }
+
+    // The conversions TrackingController.reportLocation used to apply to the bound map
+    @Benchmark
+    public LocationReportDTO map() throws IOException {
+        Map<String, Object> request = mapReader.readValue(body);
+        UUID deviceId = UUID.fromString((String) request.get("deviceId"));
+        Double latitude = Double.parseDouble(request.get("latitude").toString());
+        Double longitude = Double.parseDouble(request.get("longitude").toString());
+        String address = (String) request.get("address");
+        return new LocationReportDTO(deviceId, null, latitude, longitude, address, null, null);
+    }
+}
@@ -0,0 +1,100 @@
+package mahoro.backend.dto;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.exc.MismatchedInputException;
+
+class LocationReportDeserializerTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void testReadsNumericAndStringCoordinates() throws Exception {
+        UUID deviceId = UUID.randomUUID();
+        String json = "{\"deviceId\":\"" + deviceId + "\",\"latitude\":-1.9441,\"longitude\":\"30.0619\","
+                + "\"address\":\"Kigali\",\"timestamp\":\"2024-05-01T10:15:30\",\"extra\":{\"ignored\":[1,2]}}";
+
+        LocationReportDTO report = objectMapper.readValue(json, LocationReportDTO.class);
+
+        assertEquals(deviceId, report.deviceId());
+        assertNull(report.imei());
+        assertEquals(-1.9441, report.latitude(), 1e-9);
+        assertEquals(30.0619, report.longitude(), 1e-9);
+        assertEquals("Kigali", report.address());
+        assertEquals(LocalDateTime.of(2024, 5, 1, 10, 15, 30), report.timestamp());
+    }
+
+    @Test
+    void testReadsSequence() throws Exception {
+        LocationReportDTO report = objectMapper.readValue(
+                "{\"imei\":\"1\",\"latitude\":1,\"longitude\":2,\"sequence\":9007199254740993}", LocationReportDTO.class);
+
+        assertEquals(9007199254740993L, report.sequence());
+        assertThrows(MismatchedInputException.class, () -> objectMapper.readValue(
+                "{\"imei\":\"1\",\"latitude\":1,\"longitude\":2,\"sequence\":1.5}", LocationReportDTO.class));
+    }
+
+    @Test
+    void testReadsBattery() throws Exception {
+        LocationReportDTO report = objectMapper.readValue(
+                "{\"imei\":\"1\",\"latitude\":1,\"longitude\":2,\"battery\":14}", LocationReportDTO.class);
+        assertEquals(14, report.battery());
+
+        assertNull(objectMapper.readValue("{\"imei\":\"1\",\"latitude\":1,\"longitude\":2}",
+                LocationReportDTO.class).battery());
+        assertThrows(MismatchedInputException.class, () -> objectMapper.readValue(
+                "{\"imei\":\"1\",\"latitude\":1,\"longitude\":2,\"battery\":140}", LocationReportDTO.class));
+        assertThrows(MismatchedInputException.class, () -> objectMapper.readValue(
+                "{\"imei\":\"1\",\"latitude\":1,\"longitude\":2,\"battery\":\"low\"}", LocationReportDTO.class));
+    }
+
+    @Test
+    void testReadsBatch() throws Exception {
+        String json = "[{\"imei\":\"012345678901234\",\"latitude\":1,\"longitude\":2},"
+                + "{\"imei\":\"012345678901235\",\"latitude\":3.5,\"longitude\":4.5}]";
+
+        List<LocationReportDTO> reports = objectMapper.readValue(json, new TypeReference<>() {});
+
+        assertEquals(2, reports.size());
+        assertEquals("012345678901235", reports.get(1).imei());
+        assertEquals(4.5, reports.get(1).longitude(), 1e-9);
+    }
+
+    @Test
+    void testMissingLatitudeIsRejected() {
+        MismatchedInputException e = assertThrows(MismatchedInputException.class,
+                () -> objectMapper.readValue("{\"imei\":\"1\",\"longitude\":2}", LocationReportDTO.class));
+        assertTrue(e.getOriginalMessage().contains("latitude"));
+    }
+
+    @Test
+    void testOutOfRangeLongitudeIsRejected() {
+        assertThrows(MismatchedInputException.class,
+                () -> objectMapper.readValue("{\"imei\":\"1\",\"latitude\":1,\"longitude\":181}", LocationReportDTO.class));
+    }
+
+    @Test
+    void testInvalidDeviceIdIsRejected() {
+        MismatchedInputException e = assertThrows(MismatchedInputException.class,
+                () -> objectMapper.readValue("{\"deviceId\":\"nope\",\"latitude\":1,\"longitude\":2}", LocationReportDTO.class));
+        assertTrue(e.getOriginalMessage().contains("deviceId"));
+    }
+
+    @Test
+    void testNonScalarImeiOrAddressIsRejected() {
+        MismatchedInputException e = assertThrows(MismatchedInputException.class, () -> objectMapper.readValue(
+                "{\"imei\":{\"latitude\":80},\"latitude\":1,\"longitude\":2}", LocationReportDTO.class));
+        assertTrue(e.getOriginalMessage().contains("imei"));
+        e = assertThrows(MismatchedInputException.class, () -> objectMapper.readValue(
+                "{\"imei\":\"1\",\"address\":[\"Kigali\"],\"latitude\":1,\"longitude\":2}", LocationReportDTO.class));
+        assertTrue(e.getOriginalMessage().contains("address"));
+    }
+}
@@ -0,0 +1,56 @@
+package mahoro.backend.geo;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+class BoundaryTest {
+
+    private static final String SQUARE_WITH_HOLE = """
+            {"type":"Polygon","coordinates":[
+              [[30.0,-2.0],[30.1,-2.0],[30.1,-1.9],[30.0,-1.9],[30.0,-2.0]],
+              [[30.04,-1.96],[30.06,-1.96],[30.06,-1.94],[30.04,-1.94],[30.04,-1.96]]]}
+            """;
+
+    @Test
+    void testPolygonWithHole() {
+        Boundary boundary = Boundary.parse(SQUARE_WITH_HOLE);
+
+        assertTrue(boundary.contains(-1.99, 30.01));
+        assertFalse(boundary.contains(-1.95, 30.05));
+        assertFalse(boundary.contains(-1.95, 30.2));
+        assertEquals(10, boundary.getVertexCount());
+    }
+
+    @Test
+    void testDistanceToEdge() {
+        Boundary boundary = Boundary.parse(SQUARE_WITH_HOLE);
+
+        // 0.01 degree of latitude is about 1.1 km; the hole's edge is the nearest one from its middle
+        assertEquals(1112, boundary.distanceToEdgeMeters(-1.95, 30.05), 5);
+        assertEquals(1112, boundary.distanceToEdgeMeters(-1.95, 30.11), 5);
+    }
+
+    @Test
+    void testMultiPolygonInsideFeature() {
+        Boundary boundary = Boundary.parse("""
+                {"type":"Feature","properties":{},"geometry":{"type":"MultiPolygon","coordinates":[
+                  [[[0,0],[1,0],[1,1],[0,1],[0,0]]],
+                  [[[5,5],[6,5],[6,6],[5,6],[5,5]]]]}}
+                """);
+
+        assertTrue(boundary.contains(0.5, 0.5));
+        assertTrue(boundary.contains(5.5, 5.5));
+        assertFalse(boundary.contains(3, 3));
+    }
+
+    @Test
+    void testRejectsOtherGeometriesAndBadPositions() {
+        assertThrows(IllegalArgumentException.class,
+                () -> Boundary.parse("{\"type\":\"Point\",\"coordinates\":[30.0,-1.9]}"));
+        assertThrows(IllegalArgumentException.class,
+                () -> Boundary.parse("{\"type\":\"Polygon\",\"coordinates\":[[[300,0],[1,0],[1,1],[300,0]]]}"));
+        assertThrows(IllegalArgumentException.class,
+                () -> Boundary.parse("{\"type\":\"Polygon\",\"coordinates\":[[[0,0],[1,1],[0,0]]]}"));
+    }
+}
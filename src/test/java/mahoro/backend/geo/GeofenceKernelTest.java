@@ -0,0 +1,63 @@
+package mahoro.backend.geo;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class GeofenceKernelTest {
+
+    private static double haversineKm(double lat1, double lon1, double lat2, double lon2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLon = Math.toRadians(lon2 - lon1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2))
+                * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return 6371 * 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+    }
+
+    @Test
+    void testDistanceMatchesHaversine() {
+        GeofenceKernel kernel = new GeofenceKernel(-1.95, 30.06);
+        assertEquals(haversineKm(-1.95, 30.06, -1.50, 29.60), kernel.distanceKm(-1.50, 29.60), 1e-9);
+        assertEquals(0, kernel.distanceKm(-1.95, 30.06), 1e-12);
+    }
+
+    @Test
+    void testClassifyMatchesExactDistance() {
+        Random random = new Random(7);
+        double[][] centers = { { -1.95, 30.06 }, { 59.9, 10.7 }, { 0.5, 179.99 } };
+        int count = 20_000;
+        double[] lats = new double[count];
+        double[] lons = new double[count];
+        byte[] zones = new byte[count];
+        for (double[] center : centers) {
+            GeofenceKernel kernel = new GeofenceKernel(center[0], center[1]);
+            for (int i = 0; i < count; i++) {
+                // Mostly near the fence, some far away
+                double spread = i % 10 == 0 ? 5 : 0.03;
+                lats[i] = center[0] + (random.nextDouble() - 0.5) * spread;
+                lons[i] = center[1] + (random.nextDouble() - 0.5) * spread;
+            }
+            int exact = kernel.classify(lats, lons, count, 1.0, 1.1, zones);
+            assertTrue(exact < count / 2, "estimate should settle most points");
+
+            for (int i = 0; i < count; i++) {
+                double distance = haversineKm(center[0], center[1], lats[i], lons[i]);
+                byte expected = distance < 1.0 ? GeofenceKernel.INSIDE
+                        : distance > 1.1 ? GeofenceKernel.OUTSIDE
+                        : GeofenceKernel.BAND;
+                assertEquals(expected, zones[i], "point " + lats[i] + "," + lons[i]);
+            }
+        }
+    }
+
+    @Test
+    void testClassifyOnlyTouchesCount() {
+        GeofenceKernel kernel = new GeofenceKernel(0, 0);
+        byte[] zones = { 9, 9, 9 };
+        kernel.classify(new double[] { 0, 0, 0 }, new double[] { 0, 5, 0 }, 2, 1, 2, zones);
+        assertArrayEquals(new byte[] { GeofenceKernel.INSIDE, GeofenceKernel.OUTSIDE, 9 }, zones);
+    }
+}
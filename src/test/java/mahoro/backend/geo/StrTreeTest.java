@@ -0,0 +1,40 @@
+package mahoro.backend.geo;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.*;
+
+import org.junit.jupiter.api.Test;
+
+class StrTreeTest {
+
+    @Test
+    void testQueryMatchesLinearScan() {
+        Random random = new Random(42);
+        List<StrTree.Entry<Integer>> entries = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            double x = random.nextDouble() * 100;
+            double y = random.nextDouble() * 100;
+            entries.add(new StrTree.Entry<>(x, y, x + random.nextDouble() * 3, y + random.nextDouble() * 3, i));
+        }
+        StrTree<Integer> tree = new StrTree<>(new ArrayList<>(entries));
+        assertEquals(5000, tree.size());
+
+        for (int q = 0; q < 500; q++) {
+            double x = random.nextDouble() * 100;
+            double y = random.nextDouble() * 100;
+            Set<Integer> expected = new HashSet<>();
+            for (StrTree.Entry<Integer> entry : entries) {
+                if (x >= entry.minX() && x <= entry.maxX() && y >= entry.minY() && y <= entry.maxY()) {
+                    expected.add(entry.value());
+                }
+            }
+            assertEquals(expected, new HashSet<>(tree.query(x, y)));
+        }
+    }
+
+    @Test
+    void testEmptyTree() {
+        assertTrue(new StrTree<String>(List.of()).query(0, 0).isEmpty());
+    }
+}
@@ -0,0 +1,104 @@
+package mahoro.backend.ingest;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.*;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.*;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import mahoro.backend.dto.LocationReportDTO;
+
+class TcpTrackerServerTest {
+
+    @Mock
+    private TrackerIngestDispatcher dispatcher;
+
+    @InjectMocks
+    private TcpTrackerServer server;
+
+    private final List<LocationReportDTO> received = Collections.synchronizedList(new ArrayList<>());
+
+    @BeforeEach
+    void setUp() throws Exception {
+        MockitoAnnotations.openMocks(this);
+        doAnswer(i -> received.addAll(i.getArgument(0))).when(dispatcher).dispatch(anyList());
+        ReflectionTestUtils.setField(server, "enabled", true);
+        ReflectionTestUtils.setField(server, "host", "127.0.0.1");
+        ReflectionTestUtils.setField(server, "port", 0);
+        ReflectionTestUtils.setField(server, "bufferSize", 256);
+        server.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop();
+    }
+
+    private static TrackerFrame frame(int i) {
+        return new TrackerFrame("35693803564380" + i, System.currentTimeMillis(), -1.95 + i / 1000.0, 30.06, 10, 50);
+    }
+
+    @Test
+    void testFramesFromLocalClientAreDecodedAndDispatched() throws Exception {
+        ByteBuffer out = ByteBuffer.allocate(TrackerFrameCodec.FRAME_LENGTH * 3 + 5);
+        TrackerFrameCodec.encode(frame(1), out);
+        out.put(new byte[] { 1, 2, 3, 4, 5 });
+        TrackerFrameCodec.encode(frame(2), out);
+        TrackerFrameCodec.encode(frame(3), out);
+        out.flip();
+
+        try (SocketChannel client = SocketChannel.open(new InetSocketAddress("127.0.0.1", server.getLocalPort()))) {
+            // Split the stream mid-frame to exercise reassembly across reads
+            ByteBuffer head = out.duplicate().limit(45);
+            client.write(head);
+            Thread.sleep(50);
+            out.position(45);
+            client.write(out);
+
+            long deadline = System.currentTimeMillis() + 5000;
+            while (received.size() < 3 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(20);
+            }
+        }
+
+        assertEquals(3, received.size());
+        assertEquals("356938035643801", received.get(0).imei());
+        assertEquals(3L, server.getStats().get("frames"));
+        assertEquals(1L, server.getStats().get("decodeErrors"));
+    }
+
+    @Test
+    void testFailingConnectionIsClosedAndOthersKeepWorking() throws Exception {
+        doThrow(new IllegalStateException("boom")).doAnswer(i -> received.addAll(i.getArgument(0)))
+                .when(dispatcher).dispatch(anyList());
+        ByteBuffer out = ByteBuffer.allocate(TrackerFrameCodec.FRAME_LENGTH);
+        TrackerFrameCodec.encode(frame(1), out);
+
+        try (SocketChannel failing = SocketChannel.open(new InetSocketAddress("127.0.0.1", server.getLocalPort()))) {
+            failing.write(out.flip());
+            // The server closes the connection, which the client sees as end of stream
+            failing.socket().setSoTimeout(5000);
+            assertEquals(-1, failing.socket().getInputStream().read());
+        }
+
+        try (SocketChannel client = SocketChannel.open(new InetSocketAddress("127.0.0.1", server.getLocalPort()))) {
+            client.write(out.rewind());
+            long deadline = System.currentTimeMillis() + 5000;
+            while (received.isEmpty() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(20);
+            }
+        }
+
+        assertEquals(1, received.size());
+        assertEquals(1L, server.getStats().get("failedConnections"));
+    }
+}
@@ -0,0 +1,56 @@
+package mahoro.backend.ingest;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.ByteBuffer;
+
+import org.junit.jupiter.api.Test;
+
+class TrackerFrameCodecTest {
+
+    private final TrackerFrame frame = new TrackerFrame("012345678901234", 1_700_000_000_000L,
+            -1.9440727, 30.0618851, 42.5, 87);
+
+    @Test
+    void testEncodeDecodeRoundTrip() {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(TrackerFrameCodec.FRAME_LENGTH);
+        TrackerFrameCodec.encode(frame, buffer);
+
+        TrackerFrame decoded = TrackerFrameCodec.decode(buffer, 0);
+
+        assertEquals("012345678901234", decoded.imei());
+        assertEquals(frame.timestampMillis(), decoded.timestampMillis());
+        assertEquals(frame.latitude(), decoded.latitude(), 1e-7);
+        assertEquals(frame.longitude(), decoded.longitude(), 1e-7);
+        assertEquals(42.5, decoded.speedKmh(), 1e-9);
+        assertEquals(87, decoded.batteryLevel());
+        assertEquals(87, decoded.toReport().battery());
+    }
+
+    @Test
+    void testUnknownBatteryDecodesAsNull() {
+        ByteBuffer buffer = ByteBuffer.allocate(TrackerFrameCodec.FRAME_LENGTH);
+        TrackerFrameCodec.encode(new TrackerFrame("356938035643809", 0L, 0, 0, 0, null), buffer);
+
+        assertNull(TrackerFrameCodec.decode(buffer, 0).batteryLevel());
+    }
+
+    @Test
+    void testBatteryAboveHundredDecodesAsNull() {
+        ByteBuffer buffer = ByteBuffer.allocate(TrackerFrameCodec.FRAME_LENGTH);
+        TrackerFrameCodec.encode(new TrackerFrame("356938035643809", 0L, 0, 0, 0, 180), buffer);
+
+        assertNull(TrackerFrameCodec.decode(buffer, 0).batteryLevel());
+    }
+
+    @Test
+    void testCorruptedFrameIsRejected() {
+        ByteBuffer buffer = ByteBuffer.allocate(TrackerFrameCodec.FRAME_LENGTH);
+        TrackerFrameCodec.encode(frame, buffer);
+        buffer.put(21, (byte) (buffer.get(21) ^ 0x01));
+
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class,
+                () -> TrackerFrameCodec.decode(buffer, 0));
+        assertTrue(ex.getMessage().contains("checksum"));
+    }
+}
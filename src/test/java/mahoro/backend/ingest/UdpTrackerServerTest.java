@@ -0,0 +1,130 @@
+package mahoro.backend.ingest;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.*;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.*;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import mahoro.backend.dto.LocationReportDTO;
+
+class UdpTrackerServerTest {
+
+    @Mock
+    private TrackerIngestDispatcher dispatcher;
+
+    @InjectMocks
+    private UdpTrackerServer server;
+
+    private final List<LocationReportDTO> received = Collections.synchronizedList(new ArrayList<>());
+
+    @BeforeEach
+    void setUp() throws Exception {
+        MockitoAnnotations.openMocks(this);
+        doAnswer(i -> received.addAll(i.getArgument(0))).when(dispatcher).dispatch(anyList());
+        ReflectionTestUtils.setField(server, "enabled", true);
+        ReflectionTestUtils.setField(server, "host", "127.0.0.1");
+        ReflectionTestUtils.setField(server, "port", 0);
+        ReflectionTestUtils.setField(server, "receiveThreads", 1);
+        ReflectionTestUtils.setField(server, "maxDatagramsPerSecond", 3);
+        ReflectionTestUtils.setField(server, "maxSources", 1000);
+        server.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop();
+    }
+
+    private static TrackerFrame frame(String imei, long timestamp) {
+        return new TrackerFrame(imei, timestamp, -1.95, 30.06, 0, 15);
+    }
+
+    private static ByteBuffer datagram(long timestamp) {
+        ByteBuffer out = ByteBuffer.allocate(TrackerFrameCodec.FRAME_LENGTH);
+        TrackerFrameCodec.encode(frame("356938035643809", timestamp), out);
+        return out.flip();
+    }
+
+    private boolean isDuplicate(TrackerFrame frame) {
+        return ReflectionTestUtils.invokeMethod(server, "isDuplicate", frame);
+    }
+
+    private boolean admit(String address) throws Exception {
+        return ReflectionTestUtils.invokeMethod(server, "admit", InetAddress.getByName(address));
+    }
+
+    private long counter(String name) {
+        return (Long) server.getStats().get(name);
+    }
+
+    @Test
+    void testDuplicatesAndRateLimitedDatagramsAreDropped() throws Exception {
+        InetSocketAddress target = new InetSocketAddress("127.0.0.1", server.getLocalPort());
+        try (DatagramChannel client = DatagramChannel.open()) {
+            client.send(datagram(2000), target);
+            client.send(datagram(1000), target);
+            client.send(datagram(2000), target);
+            client.send(datagram(3000), target);
+
+            long deadline = System.currentTimeMillis() + 5000;
+            while (received.size() + counter("droppedDuplicates") + counter("droppedRateLimited") < 4
+                    && System.currentTimeMillis() < deadline) {
+                Thread.sleep(20);
+            }
+        }
+
+        assertEquals(2, received.size());
+        assertEquals(1L, counter("droppedDuplicates"));
+        assertEquals(1L, counter("droppedRateLimited"));
+        assertEquals(1L, counter("outOfOrder"));
+    }
+
+    @Test
+    void testFullDuplicateTableKeepsActiveDevices() {
+        ReflectionTestUtils.setField(server, "maxSources", 2);
+
+        assertFalse(isDuplicate(frame("356938035643801", 1000)));
+        assertFalse(isDuplicate(frame("356938035643802", 1000)));
+        // No room for a third device while the others are active, so its repeat is not caught
+        assertFalse(isDuplicate(frame("356938035643803", 1000)));
+        assertFalse(isDuplicate(frame("356938035643803", 1000)));
+
+        assertTrue(isDuplicate(frame("356938035643801", 1000)));
+        assertTrue(isDuplicate(frame("356938035643802", 1000)));
+        assertEquals(2, server.getStats().get("trackedImeis"));
+        assertEquals(2L, counter("untrackedFrames"));
+    }
+
+    @Test
+    void testFullSourceTableRejectsNewSendersUntilTheSweep() throws Exception {
+        ReflectionTestUtils.setField(server, "maxSources", 2);
+
+        assertTrue(admit("10.0.0.1"));
+        assertTrue(admit("10.0.0.2"));
+        assertFalse(admit("10.0.0.3"));
+        assertFalse(admit("10.0.0.4"));
+        assertTrue(admit("10.0.0.1"));
+        assertEquals(2, server.getStats().get("sources"));
+        assertEquals(2L, counter("droppedSourcesFull"));
+        assertEquals(0L, counter("droppedRateLimited"));
+
+        Map<InetAddress, ?> sources = (Map<InetAddress, ?>) ReflectionTestUtils.getField(server, "sources");
+        ReflectionTestUtils.setField(sources.get(InetAddress.getByName("10.0.0.2")), "windowStart",
+                System.currentTimeMillis() - 120_000);
+        server.evictIdle();
+
+        assertEquals(1, server.getStats().get("sources"));
+        assertTrue(admit("10.0.0.3"));
+    }
+}
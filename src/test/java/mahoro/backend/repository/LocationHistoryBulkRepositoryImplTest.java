@@ -0,0 +1,47 @@
+package mahoro.backend.repository;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.Test;
+
+import mahoro.backend.model.Device;
+import mahoro.backend.model.LocationHistory;
+
+class LocationHistoryBulkRepositoryImplTest {
+
+    @Test
+    void testBatchInsertRunsOnTheAcquiredConnection() throws Exception {
+        DataSource dataSource = mock(DataSource.class);
+        Connection connection = mock(Connection.class);
+        PreparedStatement statement = mock(PreparedStatement.class);
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(anyString())).thenReturn(statement);
+
+        Device device = new Device();
+        device.setDeviceId(UUID.randomUUID());
+        LocationHistory location = new LocationHistory();
+        location.setDevice(device);
+        location.setLatitude(-1.95);
+        location.setLongitude(30.06);
+        location.setTimestamp(LocalDateTime.now());
+
+        new LocationHistoryBulkRepositoryImpl(dataSource).insertAll(List.of(location));
+
+        assertNotNull(location.getLocationHistoryId());
+        verify(connection).prepareStatement(startsWith("INSERT INTO location_history"));
+        verify(statement).addBatch();
+        verify(statement).executeBatch();
+        verify(connection).close();
+        verify(dataSource, times(1)).getConnection();
+    }
+}
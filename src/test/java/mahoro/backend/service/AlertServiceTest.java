@@ -66,6 +66,22 @@ class AlertServiceTest {
         assertTrue(ex.getMessage().contains("Device not found"));
     }
 
+    @Test
+    void testCreateOfflineAlertsSavesOneBatch() {
+        Device other = new Device();
+        other.setDeviceId(UUID.randomUUID());
+        List<UUID> ids = List.of(device.getDeviceId(), other.getDeviceId(), UUID.randomUUID());
+        when(deviceRepository.findAllById(ids)).thenReturn(List.of(device, other));
+        when(alertRepository.saveAll(anyList())).thenAnswer(i -> i.getArgument(0));
+
+        List<TrackingAlert> alerts = alertService.createOfflineAlerts(ids, "Offline");
+
+        assertEquals(2, alerts.size());
+        assertTrue(alerts.stream().allMatch(a -> a.getAlertType() == AlertType.DEVICE_OFFLINE && !a.isResolved()));
+        verify(alertRepository, times(1)).saveAll(anyList());
+        verify(alertRepository, never()).save(any());
+    }
+
     @Test
     void testMarkAlertAsResolved() {
         TrackingAlert alert = new TrackingAlert();
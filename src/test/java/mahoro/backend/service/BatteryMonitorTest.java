@@ -0,0 +1,71 @@
+package mahoro.backend.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import mahoro.backend.service.BatteryMonitor.Crossing;
+import mahoro.backend.service.BatteryMonitor.Reading;
+
+class BatteryMonitorTest {
+
+    private BatteryMonitor monitor;
+    private final UUID deviceId = UUID.randomUUID();
+    private final LocalDateTime start = LocalDateTime.of(2026, 3, 1, 8, 0);
+
+    @BeforeEach
+    void setUp() {
+        monitor = new BatteryMonitor();
+    }
+
+    private Crossing at(int minutes, int percent) {
+        return monitor.update(deviceId, new Reading(percent, start.plusMinutes(minutes)));
+    }
+
+    @Test
+    void testLowOnceUntilRecovered() {
+        assertEquals(Crossing.NONE, at(0, 40));
+        assertEquals(Crossing.LOW, at(1, 15));
+        // Wavering around the threshold and draining further stay quiet
+        for (int i = 2; i < 50; i++) {
+            assertEquals(Crossing.NONE, at(i, i % 2 == 0 ? 16 : 9));
+        }
+        assertEquals(Crossing.NONE, at(50, 24));
+        assertEquals(Crossing.RECOVERED, at(51, 25));
+        assertEquals(Crossing.LOW, at(52, 5));
+    }
+
+    @Test
+    void testOlderReadingIsIgnored() {
+        at(10, 50);
+        assertEquals(Crossing.NONE, at(5, 3));
+        assertEquals(50, monitor.latest(deviceId).percent());
+        assertNull(monitor.latest(UUID.randomUUID()));
+    }
+
+    @Test
+    void testForgetClearsLowState() {
+        at(0, 10);
+        monitor.forget(deviceId);
+        assertNull(monitor.latest(deviceId));
+        assertEquals(Crossing.LOW, at(1, 10));
+    }
+
+    @Test
+    void testPendingStateChangesOnlyOnApply() {
+        at(0, 40);
+        BatteryMonitor.Pending pending = monitor.begin(deviceId);
+        assertEquals(Crossing.LOW, pending.update(new Reading(10, start.plusMinutes(1))));
+        assertEquals(40, monitor.latest(deviceId).percent());
+
+        // Not applied, as after a rollback: the low battery is raised again
+        BatteryMonitor.Pending retry = monitor.begin(deviceId);
+        assertEquals(Crossing.LOW, retry.update(new Reading(10, start.plusMinutes(1))));
+        retry.apply();
+        assertEquals(Crossing.NONE, at(2, 9));
+    }
+}
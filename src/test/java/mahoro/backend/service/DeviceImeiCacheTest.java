@@ -0,0 +1,78 @@
+package mahoro.backend.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.util.*;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.*;
+
+import mahoro.backend.model.Device;
+import mahoro.backend.repository.DeviceRepository;
+
+class DeviceImeiCacheTest {
+
+    @Mock
+    private DeviceRepository deviceRepository;
+
+    @InjectMocks
+    private DeviceImeiCache deviceImeiCache;
+
+    private Device device;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        device = new Device();
+        device.setDeviceId(UUID.randomUUID());
+        device.setImei("356938035643809");
+    }
+
+    @Test
+    void testKnownImeiIsLookedUpOnce() {
+        when(deviceRepository.findByImei(device.getImei())).thenReturn(Optional.of(device));
+
+        assertEquals(Optional.of(device.getDeviceId()), deviceImeiCache.resolve(device.getImei()));
+        assertEquals(Optional.of(device.getDeviceId()), deviceImeiCache.resolve(device.getImei()));
+
+        verify(deviceRepository, times(1)).findByImei(device.getImei());
+        assertEquals(1L, deviceImeiCache.getStats().get("hits"));
+        assertEquals(1L, deviceImeiCache.getStats().get("misses"));
+    }
+
+    @Test
+    void testUnknownImeiIsNegativelyCached() {
+        when(deviceRepository.findByImei("000")).thenReturn(Optional.empty());
+
+        assertTrue(deviceImeiCache.resolve("000").isEmpty());
+        assertTrue(deviceImeiCache.resolve("000").isEmpty());
+
+        verify(deviceRepository, times(1)).findByImei("000");
+        assertEquals(1L, deviceImeiCache.getStats().get("negativeHits"));
+    }
+
+    @Test
+    void testInvalidateForcesReload() {
+        when(deviceRepository.findByImei(device.getImei())).thenReturn(Optional.empty(), Optional.of(device));
+
+        assertTrue(deviceImeiCache.resolve(device.getImei()).isEmpty());
+        deviceImeiCache.invalidate(device.getImei());
+
+        assertEquals(Optional.of(device.getDeviceId()), deviceImeiCache.resolve(device.getImei()));
+    }
+
+    @Test
+    void testResolveAllLooksUpOnlyMisses() {
+        when(deviceRepository.findByImei(device.getImei())).thenReturn(Optional.of(device));
+        deviceImeiCache.resolve(device.getImei());
+        when(deviceRepository.findByImeiIn(anyCollection())).thenReturn(List.of());
+
+        Map<String, UUID> resolved = deviceImeiCache.resolveAll(List.of(device.getImei(), "000"));
+
+        assertEquals(Map.of(device.getImei(), device.getDeviceId()), resolved);
+        verify(deviceRepository).findByImeiIn(List.of("000"));
+    }
+}
@@ -10,6 +10,8 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.*;
 import org.springframework.data.domain.*;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import mahoro.backend.model.Device;
 import mahoro.backend.model.User;
@@ -24,12 +26,43 @@ class DeviceServiceTest {
     @Mock
     private UserRepository userRepository;
 
+    @Mock
+    private LastSeenTracker lastSeenTracker;
+
+    @Mock
+    private DeviceImeiCache deviceImeiCache;
+
+    @Mock
+    private DuplicateReportFilter duplicateReportFilter;
+
+    @Mock
+    private PointThinningFilter pointThinningFilter;
+
+    @Mock
+    private GeofenceIndex geofenceIndex;
+
+    @Mock
+    private GeofenceStateTracker geofenceStateTracker;
+
+    @Mock
+    private MotionTracker motionTracker;
+
+    @Mock
+    private BatteryMonitor batteryMonitor;
+
+    @Mock
+    private LatestPositionCache latestPositionCache;
+
+    @Mock
+    private PresenceTracker presenceTracker;
+
     @InjectMocks
     private DeviceService deviceService;
 
     @BeforeEach
     void setUp() {
         MockitoAnnotations.openMocks(this);
+        when(lastSeenTracker.getLastSeen(any(), any())).thenAnswer(i -> i.getArgument(1));
     }
 
     @Test
@@ -46,6 +79,7 @@ class DeviceServiceTest {
         assertNotNull(saved.getRegistrationDate());
         assertEquals("12345", saved.getImei());
         verify(deviceRepository, times(1)).save(device);
+        verify(deviceImeiCache).invalidate("12345");
     }
 
     @Test
@@ -98,6 +132,9 @@ class DeviceServiceTest {
         Device updated = deviceService.updateDevice(id, details);
         assertEquals("NewName", updated.getDeviceName());
         assertEquals("67890", updated.getImei());
+        verify(deviceImeiCache).invalidate("12345");
+        verify(deviceImeiCache).invalidate("67890");
+        verify(presenceTracker).deviceAssigned(id, null);
     }
 
     @Test
@@ -108,6 +145,72 @@ class DeviceServiceTest {
 
         assertDoesNotThrow(() -> deviceService.deleteDevice(id));
         verify(deviceRepository, times(1)).deleteById(id);
+        verify(lastSeenTracker).forget(id);
+        verify(deviceImeiCache).evictDevice(id);
+        verify(duplicateReportFilter).forget(id);
+        verify(pointThinningFilter).forget(id);
+        verify(geofenceIndex).deviceRemoved(id);
+        verify(geofenceStateTracker).forget(id);
+        verify(motionTracker).forget(id);
+        verify(batteryMonitor).forget(id);
+        verify(latestPositionCache).forget(id);
+        verify(presenceTracker).deviceRemoved(id);
+    }
+
+    @Test
+    void testRolledBackDeleteKeepsInMemoryState() {
+        UUID id = UUID.randomUUID();
+        when(deviceRepository.existsById(id)).thenReturn(true);
+
+        completeInTransaction(TransactionSynchronization.STATUS_ROLLED_BACK, () -> deviceService.deleteDevice(id));
+        verify(lastSeenTracker, never()).forget(id);
+        verify(deviceImeiCache, never()).evictDevice(id);
+        verify(duplicateReportFilter, never()).forget(id);
+        verify(pointThinningFilter, never()).forget(id);
+        verify(presenceTracker, never()).deviceRemoved(id);
+
+        completeInTransaction(TransactionSynchronization.STATUS_COMMITTED, () -> deviceService.deleteDevice(id));
+        verify(lastSeenTracker).forget(id);
+        verify(deviceImeiCache).evictDevice(id);
+        verify(duplicateReportFilter).forget(id);
+        verify(pointThinningFilter).forget(id);
+        verify(presenceTracker).deviceRemoved(id);
+    }
+
+    @Test
+    void testImeiChangeInvalidatesCacheOnlyAfterCommit() {
+        UUID id = UUID.randomUUID();
+        Device existing = new Device();
+        existing.setDeviceId(id);
+        existing.setImei("12345");
+        Device details = new Device();
+        details.setImei("67890");
+        when(deviceRepository.findById(id)).thenReturn(Optional.of(existing));
+        when(deviceRepository.save(any(Device.class))).thenAnswer(i -> i.getArgument(0));
+
+        completeInTransaction(TransactionSynchronization.STATUS_ROLLED_BACK, () -> deviceService.updateDevice(id, details));
+        verify(deviceImeiCache, never()).invalidate(anyString());
+
+        existing.setImei("12345");
+        completeInTransaction(TransactionSynchronization.STATUS_COMMITTED, () -> deviceService.updateDevice(id, details));
+        verify(deviceImeiCache).invalidate("12345");
+        verify(deviceImeiCache).invalidate("67890");
+    }
+
+    // Runs the work as if inside a transaction that then ends with the given status
+    private void completeInTransaction(int status, Runnable work) {
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            work.run();
+            for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+                if (status == TransactionSynchronization.STATUS_COMMITTED) {
+                    synchronization.afterCommit();
+                }
+                synchronization.afterCompletion(status);
+            }
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
     }
 
     @Test
@@ -134,6 +237,19 @@ class DeviceServiceTest {
         assertEquals(d2, result.get(1));
     }
 
+    @Test
+    void testGetDeviceStatsReadsPresenceCounts() {
+        UUID userId = UUID.randomUUID();
+        when(presenceTracker.deviceCount(userId)).thenReturn(2L);
+        when(presenceTracker.onlineCount(userId)).thenReturn(1L);
+
+        Map<String, Object> stats = deviceService.getDeviceStats(userId);
+        assertEquals(2L, stats.get("total"));
+        assertEquals(1L, stats.get("online"));
+        assertEquals(1L, stats.get("offline"));
+        verify(deviceRepository, never()).findByUser_UserId(userId);
+    }
+
     @Test
     void testCountByUserId() {
         UUID userId = UUID.randomUUID();
@@ -0,0 +1,112 @@
+package mahoro.backend.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.UUID;
+
+import org.junit.jupiter.api.Test;
+
+import mahoro.backend.dto.LocationReportDTO;
+
+class DuplicateReportFilterTest {
+
+    private final DuplicateReportFilter filter = new DuplicateReportFilter();
+    private final UUID deviceId = UUID.randomUUID();
+
+    private LocationReportDTO withSequence(long sequence) {
+        return new LocationReportDTO(deviceId, null, -1.95, 30.06, null, null, sequence);
+    }
+
+    @Test
+    void testRepeatedSequenceIsDuplicate() {
+        assertTrue(filter.markNew(deviceId, withSequence(10)));
+        assertFalse(filter.markNew(deviceId, withSequence(10)));
+        assertEquals(1L, filter.getStats().get("duplicates"));
+    }
+
+    @Test
+    void testLateSequenceInsideWindowIsAcceptedOnce() {
+        assertTrue(filter.markNew(deviceId, withSequence(100)));
+        assertTrue(filter.markNew(deviceId, withSequence(120)));
+        assertTrue(filter.markNew(deviceId, withSequence(110)));
+        assertFalse(filter.markNew(deviceId, withSequence(110)));
+        assertFalse(filter.markNew(deviceId, withSequence(100)));
+    }
+
+    @Test
+    void testSequenceBelowWindowIsAccepted() {
+        assertTrue(filter.markNew(deviceId, withSequence(1)));
+        assertTrue(filter.markNew(deviceId, withSequence(1000)));
+        assertTrue(filter.markNew(deviceId, withSequence(1)));
+        assertEquals(1L, filter.getStats().get("belowWindow"));
+    }
+
+    private LocationReportDTO withTimestamp(LocalDateTime timestamp) {
+        return new LocationReportDTO(deviceId, null, -1.95, 30.06, null, timestamp, null);
+    }
+
+    @Test
+    void testTimestampIsUsedWithoutSequence() {
+        LocalDateTime fix = LocalDateTime.of(2024, 5, 1, 10, 15, 30);
+
+        assertTrue(filter.markNew(deviceId, withTimestamp(fix)));
+        assertFalse(filter.markNew(deviceId, withTimestamp(fix.plusNanos(1000))));
+        assertTrue(filter.markNew(deviceId, withTimestamp(fix.plusSeconds(1))));
+    }
+
+    @Test
+    void testSeveralFixesPerSecondAreKept() {
+        LocalDateTime fix = LocalDateTime.of(2024, 5, 1, 10, 15, 30);
+        for (int i = 0; i < 5; i++) {
+            assertTrue(filter.markNew(deviceId, withTimestamp(fix.plusNanos(i * 200_000_000L))));
+        }
+        // A retransmission of an earlier fix is still recognised after later ones
+        assertFalse(filter.markNew(deviceId, withTimestamp(fix.plusNanos(200_000_000L))));
+    }
+
+    @Test
+    void testSequenceAndTimestampMarksAreKeptApart() {
+        LocalDateTime fix = LocalDateTime.of(2024, 5, 1, 10, 15, 30);
+        long millis = fix.toInstant(ZoneOffset.UTC).toEpochMilli();
+
+        assertTrue(filter.markNew(deviceId, withSequence(millis)));
+        assertTrue(filter.markNew(deviceId, withTimestamp(fix)));
+
+        // Timestamps do not push small sequence numbers below the sequence window
+        UUID other = UUID.randomUUID();
+        assertTrue(filter.markNew(other, new LocationReportDTO(other, null, 0, 0, null, fix, null)));
+        assertTrue(filter.markNew(other, new LocationReportDTO(other, null, 0, 0, null, null, 5L)));
+        assertFalse(filter.markNew(other, new LocationReportDTO(other, null, 0, 0, null, null, 5L)));
+    }
+
+    @Test
+    void testReportWithoutSequenceOrTimestampIsNeverDuplicate() {
+        LocationReportDTO report = new LocationReportDTO(deviceId, null, -1.95, 30.06, null, null, null);
+        assertTrue(filter.markNew(deviceId, report));
+        assertTrue(filter.markNew(deviceId, report));
+    }
+
+    @Test
+    void testReleasedReportIsAcceptedAgain() {
+        assertTrue(filter.markNew(deviceId, withSequence(5)));
+        filter.release(deviceId, withSequence(5));
+        assertTrue(filter.markNew(deviceId, withSequence(5)));
+    }
+
+    @Test
+    void testReleasedTimestampIsAcceptedAgain() {
+        LocalDateTime fix = LocalDateTime.of(2024, 5, 1, 10, 15, 30);
+        assertTrue(filter.markNew(deviceId, withTimestamp(fix)));
+        filter.release(deviceId, withTimestamp(fix));
+        assertTrue(filter.markNew(deviceId, withTimestamp(fix)));
+    }
+
+    @Test
+    void testDevicesAreTrackedSeparately() {
+        UUID other = UUID.randomUUID();
+        assertTrue(filter.markNew(deviceId, withSequence(1)));
+        assertTrue(filter.markNew(other, new LocationReportDTO(other, null, 0, 0, null, null, 1L)));
+    }
+}
@@ -0,0 +1,190 @@
+package mahoro.backend.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import java.util.*;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.*;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import mahoro.backend.model.Location;
+import mahoro.backend.model.LocationType;
+import mahoro.backend.repository.DeviceRepository;
+import mahoro.backend.repository.LocationRepository;
+import mahoro.backend.repository.UserRepository;
+
+class GeofenceIndexTest {
+
+    @Mock
+    private DeviceRepository deviceRepository;
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private LocationRepository locationRepository;
+
+    @InjectMocks
+    private GeofenceIndex geofenceIndex;
+
+    private final UUID deviceId = UUID.randomUUID();
+    private final UUID userId = UUID.randomUUID();
+    private Location village;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        village = new Location();
+        village.setLocationId(UUID.randomUUID());
+        village.setCenterLatitude(-1.95);
+        village.setCenterLongitude(30.06);
+
+        when(deviceRepository.findDeviceOwnerIds()).thenReturn(List.<Object[]>of(new Object[] {deviceId, userId}));
+        when(userRepository.findAssignedLocationIds())
+                .thenReturn(List.<Object[]>of(new Object[] {userId, village.getLocationId()}));
+        when(locationRepository.findAllFenced()).thenReturn(List.of(village));
+        geofenceIndex.load();
+    }
+
+    @Test
+    void testFenceResolvedFromLoadedLinks() {
+        GeofenceIndex.Fence fence = geofenceIndex.fenceFor(deviceId);
+
+        assertNotNull(fence);
+        assertEquals(village.getLocationId(), fence.locationId());
+        assertEquals(-1.95, fence.centerLatitude());
+        assertEquals(1.0, fence.radiusKm());
+        assertNull(geofenceIndex.fenceFor(UUID.randomUUID()));
+    }
+
+    @Test
+    void testRecenteringLocationMovesFenceForEveryDevice() {
+        village.setCenterLatitude(-2.00);
+        geofenceIndex.locationUpdated(village);
+
+        assertEquals(-2.00, geofenceIndex.fenceFor(deviceId).centerLatitude());
+
+        village.setCenterLatitude(null);
+        geofenceIndex.locationUpdated(village);
+        assertNull(geofenceIndex.fenceFor(deviceId));
+    }
+
+    @Test
+    void testBoundaryReplacesCircleAndLocatesInnermostArea() {
+        village.setBoundary("{\"type\":\"Polygon\",\"coordinates\":"
+                + "[[[30.05,-1.96],[30.07,-1.96],[30.07,-1.94],[30.05,-1.94],[30.05,-1.96]]]}");
+        Location district = new Location();
+        district.setLocationId(UUID.randomUUID());
+        district.setBoundary("{\"type\":\"Polygon\",\"coordinates\":"
+                + "[[[29.9,-2.1],[30.2,-2.1],[30.2,-1.8],[29.9,-1.8],[29.9,-2.1]]]}");
+        geofenceIndex.locationsUpdated(List.of(village, district));
+
+        GeofenceIndex.Fence fence = geofenceIndex.fenceFor(deviceId);
+        assertNotNull(fence.boundary());
+        assertTrue(fence.contains(-1.95, 30.06, 0));
+        // Inside the old 1 km circle but outside the polygon
+        assertFalse(fence.contains(-1.95, 30.075, 0.5));
+
+        assertEquals(List.of(village.getLocationId(), district.getLocationId()), geofenceIndex.locate(-1.95, 30.06));
+        assertEquals(List.of(district.getLocationId()), geofenceIndex.locate(-2.0, 30.0));
+        assertTrue(geofenceIndex.locate(0, 0).isEmpty());
+
+        geofenceIndex.locationRemoved(district.getLocationId());
+        assertEquals(List.of(village.getLocationId()), geofenceIndex.locate(-1.95, 30.06));
+    }
+
+    @Test
+    void testReassignmentsUpdateLookup() {
+        Location other = new Location();
+        other.setLocationId(UUID.randomUUID());
+        other.setCenterLatitude(-1.50);
+        other.setCenterLongitude(29.60);
+        geofenceIndex.locationUpdated(other);
+
+        geofenceIndex.userAssigned(userId, other.getLocationId());
+        assertEquals(other.getLocationId(), geofenceIndex.fenceFor(deviceId).locationId());
+
+        geofenceIndex.deviceAssigned(deviceId, null);
+        assertNull(geofenceIndex.fenceFor(deviceId));
+
+        geofenceIndex.deviceAssigned(deviceId, userId);
+        geofenceIndex.userRemoved(userId);
+        assertNull(geofenceIndex.fenceFor(deviceId));
+    }
+
+    @Test
+    void testChangesWaitForCommit() {
+        Location other = new Location();
+        other.setLocationId(UUID.randomUUID());
+        other.setCenterLatitude(-1.50);
+        other.setCenterLongitude(29.60);
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            geofenceIndex.locationUpdated(other);
+            geofenceIndex.userAssigned(userId, other.getLocationId());
+            assertEquals(village.getLocationId(), geofenceIndex.fenceFor(deviceId).locationId());
+
+            // Rolled back: nothing is applied
+            TransactionSynchronizationManager.clearSynchronization();
+            TransactionSynchronizationManager.initSynchronization();
+            assertEquals(village.getLocationId(), geofenceIndex.fenceFor(deviceId).locationId());
+
+            geofenceIndex.locationUpdated(other);
+            geofenceIndex.userAssigned(userId, other.getLocationId());
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+            assertEquals(other.getLocationId(), geofenceIndex.fenceFor(deviceId).locationId());
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    private static Location area(String name, LocationType type, Location parent, String boundary) {
+        Location location = new Location();
+        location.setLocationId(UUID.randomUUID());
+        location.setName(name);
+        location.setType(type);
+        location.setParent(parent);
+        location.setBoundary(boundary);
+        return location;
+    }
+
+    @Test
+    void testAncestorFencesSkipUnboundedLevelsAndAreCached() {
+        Location district = area("Gasabo", LocationType.DISTRICT, null, "{\"type\":\"Polygon\",\"coordinates\":"
+                + "[[[29.9,-2.1],[30.2,-2.1],[30.2,-1.8],[29.9,-1.8],[29.9,-2.1]]]}");
+        Location sector = area("Remera", LocationType.SECTOR, district, null);
+        Location cell = area("Rukiri", LocationType.CELL, sector, "{\"type\":\"Polygon\",\"coordinates\":"
+                + "[[[30.0,-2.0],[30.1,-2.0],[30.1,-1.9],[30.0,-1.9],[30.0,-2.0]]]}");
+        village.setParent(cell);
+        geofenceIndex.locationsUpdated(List.of(district, sector, cell, village));
+
+        List<GeofenceIndex.FenceLevel> path = geofenceIndex.ancestorFences(village.getLocationId());
+        assertEquals(List.of(LocationType.CELL, LocationType.DISTRICT),
+                path.stream().map(GeofenceIndex.FenceLevel::type).toList());
+        assertEquals("Rukiri", path.get(0).name());
+        assertSame(path, geofenceIndex.ancestorFences(village.getLocationId()));
+
+        geofenceIndex.locationRemoved(cell.getLocationId());
+        assertTrue(geofenceIndex.ancestorFences(village.getLocationId()).isEmpty());
+    }
+
+    @Test
+    void testHierarchyLoadedWithoutWalkingParents() {
+        Location cell = area("Rukiri", LocationType.CELL, null, "{\"type\":\"Polygon\",\"coordinates\":"
+                + "[[[30.0,-2.0],[30.1,-2.0],[30.1,-1.9],[30.0,-1.9],[30.0,-2.0]]]}");
+        when(locationRepository.findHierarchy()).thenReturn(List.<Object[]>of(
+                new Object[] {cell.getLocationId(), null, LocationType.CELL, "Rukiri"},
+                new Object[] {village.getLocationId(), cell.getLocationId(), LocationType.VILLAGE, "Ubumwe"}));
+        when(locationRepository.findAllFenced()).thenReturn(List.of(cell));
+        geofenceIndex.load();
+
+        List<GeofenceIndex.FenceLevel> path = geofenceIndex.ancestorFences(village.getLocationId());
+        assertEquals(1, path.size());
+        assertEquals(cell.getLocationId(), path.get(0).fence().locationId());
+    }
+}
@@ -0,0 +1,90 @@
+package mahoro.backend.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import mahoro.backend.geo.GeofenceKernel;
+import mahoro.backend.service.GeofenceStateTracker.Transition;
+
+class GeofenceStateTrackerTest {
+
+    private GeofenceStateTracker tracker;
+    private final UUID deviceId = UUID.randomUUID();
+    private final UUID fenceId = UUID.randomUUID();
+    private final LocalDateTime start = LocalDateTime.of(2026, 3, 1, 8, 0);
+
+    @BeforeEach
+    void setUp() {
+        tracker = new GeofenceStateTracker();
+        ReflectionTestUtils.setField(tracker, "hysteresisMeters", 100.0);
+        ReflectionTestUtils.setField(tracker, "dwellSeconds", 60L);
+    }
+
+    private Transition at(int seconds, double signedDistanceKm) {
+        return tracker.updateDistance(deviceId, fenceId, signedDistanceKm, start.plusSeconds(seconds));
+    }
+
+    @Test
+    void testExitNeedsHysteresisAndDwell() {
+        // Within the hysteresis band: no crossing
+        assertEquals(Transition.NONE, at(0, 0.05));
+        assertEquals(Transition.NONE, at(120, 0.05));
+
+        assertEquals(Transition.NONE, at(130, 2.0));
+        assertEquals(Transition.NONE, at(160, 2.0));
+        assertEquals(Transition.EXITED, at(190, 2.0));
+
+        // Parked outside: no further alerts
+        for (int i = 1; i <= 100; i++) {
+            assertEquals(Transition.NONE, at(190 + i * 30, 2.0));
+        }
+        assertEquals(1L, tracker.getStats().get("outside"));
+    }
+
+    @Test
+    void testJitterAcrossBorderDoesNotFlap() {
+        at(0, 2.0);
+        assertEquals(Transition.EXITED, at(60, 2.0));
+
+        // Back in the band but not inside the fence: still outside
+        assertEquals(Transition.NONE, at(70, 0.02));
+        // A brief dip inside that does not last the dwell time is ignored
+        assertEquals(Transition.NONE, at(80, -0.01));
+        assertEquals(Transition.NONE, at(90, 0.02));
+
+        assertEquals(Transition.NONE, at(300, -0.5));
+        assertEquals(Transition.ENTERED, at(360, -0.5));
+    }
+
+    @Test
+    void testNewFenceResetsState() {
+        at(0, 2.0);
+        assertEquals(Transition.EXITED, at(60, 2.0));
+
+        UUID otherFence = UUID.randomUUID();
+        assertEquals(Transition.NONE, tracker.updateDistance(deviceId, otherFence, 2.0, start.plusSeconds(70)));
+        assertEquals(Transition.EXITED, tracker.updateDistance(deviceId, otherFence, 2.0, start.plusSeconds(130)));
+
+        tracker.forget(deviceId);
+        assertEquals(0, tracker.getStats().get("trackedDevices"));
+    }
+
+    @Test
+    void testPendingStateChangesOnlyOnApply() {
+        at(0, 2.0);
+        GeofenceStateTracker.Pending pending = tracker.begin(deviceId);
+        assertEquals(Transition.EXITED, pending.update(0, fenceId, GeofenceKernel.OUTSIDE, start.plusSeconds(60)));
+
+        // Not applied, as after a rollback: the exit is raised again
+        GeofenceStateTracker.Pending retry = tracker.begin(deviceId);
+        assertEquals(Transition.EXITED, retry.update(0, fenceId, GeofenceKernel.OUTSIDE, start.plusSeconds(60)));
+        retry.apply();
+        assertEquals(Transition.NONE, at(120, 2.0));
+    }
+}
@@ -0,0 +1,113 @@
+package mahoro.backend.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import mahoro.backend.dto.LocationReportDTO;
+
+class IngestRateLimiterTest {
+
+    @Mock
+    private DeviceImeiCache deviceImeiCache;
+
+    private IngestRateLimiter limiter;
+
+    private LocationReportDTO report(UUID deviceId) {
+        return new LocationReportDTO(deviceId, null, -1.95, 30.06, null, null, null);
+    }
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        limiter = new IngestRateLimiter(deviceImeiCache);
+        ReflectionTestUtils.setField(limiter, "reportsPerSecond", 1.0);
+        ReflectionTestUtils.setField(limiter, "burst", 3);
+        ReflectionTestUtils.setField(limiter, "maxConcurrent", 2);
+        limiter.start();
+    }
+
+    @Test
+    void testBurstIsAdmittedThenDeviceIsThrottled() {
+        LocationReportDTO report = report(UUID.randomUUID());
+
+        assertEquals(0, limiter.tryAcquire(report));
+        assertEquals(0, limiter.tryAcquire(report));
+        assertEquals(0, limiter.tryAcquire(report));
+        long wait = limiter.tryAcquire(report);
+
+        assertTrue(wait > 0 && wait <= 1_000_000_000L);
+        assertEquals(1L, limiter.getStats().get("throttled"));
+        assertEquals(1L, limiter.getStats().get("throttledDevices"));
+    }
+
+    @Test
+    void testDevicesHaveSeparateBuckets() {
+        LocationReportDTO noisy = report(UUID.randomUUID());
+        for (int i = 0; i < 3; i++) {
+            limiter.tryAcquire(noisy);
+        }
+
+        assertTrue(limiter.tryAcquire(noisy) > 0);
+        assertEquals(0, limiter.tryAcquire(report(UUID.randomUUID())));
+    }
+
+    @Test
+    void testBatchTakesOneTokenPerDevice() {
+        UUID deviceId = UUID.randomUUID();
+        List<LocationReportDTO> batch = List.of(report(deviceId), report(deviceId), report(deviceId), report(deviceId));
+
+        assertEquals(0, limiter.tryAcquireAll(batch));
+        assertEquals(0, limiter.tryAcquire(report(deviceId)));
+    }
+
+    @Test
+    void testRejectedBatchGivesBackTokensOfOtherDevices() {
+        UUID quiet = UUID.randomUUID();
+        UUID noisy = UUID.randomUUID();
+        for (int i = 0; i < 3; i++) {
+            limiter.tryAcquire(report(noisy));
+        }
+        limiter.tryAcquire(report(quiet));
+        limiter.tryAcquire(report(quiet));
+
+        assertTrue(limiter.tryAcquireAll(List.of(report(quiet), report(noisy))) > 0);
+        assertTrue(limiter.tryAcquireAll(List.of(report(quiet), report(noisy))) > 0);
+        assertEquals(0, limiter.tryAcquire(report(quiet)));
+        assertEquals(6L, limiter.getStats().get("admitted"));
+    }
+
+    @Test
+    void testImeiReportsShareTheDeviceBucket() {
+        UUID deviceId = UUID.randomUUID();
+        LocationReportDTO byImei = new LocationReportDTO(null, "356938035643809", -1.95, 30.06, null, null, null);
+        when(deviceImeiCache.resolveAll(anyCollection())).thenReturn(Map.of("356938035643809", deviceId));
+
+        assertEquals(0, limiter.tryAcquireAll(List.of(report(deviceId), byImei)));
+        assertEquals(0, limiter.tryAcquire(byImei));
+        assertEquals(0, limiter.tryAcquire(report(deviceId)));
+        assertTrue(limiter.tryAcquire(byImei) > 0);
+        assertEquals(1, limiter.getStats().get("trackedDevices"));
+    }
+
+    @Test
+    void testConcurrencyLimit() {
+        assertTrue(limiter.tryEnter());
+        assertTrue(limiter.tryEnter());
+        assertFalse(limiter.tryEnter());
+
+        limiter.exit();
+        assertTrue(limiter.tryEnter());
+        assertEquals(1L, limiter.getStats().get("concurrencyRejections"));
+    }
+}
@@ -0,0 +1,75 @@
+package mahoro.backend.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.time.LocalDateTime;
+import java.util.*;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.*;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+class LastSeenTrackerTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private PresenceTracker presenceTracker;
+
+    @InjectMocks
+    private LastSeenTracker lastSeenTracker;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+    }
+
+    @Test
+    void testRepeatedTouchesCoalesceIntoOneRowPerFlush() {
+        UUID deviceId = UUID.randomUUID();
+        LocalDateTime now = LocalDateTime.now();
+        lastSeenTracker.touch(deviceId, now.minusSeconds(10));
+        lastSeenTracker.touch(deviceId, now);
+        lastSeenTracker.touch(deviceId, now.minusSeconds(5));
+
+        lastSeenTracker.flush();
+        lastSeenTracker.flush();
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<Object[]>> rows = ArgumentCaptor.forClass(List.class);
+        verify(jdbcTemplate, times(1)).batchUpdate(anyString(), rows.capture());
+        assertEquals(1, rows.getValue().size());
+        assertEquals(now, lastSeenTracker.getLastSeen(deviceId, now.minusHours(1)));
+    }
+
+    @Test
+    void testFailedFlushKeepsDevicePending() {
+        UUID deviceId = UUID.randomUUID();
+        lastSeenTracker.touch(deviceId, LocalDateTime.now());
+        when(jdbcTemplate.batchUpdate(anyString(), anyList())).thenThrow(new RuntimeException("db down"));
+
+        lastSeenTracker.flush();
+
+        assertEquals(1, lastSeenTracker.getStats().get("pendingDevices"));
+    }
+
+    @Test
+    void testLastSeenFallsBackToPersistedTime() {
+        UUID deviceId = UUID.randomUUID();
+        LocalDateTime persisted = LocalDateTime.now().minusMinutes(10);
+        assertEquals(persisted, lastSeenTracker.getLastSeen(deviceId, persisted));
+        assertNull(lastSeenTracker.getLastSeen(deviceId, null));
+    }
+
+    @Test
+    void testTouchFeedsPresence() {
+        UUID deviceId = UUID.randomUUID();
+        LocalDateTime now = LocalDateTime.now();
+        lastSeenTracker.touch(deviceId, now);
+        verify(presenceTracker).touch(deviceId, now);
+    }
+}
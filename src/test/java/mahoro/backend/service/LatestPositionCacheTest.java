@@ -0,0 +1,92 @@
+package mahoro.backend.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.*;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.*;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import mahoro.backend.model.Device;
+import mahoro.backend.model.LocationHistory;
+import mahoro.backend.repository.LocationHistoryRepository;
+
+class LatestPositionCacheTest {
+
+    @Mock
+    private LocationHistoryRepository locationHistoryRepository;
+
+    @InjectMocks
+    private LatestPositionCache latestPositionCache;
+
+    private Device device;
+    private final LocalDateTime noon = LocalDateTime.of(2026, 3, 1, 12, 0);
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        device = new Device();
+        device.setDeviceId(UUID.randomUUID());
+    }
+
+    private LocationHistory row(double latitude, LocalDateTime timestamp) {
+        LocationHistory location = new LocationHistory();
+        location.setLocationHistoryId(UUID.randomUUID());
+        location.setDevice(device);
+        location.setLatitude(latitude);
+        location.setLongitude(30.06);
+        location.setTimestamp(timestamp);
+        return location;
+    }
+
+    @Test
+    void testWarmedFromDatabase() {
+        UUID rowId = UUID.randomUUID();
+        UUID other = UUID.randomUUID();
+        when(locationHistoryRepository.findLatestPositions()).thenReturn(List.<Object[]>of(
+                new Object[] {device.getDeviceId(), rowId, -1.95, 30.06, noon, "Kigali", 12.5, 90.0},
+                new Object[] {other, UUID.randomUUID(), -1.96, 30.07, Timestamp.valueOf(noon), null, null, null}));
+        latestPositionCache.load();
+
+        LatestPositionCache.Position position = latestPositionCache.get(device.getDeviceId()).orElseThrow();
+        assertEquals(rowId, position.locationHistoryId());
+        assertEquals("Kigali", position.recordedAddress());
+        assertEquals(12.5, position.speedKmh());
+        assertEquals(noon, latestPositionCache.get(other).orElseThrow().timestamp());
+        assertTrue(latestPositionCache.get(UUID.randomUUID()).isEmpty());
+    }
+
+    @Test
+    void testWriteThroughKeepsNewest() {
+        latestPositionCache.update(List.of(row(-1.95, noon), row(-1.96, noon.plusMinutes(1))));
+        assertEquals(-1.96, latestPositionCache.get(device.getDeviceId()).orElseThrow().latitude());
+
+        // Back-filled history does not move the device
+        latestPositionCache.update(List.of(row(-1.90, noon.minusHours(1))));
+        assertEquals(-1.96, latestPositionCache.get(device.getDeviceId()).orElseThrow().latitude());
+
+        latestPositionCache.forget(device.getDeviceId());
+        assertTrue(latestPositionCache.get(device.getDeviceId()).isEmpty());
+        verify(locationHistoryRepository, never()).findTopByDevice_DeviceIdOrderByTimestampDesc(any());
+    }
+
+    @Test
+    void testRowsAppearOnlyOnceCommitted() {
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            latestPositionCache.update(List.of(row(-1.95, noon)));
+            assertTrue(latestPositionCache.get(device.getDeviceId()).isEmpty());
+
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+            assertEquals(-1.95, latestPositionCache.get(device.getDeviceId()).orElseThrow().latitude());
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+}
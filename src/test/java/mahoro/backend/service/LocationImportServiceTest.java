@@ -0,0 +1,160 @@
+package mahoro.backend.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.*;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.*;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import mahoro.backend.model.Device;
+import mahoro.backend.model.LocationHistory;
+import mahoro.backend.repository.DeviceRepository;
+import mahoro.backend.repository.LocationHistoryRepository;
+
+class LocationImportServiceTest {
+
+    @Mock
+    private LocationHistoryRepository locationHistoryRepository;
+
+    @Mock
+    private DeviceRepository deviceRepository;
+
+    @Mock
+    private DeviceImeiCache deviceImeiCache;
+
+    @Mock
+    private LatestPositionCache latestPositionCache;
+
+    @Spy
+    private ObjectMapper objectMapper = new ObjectMapper();
+
+    @InjectMocks
+    private LocationImportService locationImportService;
+
+    @TempDir
+    Path checkpointDir;
+
+    private Device device;
+
+    private static final String CSV = "imei,latitude,longitude,timestamp,address\n"
+            + "356938035643809,-1.9441,30.0619,2024-05-01T10:00:00,\"Kigali, Nyarugenge\"\n"
+            + "356938035643809,-1.9442,30.0620,2024-05-01T10:01:00,\n"
+            + "000000000000000,-1.9443,30.0621,2024-05-01T10:02:00,\n"
+            + "356938035643809,not-a-number,30.0622,2024-05-01T10:03:00,\n"
+            + "356938035643809,-1.9444,30.0623,2024-05-01T10:04:00,\n";
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        ReflectionTestUtils.setField(locationImportService, "batchSize", 2);
+        ReflectionTestUtils.setField(locationImportService, "checkpointDir", checkpointDir.toString());
+
+        device = new Device();
+        device.setDeviceId(UUID.randomUUID());
+        device.setImei("356938035643809");
+        when(deviceImeiCache.resolveAll(anyCollection())).thenReturn(Map.of(device.getImei(), device.getDeviceId()));
+        when(deviceRepository.findAllById(anyCollection())).thenReturn(List.of(device));
+        when(locationHistoryRepository.insertAll(anyList())).thenAnswer(i -> i.getArgument(0));
+    }
+
+    private InputStream stream(String text) {
+        return new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testCsvImportWritesInBatchesAndSkipsBadRows() throws Exception {
+        Map<String, Object> result = locationImportService.importStream("job-1", LocationImportService.Format.CSV,
+                stream(CSV)).toMap();
+
+        assertEquals("COMPLETED", result.get("status"));
+        assertEquals(3L, result.get("rowsWritten"));
+        assertEquals(2L, result.get("rowsRejected"));
+
+        ArgumentCaptor<List<LocationHistory>> rows = ArgumentCaptor.forClass(List.class);
+        verify(locationHistoryRepository, atLeastOnce()).insertAll(rows.capture());
+        assertEquals("Kigali, Nyarugenge", rows.getAllValues().get(0).get(0).getRecordedAddress());
+        verify(latestPositionCache, atLeastOnce()).update(anyList());
+        verify(locationHistoryRepository, never()).saveAll(anyList());
+    }
+
+    @Test
+    void testNdjsonImport() throws Exception {
+        String ndjson = "{\"imei\":\"356938035643809\",\"latitude\":-1.9441,\"longitude\":30.0619,\"timestamp\":\"2024-05-01T10:00:00\"}\n"
+                + "{\"imei\":\"356938035643809\",\"latitude\":-1.9442,\"longitude\":30.0620}\n";
+
+        Map<String, Object> result = locationImportService.importStream("job-2", LocationImportService.Format.NDJSON,
+                stream(ndjson)).toMap();
+
+        assertEquals(1L, result.get("rowsWritten"));
+        assertEquals(1L, result.get("rowsRejected"));
+    }
+
+    @Test
+    void testFailedImportResumesFromCheckpoint() throws Exception {
+        when(locationHistoryRepository.insertAll(anyList()))
+                .thenAnswer(i -> i.getArgument(0))
+                .thenThrow(new RuntimeException("connection lost"));
+
+        assertThrows(RuntimeException.class, () -> locationImportService.importStream("job-3",
+                LocationImportService.Format.CSV, stream(CSV)));
+        assertTrue(Files.readString(checkpointDir.resolve("job-3.checkpoint")).contains("line=2"));
+
+        reset(locationHistoryRepository);
+        when(locationHistoryRepository.insertAll(anyList())).thenAnswer(i -> i.getArgument(0));
+        Map<String, Object> resumed = locationImportService.importStream("job-3", LocationImportService.Format.CSV,
+                stream(CSV)).toMap();
+
+        assertEquals(2L, resumed.get("resumedFromLine"));
+        assertEquals(1L, resumed.get("rowsWritten"));
+        assertEquals("ALREADY_COMPLETED", locationImportService.importStream("job-3",
+                LocationImportService.Format.CSV, stream(CSV)).toMap().get("status"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testResumeSkipsRowsOfABatchStoredBeforeTheCheckpoint() throws Exception {
+        // The first batch was inserted, but the import died before recording it
+        Files.writeString(checkpointDir.resolve("job-5.checkpoint"), "line=0\npending=2\ncompleted=false\n");
+        LocationHistory stored = new LocationHistory();
+        stored.setDevice(device);
+        stored.setTimestamp(LocalDateTime.of(2024, 5, 1, 10, 0));
+        when(locationHistoryRepository.findByDevice_DeviceIdAndTimestampBetweenOrderByTimestampDesc(
+                device.getDeviceId(), LocalDateTime.of(2024, 5, 1, 10, 0), LocalDateTime.of(2024, 5, 1, 10, 1)))
+                .thenReturn(List.of(stored));
+
+        Map<String, Object> result = locationImportService.importStream("job-5", LocationImportService.Format.CSV,
+                stream(CSV)).toMap();
+
+        assertEquals(2L, result.get("rowsWritten"));
+        assertEquals(1L, result.get("rowsAlreadyStored"));
+        ArgumentCaptor<List<LocationHistory>> rows = ArgumentCaptor.forClass(List.class);
+        verify(locationHistoryRepository, atLeastOnce()).insertAll(rows.capture());
+        assertEquals(LocalDateTime.of(2024, 5, 1, 10, 1), rows.getAllValues().get(0).get(0).getTimestamp());
+        assertEquals(1, rows.getAllValues().get(0).size());
+        // Only the batch that may have been committed is checked against the table
+        verify(locationHistoryRepository, times(1))
+                .findByDevice_DeviceIdAndTimestampBetweenOrderByTimestampDesc(any(), any(), any());
+        assertFalse(Files.readString(checkpointDir.resolve("job-5.checkpoint")).contains("pending"));
+    }
+
+    @Test
+    void testCsvWithoutRequiredColumnsIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> locationImportService.importStream("job-4",
+                LocationImportService.Format.CSV, stream("imei,latitude\n1,2\n")));
+    }
+}
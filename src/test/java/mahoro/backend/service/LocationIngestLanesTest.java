@@ -0,0 +1,166 @@
+package mahoro.backend.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.*;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import mahoro.backend.dto.LocationReportDTO;
+import mahoro.backend.model.LocationHistory;
+
+class LocationIngestLanesTest {
+
+    @Mock
+    private LocationTrackingService locationTrackingService;
+
+    @Mock
+    private DeviceImeiCache deviceImeiCache;
+
+    @InjectMocks
+    private LocationIngestLanes lanes;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        ReflectionTestUtils.setField(lanes, "laneCount", 4);
+        ReflectionTestUtils.setField(lanes, "queueCapacity", 2);
+        lanes.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        lanes.stop();
+    }
+
+    private LocationReportDTO report(UUID deviceId) {
+        return new LocationReportDTO(deviceId, null, -1.95, 30.06, null, null, null);
+    }
+
+    private UUID deviceOnLane(int lane) {
+        UUID deviceId;
+        do {
+            deviceId = UUID.randomUUID();
+        } while (lanes.laneFor(deviceId) != lane);
+        return deviceId;
+    }
+
+    // Occupies the lane's thread until the returned latch is counted down
+    private CountDownLatch block(int lane) throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch running = new CountDownLatch(1);
+        lanes.execute(lane, () -> {
+            running.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        running.await();
+        return release;
+    }
+
+    @Test
+    void testImeiAndDeviceIdReportsForSameDeviceShareALane() {
+        UUID deviceId = UUID.randomUUID();
+        when(deviceImeiCache.resolveAll(anyCollection())).thenReturn(Map.of("356938035643809", deviceId));
+
+        Map<Integer, List<LocationReportDTO>> byLane = lanes.partition(List.of(
+                report(deviceId),
+                new LocationReportDTO(null, "356938035643809", -1.95, 30.06, null, null, null)));
+
+        assertEquals(1, byLane.size());
+        assertEquals(lanes.laneFor(deviceId), byLane.keySet().iterator().next());
+        assertEquals(2, byLane.values().iterator().next().size());
+    }
+
+    @Test
+    void testBatchIsStoredPerLaneAndCombined() {
+        List<LocationReportDTO> reports = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            reports.add(report(UUID.randomUUID()));
+        }
+        when(locationTrackingService.reportLocations(anyList())).thenAnswer(i -> {
+            List<LocationReportDTO> part = i.getArgument(0);
+            List<LocationHistory> saved = new ArrayList<>();
+            part.forEach(r -> saved.add(new LocationHistory()));
+            return saved;
+        });
+
+        assertEquals(20, lanes.reportLocations(reports).size());
+        verify(locationTrackingService, times(lanes.partition(reports).size())).reportLocations(anyList());
+    }
+
+    @Test
+    void testFailureOnLaneIsRethrownUnwrapped() {
+        when(locationTrackingService.reportLocations(anyList())).thenThrow(new RuntimeException("Device not found: x"));
+
+        RuntimeException e = assertThrows(RuntimeException.class,
+                () -> lanes.reportLocations(List.of(report(UUID.randomUUID()))));
+        assertEquals("Device not found: x", e.getMessage());
+    }
+
+    @Test
+    void testFullLaneRejects() throws Exception {
+        CountDownLatch release = block(0);
+        lanes.trySubmit(0, () -> null);
+        lanes.trySubmit(0, () -> null);
+
+        assertThrows(RejectedExecutionException.class, () -> lanes.trySubmit(0, () -> null));
+        assertEquals(1L, lanes.getStats().get("rejected"));
+        release.countDown();
+    }
+
+    @Test
+    void testBatchIsRejectedWholeWhenAnyLaneIsFull() throws Exception {
+        CountDownLatch releaseFirst = block(0);
+        CountDownLatch releaseSecond = block(1);
+        lanes.trySubmit(1, () -> null);
+        lanes.trySubmit(1, () -> null);
+
+        List<LocationReportDTO> batch = List.of(report(deviceOnLane(0)), report(deviceOnLane(1)));
+        assertThrows(RejectedExecutionException.class, () -> lanes.reportBatch(batch));
+
+        // The place taken on the lane that had room was given back
+        lanes.trySubmit(0, () -> null);
+        lanes.trySubmit(0, () -> null);
+        assertThrows(RejectedExecutionException.class, () -> lanes.trySubmit(0, () -> null));
+
+        releaseFirst.countDown();
+        releaseSecond.countDown();
+        lanes.stop();
+        verify(locationTrackingService, never()).reportLocations(anyList());
+    }
+
+    @Test
+    void testFailedLaneIsReportedWithoutFailingTheOthers() {
+        UUID failing = deviceOnLane(2);
+        UUID storing = deviceOnLane(3);
+        when(locationTrackingService.reportLocations(anyList())).thenAnswer(i -> {
+            List<LocationReportDTO> part = i.getArgument(0);
+            if (part.get(0).deviceId().equals(failing)) {
+                throw new RuntimeException("Device not found: " + failing);
+            }
+            return List.of(new LocationHistory());
+        });
+
+        LocationIngestLanes.BatchResult result = lanes.reportBatch(List.of(report(failing), report(storing)));
+
+        assertEquals(1, result.saved().size());
+        assertEquals(1, result.failed());
+        LocationIngestLanes.LaneResult failed = result.lanes().stream()
+                .filter(LocationIngestLanes.LaneResult::failed).findFirst().orElseThrow();
+        assertEquals(2, failed.lane());
+        assertEquals("Device not found: " + failing, failed.failure().getMessage());
+        assertThrows(RuntimeException.class, () -> lanes.reportLocations(List.of(report(failing), report(storing))));
+    }
+}
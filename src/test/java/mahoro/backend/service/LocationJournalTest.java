@@ -0,0 +1,164 @@
+package mahoro.backend.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.*;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import mahoro.backend.dto.LocationReportDTO;
+
+class LocationJournalTest {
+
+    @TempDir
+    Path dir;
+
+    private LocationJournal open(int segmentBytes) {
+        LocationJournal journal = new LocationJournal();
+        ReflectionTestUtils.setField(journal, "enabled", true);
+        ReflectionTestUtils.setField(journal, "directory", dir.toString());
+        ReflectionTestUtils.setField(journal, "segmentBytes", segmentBytes);
+        ReflectionTestUtils.setField(journal, "fsyncIntervalMs", 1000L);
+        journal.start();
+        return journal;
+    }
+
+    private LocationReportDTO report(long sequence) {
+        return new LocationReportDTO(UUID.randomUUID(), sequence % 2 == 0 ? "35693803564380" + sequence : null,
+                -1.95, 30.06, sequence % 3 == 0 ? "Kigali" : null, LocalDateTime.of(2026, 1, 1, 8, 0, 0, 123_000), sequence,
+                sequence % 4 == 0 ? null : (int) (sequence % 101));
+    }
+
+    private List<LocationReportDTO> replayAll(LocationJournal journal) {
+        List<LocationReportDTO> replayed = new ArrayList<>();
+        journal.replay(2, replayed::addAll);
+        return replayed;
+    }
+
+    @Test
+    void testUncommittedEntriesAreReplayedAfterRestart() {
+        LocationJournal journal = open(4096);
+        List<LocationReportDTO> written = List.of(report(1), report(2), report(3));
+        written.forEach(journal::append);
+        journal.stop();
+
+        LocationJournal restarted = open(4096);
+        assertEquals(written, replayAll(restarted));
+        restarted.stop();
+
+        // Once replayed they are not handed out again
+        LocationJournal again = open(4096);
+        assertTrue(replayAll(again).isEmpty());
+        again.stop();
+    }
+
+    @Test
+    void testBatteryByteIsReadUnsigned() {
+        LocationJournal journal = open(4096);
+        LocationReportDTO report = new LocationReportDTO(UUID.randomUUID(), null, -1.95, 30.06, null,
+                LocalDateTime.of(2026, 1, 1, 8, 0), 1L, 200);
+        journal.append(report);
+        journal.stop();
+
+        LocationJournal restarted = open(4096);
+        assertEquals(List.of(report), replayAll(restarted));
+        restarted.stop();
+    }
+
+    @Test
+    void testImmediateSyncHappensOnlyWhenAsked() {
+        LocationJournal journal = open(4096);
+        ReflectionTestUtils.setField(journal, "fsyncIntervalMs", 0L);
+        journal.append(report(1));
+        journal.append(report(2));
+        long before = (Long) journal.getStats().get("syncs");
+
+        journal.syncAppended();
+
+        assertEquals(before + 1, journal.getStats().get("syncs"));
+        journal.stop();
+    }
+
+    @Test
+    void testServerStampedTimeIsReplayedAsReceivedAt() {
+        LocationJournal journal = open(4096);
+        LocationReportDTO report = new LocationReportDTO(UUID.randomUUID(), null, -1.95, 30.06, null, null, null, null,
+                LocalDateTime.of(2026, 1, 1, 8, 0, 0, 5_000_000));
+        journal.append(report);
+        journal.stop();
+
+        LocationJournal restarted = open(4096);
+        assertEquals(List.of(report), replayAll(restarted));
+        restarted.stop();
+    }
+
+    @Test
+    void testCommittedEntriesAreNotReplayed() {
+        LocationJournal journal = open(4096);
+        journal.append(report(1));
+        long position = journal.append(report(2));
+        journal.append(report(3));
+        journal.commit(position);
+        journal.stop();
+
+        LocationJournal restarted = open(4096);
+        List<LocationReportDTO> replayed = replayAll(restarted);
+        restarted.stop();
+
+        assertEquals(1, replayed.size());
+        assertEquals(3L, replayed.get(0).sequence());
+    }
+
+    @Test
+    void testFlushedSegmentsAreDeleted() throws Exception {
+        LocationJournal journal = open(256);
+        long last = 0;
+        for (int i = 1; i <= 20; i++) {
+            last = journal.append(report(i));
+        }
+        assertTrue(countSegments() > 2);
+
+        journal.commit(last);
+        journal.sync();
+        assertEquals(1, countSegments());
+        journal.stop();
+    }
+
+    @Test
+    void testTornTailEndsReplay() throws Exception {
+        LocationJournal journal = open(4096);
+        journal.append(report(1));
+        journal.append(report(2));
+        journal.stop();
+
+        Path segment;
+        try (var files = Files.list(dir)) {
+            segment = files.filter(p -> p.toString().endsWith(".seg")).findFirst().orElseThrow();
+        }
+        byte[] bytes = Files.readAllBytes(segment);
+        // Corrupt the last byte of the second entry's payload
+        int firstLength = java.nio.ByteBuffer.wrap(bytes).getInt(0);
+        int secondStart = 8 + firstLength;
+        int secondLength = java.nio.ByteBuffer.wrap(bytes).getInt(secondStart);
+        bytes[secondStart + 8 + secondLength - 1] ^= 0x55;
+        Files.write(segment, bytes);
+
+        LocationJournal restarted = open(4096);
+        List<LocationReportDTO> replayed = replayAll(restarted);
+        restarted.stop();
+
+        assertEquals(1, replayed.size());
+        assertEquals(1L, replayed.get(0).sequence());
+    }
+
+    private long countSegments() throws Exception {
+        try (var files = Files.list(dir)) {
+            return files.filter(p -> p.toString().endsWith(".seg")).count();
+        }
+    }
+}
@@ -14,6 +14,9 @@ import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.springframework.data.domain.*;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
 import mahoro.backend.model.Location;
 import mahoro.backend.model.LocationType;
 import mahoro.backend.repository.LocationRepository;
@@ -23,6 +26,9 @@ class LocationServiceTest {
     @Mock
     private LocationRepository locationRepository;
 
+    @Mock
+    private GeofenceIndex geofenceIndex;
+
     @InjectMocks
     private LocationService locationService;
 
@@ -120,6 +126,70 @@ class LocationServiceTest {
         Location updated = locationService.updateLocation(id, details);
         assertEquals("NewName", updated.getName());
         assertEquals(LocationType.VILLAGE, updated.getType());
+        verify(geofenceIndex).locationUpdated(updated);
+    }
+
+    @Test
+    void testImportBoundariesMatchesByName() throws Exception {
+        Location village = new Location();
+        village.setLocationId(UUID.randomUUID());
+        village.setName("Kibagabaga");
+        when(locationRepository.findAllByName("Kibagabaga")).thenReturn(List.of(village));
+        when(locationRepository.findAllByName("Nowhere")).thenReturn(List.of());
+
+        JsonNode features = new ObjectMapper().readTree("""
+                {"type":"FeatureCollection","features":[
+                  {"type":"Feature","properties":{"name":"Kibagabaga"},
+                   "geometry":{"type":"Polygon","coordinates":[[[30.1,-1.94],[30.12,-1.94],[30.12,-1.92],[30.1,-1.94]]]}},
+                  {"type":"Feature","properties":{"name":"Nowhere"},
+                   "geometry":{"type":"Polygon","coordinates":[[[0,0],[1,0],[1,1],[0,0]]]}}]}
+                """);
+
+        Map<String, Object> result = locationService.importBoundaries(features);
+
+        assertEquals(1, result.get("imported"));
+        assertEquals(List.of("Nowhere"), result.get("unmatched"));
+        assertTrue(village.getBoundary().contains("Polygon"));
+        verify(geofenceIndex).locationsUpdated(List.of(village));
+    }
+
+    @Test
+    void testImportBoundariesNarrowsSharedNamesAndSkipsBadIds() throws Exception {
+        Location gasabo = new Location();
+        gasabo.setLocationId(UUID.randomUUID());
+        gasabo.setName("Gasabo");
+        Location kigaliCell = new Location();
+        kigaliCell.setLocationId(UUID.randomUUID());
+        kigaliCell.setName("Kigali");
+        kigaliCell.setType(LocationType.CELL);
+        kigaliCell.setParent(gasabo);
+        Location kigaliSector = new Location();
+        kigaliSector.setLocationId(UUID.randomUUID());
+        kigaliSector.setName("Kigali");
+        kigaliSector.setType(LocationType.SECTOR);
+        when(locationRepository.findAllByName("Kigali")).thenReturn(List.of(kigaliCell, kigaliSector));
+
+        String polygon = "{\"type\":\"Polygon\",\"coordinates\":[[[30.1,-1.94],[30.12,-1.94],[30.12,-1.92],[30.1,-1.94]]]}";
+        JsonNode features = new ObjectMapper().readTree("""
+                {"type":"FeatureCollection","features":[
+                  {"type":"Feature","properties":{"name":"Kigali"},"geometry":%1$s},
+                  {"type":"Feature","properties":{"name":"Kigali","type":"cell","parent":"Gasabo"},"geometry":%1$s},
+                  {"type":"Feature","properties":{"locationId":"not-a-uuid"},"geometry":%1$s}]}
+                """.formatted(polygon));
+
+        Map<String, Object> result = locationService.importBoundaries(features);
+
+        assertEquals(1, result.get("imported"));
+        assertEquals(List.of("Kigali", "not-a-uuid"), result.get("unmatched"));
+        assertEquals(List.of("Kigali"), result.get("ambiguous"));
+        assertNotNull(kigaliCell.getBoundary());
+        assertNull(kigaliSector.getBoundary());
+    }
+
+    @Test
+    void testImportBoundariesRejectsNonCollection() throws Exception {
+        JsonNode point = new ObjectMapper().readTree("{\"type\":\"Point\"}");
+        assertThrows(IllegalArgumentException.class, () -> locationService.importBoundaries(point));
     }
 
     @Test
@@ -133,5 +203,6 @@ class LocationServiceTest {
 
         assertDoesNotThrow(() -> locationService.deleteLocation(id));
         verify(locationRepository, times(1)).delete(location);
+        verify(geofenceIndex).locationRemoved(id);
     }
 }
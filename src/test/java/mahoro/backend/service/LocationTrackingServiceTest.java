@@ -0,0 +1,393 @@
+package mahoro.backend.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.time.LocalDateTime;
+import java.util.*;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.*;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import mahoro.backend.dto.LocationReportDTO;
+import mahoro.backend.geo.Boundary;
+import mahoro.backend.model.AlertType;
+import mahoro.backend.model.Device;
+import mahoro.backend.model.DeviceType;
+import mahoro.backend.model.LocationHistory;
+import mahoro.backend.model.LocationType;
+import mahoro.backend.repository.DeviceRepository;
+import mahoro.backend.repository.LocationHistoryRepository;
+
+class LocationTrackingServiceTest {
+
+    @Mock
+    private DeviceRepository deviceRepository;
+
+    @Mock
+    private LocationHistoryRepository locationHistoryRepository;
+
+    @Mock
+    private AlertService alertService;
+
+    @Mock
+    private LastSeenTracker lastSeenTracker;
+
+    @Mock
+    private DeviceImeiCache deviceImeiCache;
+
+    @Spy
+    private DuplicateReportFilter duplicateReportFilter = new DuplicateReportFilter();
+
+    @Mock
+    private PointThinningFilter pointThinningFilter;
+
+    @Mock
+    private GeofenceIndex geofenceIndex;
+
+    @Spy
+    private GeofenceStateTracker geofenceStateTracker = new GeofenceStateTracker();
+
+    @Spy
+    private MotionTracker motionTracker = new MotionTracker();
+
+    @Spy
+    private BatteryMonitor batteryMonitor = new BatteryMonitor();
+
+    @Mock
+    private LatestPositionCache latestPositionCache;
+
+    @InjectMocks
+    private LocationTrackingService locationTrackingService;
+
+    private Device device;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        device = new Device();
+        device.setDeviceId(UUID.randomUUID());
+        device.setImei("356938035643809");
+    }
+
+    @Test
+    void testReportLocationsSavesAllPointsInOneBatch() {
+        LocalDateTime first = LocalDateTime.now().minusMinutes(2);
+        LocalDateTime second = LocalDateTime.now().minusMinutes(1);
+        List<LocationReportDTO> reports = List.of(
+                new LocationReportDTO(device.getDeviceId(), null, -1.95, 30.06, null, first, null),
+                new LocationReportDTO(null, device.getImei(), -1.96, 30.07, null, second, null));
+
+        when(deviceImeiCache.resolveAll(anyCollection())).thenReturn(Map.of(device.getImei(), device.getDeviceId()));
+        when(deviceRepository.findAllById(anyCollection())).thenReturn(List.of(device));
+        when(locationHistoryRepository.saveAll(anyList())).thenAnswer(i -> i.getArgument(0));
+
+        List<LocationHistory> saved = locationTrackingService.reportLocations(reports);
+
+        assertEquals(2, saved.size());
+        verify(lastSeenTracker, times(1)).touch(device.getDeviceId(), second);
+        verify(latestPositionCache).update(saved);
+        verify(deviceRepository, never()).saveAll(anyList());
+        verify(locationHistoryRepository, times(1)).saveAll(anyList());
+        verify(locationHistoryRepository, never()).save(any(LocationHistory.class));
+        verify(deviceRepository, never()).findById(any());
+        verify(deviceRepository, times(1)).findAllById(anyCollection());
+    }
+
+    @Test
+    void testReportLocationsUnknownDeviceThrows() {
+        List<LocationReportDTO> reports = List.of(
+                new LocationReportDTO(UUID.randomUUID(), null, -1.95, 30.06, null, null, null));
+
+        when(deviceRepository.findAllById(anyCollection())).thenReturn(List.of());
+
+        RuntimeException ex = assertThrows(RuntimeException.class,
+                () -> locationTrackingService.reportLocations(reports));
+        assertTrue(ex.getMessage().contains("Device not found"));
+        verify(locationHistoryRepository, never()).saveAll(anyList());
+    }
+
+    @Test
+    void testReportByImeiUsesCachedDeviceId() {
+        when(deviceImeiCache.resolveAll(anyCollection())).thenReturn(Map.of(device.getImei(), device.getDeviceId()));
+        when(deviceRepository.findAllById(anyCollection())).thenReturn(List.of(device));
+        when(locationHistoryRepository.saveAll(anyList())).thenAnswer(i -> i.getArgument(0));
+
+        List<LocationHistory> saved = locationTrackingService.reportLocations(
+                List.of(new LocationReportDTO(null, device.getImei(), -1.95, 30.06, null, null, null)));
+
+        assertEquals(device, saved.get(0).getDevice());
+        verify(deviceRepository, never()).findByImei(anyString());
+    }
+
+    @Test
+    void testRetransmittedReportIsAcknowledgedWithoutStoring() {
+        LocationReportDTO report = new LocationReportDTO(device.getDeviceId(), null, -1.95, 30.06, null, null, 42L);
+        when(deviceRepository.findAllById(anyCollection())).thenReturn(List.of(device));
+        when(locationHistoryRepository.saveAll(anyList())).thenAnswer(i -> i.getArgument(0));
+
+        assertEquals(1, locationTrackingService.reportLocations(List.of(report)).size());
+        assertTrue(locationTrackingService.reportLocations(List.of(report)).isEmpty());
+
+        verify(deviceRepository, times(1)).findAllById(anyCollection());
+        verify(locationHistoryRepository, times(1)).saveAll(anyList());
+    }
+
+    @Test
+    void testFailedWriteDoesNotMarkReportAsSeen() {
+        LocationReportDTO report = new LocationReportDTO(device.getDeviceId(), null, -1.95, 30.06, null, null, 7L);
+        when(deviceRepository.findAllById(anyCollection())).thenReturn(List.of(device));
+        when(locationHistoryRepository.saveAll(anyList()))
+                .thenThrow(new RuntimeException("connection reset"))
+                .thenAnswer(i -> i.getArgument(0));
+
+        assertThrows(RuntimeException.class, () -> locationTrackingService.reportLocations(List.of(report)));
+        assertEquals(1, locationTrackingService.reportLocations(List.of(report)).size());
+    }
+
+    @Test
+    void testFailedCommitDoesNotMarkReportAsSeen() {
+        LocationReportDTO report = new LocationReportDTO(device.getDeviceId(), null, -1.95, 30.06, null, null, 8L);
+        when(deviceRepository.findAllById(anyCollection())).thenReturn(List.of(device));
+        when(locationHistoryRepository.saveAll(anyList())).thenAnswer(i -> i.getArgument(0));
+
+        completeInTransaction(TransactionSynchronization.STATUS_ROLLED_BACK,
+                () -> locationTrackingService.reportLocations(List.of(report)));
+        completeInTransaction(TransactionSynchronization.STATUS_COMMITTED,
+                () -> assertEquals(1, locationTrackingService.reportLocations(List.of(report)).size()));
+        assertTrue(locationTrackingService.reportLocations(List.of(report)).isEmpty());
+    }
+
+    @Test
+    void testRolledBackBatchMovesNeitherAnchorNorLastSeen() {
+        LocalDateTime fix = LocalDateTime.now().minusMinutes(1);
+        LocationReportDTO report = new LocationReportDTO(device.getDeviceId(), null, -1.95, 30.06, null, fix, null);
+        when(deviceRepository.findAllById(anyCollection())).thenReturn(List.of(device));
+        when(locationHistoryRepository.saveAll(anyList())).thenAnswer(i -> i.getArgument(0));
+
+        completeInTransaction(TransactionSynchronization.STATUS_ROLLED_BACK,
+                () -> locationTrackingService.reportLocations(List.of(report)));
+        verify(pointThinningFilter, never()).remember(any(), any());
+        verify(lastSeenTracker, never()).touch(any(), any());
+
+        completeInTransaction(TransactionSynchronization.STATUS_COMMITTED,
+                () -> locationTrackingService.reportLocations(List.of(report)));
+        verify(pointThinningFilter).remember(eq(device.getDeviceId()), any());
+        verify(lastSeenTracker).touch(device.getDeviceId(), fix);
+    }
+
+    @Test
+    void testRolledBackExitIsRaisedAgain() {
+        ReflectionTestUtils.setField(geofenceStateTracker, "dwellSeconds", 0L);
+        when(deviceRepository.findAllById(anyCollection())).thenReturn(List.of(device));
+        when(locationHistoryRepository.saveAll(anyList())).thenAnswer(i -> i.getArgument(0));
+        when(geofenceIndex.fenceFor(device.getDeviceId()))
+                .thenReturn(new GeofenceIndex.Fence(UUID.randomUUID(), -1.50, 29.60, 1.0));
+        LocalDateTime fix = LocalDateTime.now().minusMinutes(1);
+        LocationReportDTO report = new LocationReportDTO(device.getDeviceId(), null, -1.95, 30.06, null, fix, null);
+
+        completeInTransaction(TransactionSynchronization.STATUS_ROLLED_BACK,
+                () -> locationTrackingService.reportLocations(List.of(report)));
+        completeInTransaction(TransactionSynchronization.STATUS_COMMITTED,
+                () -> locationTrackingService.reportLocations(List.of(report)));
+
+        // The alert of the rolled-back attempt was never stored, so the retry raises it again
+        verify(alertService, times(2)).createAlert(any(), anyString(), eq(AlertType.GEOFENCE_VIOLATION), any(), any());
+    }
+
+    // Runs the work as if inside a transaction that then ends with the given status
+    private void completeInTransaction(int status, Runnable work) {
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            work.run();
+            for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+                if (status == TransactionSynchronization.STATUS_COMMITTED) {
+                    synchronization.afterCommit();
+                }
+                synchronization.afterCompletion(status);
+            }
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void testThinnedPointIsNotStoredButRefreshesLastSeen() {
+        LocalDateTime fix = LocalDateTime.now();
+        LocationReportDTO report = new LocationReportDTO(device.getDeviceId(), null, -1.95, 30.06, null, fix, null);
+        when(deviceRepository.findAllById(anyCollection())).thenReturn(List.of(device));
+        when(pointThinningFilter.isRedundant(any(), any(), anyDouble(), anyDouble(), any())).thenReturn(true);
+
+        assertTrue(locationTrackingService.reportLocations(List.of(report)).isEmpty());
+
+        verify(locationHistoryRepository, never()).saveAll(anyList());
+        verify(lastSeenTracker).touch(device.getDeviceId(), fix);
+    }
+
+    @Test
+    void testStoredPointBecomesThinningAnchor() {
+        LocalDateTime fix = LocalDateTime.now();
+        LocationReportDTO report = new LocationReportDTO(device.getDeviceId(), null, -1.95, 30.06, null, fix, null);
+        when(deviceRepository.findAllById(anyCollection())).thenReturn(List.of(device));
+        when(locationHistoryRepository.saveAll(anyList())).thenAnswer(i -> i.getArgument(0));
+
+        locationTrackingService.reportLocations(List.of(report));
+
+        verify(pointThinningFilter).remember(device.getDeviceId(), new PointThinningFilter.Anchor(-1.95, 30.06, fix));
+    }
+
+    @Test
+    void testGeofenceViolationUsesIndexedFence() {
+        ReflectionTestUtils.setField(geofenceStateTracker, "dwellSeconds", 0L);
+        when(deviceRepository.findAllById(anyCollection())).thenReturn(List.of(device));
+        when(locationHistoryRepository.saveAll(anyList())).thenAnswer(i -> i.getArgument(0));
+        when(geofenceIndex.fenceFor(device.getDeviceId()))
+                .thenReturn(new GeofenceIndex.Fence(UUID.randomUUID(), -1.50, 29.60, 1.0));
+
+        locationTrackingService.reportLocations(List.of(
+                new LocationReportDTO(device.getDeviceId(), null, -1.95, 30.06, null, null, null)));
+
+        verify(alertService).createAlert(eq(device.getDeviceId()), anyString(),
+                eq(mahoro.backend.model.AlertType.GEOFENCE_VIOLATION), eq(-1.95), eq(30.06));
+    }
+
+    @Test
+    void testGeofenceAlertsOnlyOnTransitions() {
+        ReflectionTestUtils.setField(geofenceStateTracker, "dwellSeconds", 0L);
+        when(deviceRepository.findAllById(anyCollection())).thenReturn(List.of(device));
+        when(locationHistoryRepository.saveAll(anyList())).thenAnswer(i -> i.getArgument(0));
+        when(geofenceIndex.fenceFor(device.getDeviceId()))
+                .thenReturn(new GeofenceIndex.Fence(UUID.randomUUID(), -1.50, 29.60, 1.0));
+        LocalDateTime start = LocalDateTime.now().minusMinutes(10);
+
+        for (int i = 0; i < 5; i++) {
+            locationTrackingService.reportLocations(List.of(new LocationReportDTO(
+                    device.getDeviceId(), null, -1.95, 30.06, null, start.plusMinutes(i), null)));
+        }
+        locationTrackingService.reportLocations(List.of(new LocationReportDTO(
+                device.getDeviceId(), null, -1.50, 29.60, null, start.plusMinutes(6), null)));
+
+        verify(alertService, times(1)).createAlert(any(), anyString(),
+                eq(mahoro.backend.model.AlertType.GEOFENCE_VIOLATION), any(), any());
+        verify(alertService, times(1)).createAlert(any(), anyString(),
+                eq(mahoro.backend.model.AlertType.GEOFENCE_REENTRY), any(), any());
+    }
+
+    @Test
+    void testGradedAlertsAcrossAncestorAreas() {
+        ReflectionTestUtils.setField(geofenceStateTracker, "dwellSeconds", 0L);
+        when(deviceRepository.findAllById(anyCollection())).thenReturn(List.of(device));
+        when(locationHistoryRepository.saveAll(anyList())).thenAnswer(i -> i.getArgument(0));
+        GeofenceIndex.Fence village = new GeofenceIndex.Fence(UUID.randomUUID(), -1.95, 30.06, 1.0);
+        GeofenceIndex.Fence cell = new GeofenceIndex.Fence(UUID.randomUUID(), -1.95, 30.05, 1.0,
+                Boundary.parse("{\"type\":\"Polygon\",\"coordinates\":"
+                        + "[[[30.0,-2.0],[30.1,-2.0],[30.1,-1.9],[30.0,-1.9],[30.0,-2.0]]]}"));
+        when(geofenceIndex.fenceFor(device.getDeviceId())).thenReturn(village);
+        when(geofenceIndex.ancestorFences(village.locationId()))
+                .thenReturn(List.of(new GeofenceIndex.FenceLevel(LocationType.CELL, "Rukiri", cell)));
+        LocalDateTime start = LocalDateTime.now().minusMinutes(60);
+
+        // Out of the village but still in the cell, then out of the cell, then home in one upload
+        locationTrackingService.reportLocations(List.of(
+                new LocationReportDTO(device.getDeviceId(), null, -1.95, 30.08, null, start, null),
+                new LocationReportDTO(device.getDeviceId(), null, -1.95, 30.30, null, start.plusMinutes(20), null),
+                new LocationReportDTO(device.getDeviceId(), null, -1.95, 30.06, null, start.plusMinutes(40), null)));
+
+        InOrder inOrder = inOrder(alertService);
+        inOrder.verify(alertService).createAlert(any(), startsWith("Device left its assigned area"),
+                eq(AlertType.GEOFENCE_VIOLATION), any(), any());
+        inOrder.verify(alertService).createAlert(any(), startsWith("Device left the cell Rukiri"),
+                eq(AlertType.GEOFENCE_VIOLATION), any(), any());
+        inOrder.verify(alertService).createAlert(any(), eq("Device returned to its assigned area"),
+                eq(AlertType.GEOFENCE_REENTRY), any(), any());
+        verifyNoMoreInteractions(alertService);
+    }
+
+    @Test
+    void testCircleReachingPastAncestorStillChecksAncestor() {
+        ReflectionTestUtils.setField(geofenceStateTracker, "dwellSeconds", 0L);
+        when(deviceRepository.findAllById(anyCollection())).thenReturn(List.of(device));
+        when(locationHistoryRepository.saveAll(anyList())).thenAnswer(i -> i.getArgument(0));
+        // The village's 1 km circle pokes out of the cell's east edge
+        GeofenceIndex.Fence village = new GeofenceIndex.Fence(UUID.randomUUID(), -1.95, 30.095, 1.0);
+        GeofenceIndex.Fence cell = new GeofenceIndex.Fence(UUID.randomUUID(), -1.95, 30.05, 1.0,
+                Boundary.parse("{\"type\":\"Polygon\",\"coordinates\":"
+                        + "[[[30.0,-2.0],[30.1,-2.0],[30.1,-1.9],[30.0,-1.9],[30.0,-2.0]]]}"));
+        when(geofenceIndex.fenceFor(device.getDeviceId())).thenReturn(village);
+        when(geofenceIndex.ancestorFences(village.locationId()))
+                .thenReturn(List.of(new GeofenceIndex.FenceLevel(LocationType.CELL, "Rukiri", cell)));
+
+        locationTrackingService.reportLocations(List.of(
+                new LocationReportDTO(device.getDeviceId(), null, -1.95, 30.103, null, null, null)));
+
+        verify(alertService).createAlert(any(), startsWith("Device left the cell Rukiri"),
+                eq(AlertType.GEOFENCE_VIOLATION), any(), any());
+        verifyNoMoreInteractions(alertService);
+    }
+
+    @Test
+    void testSpeedStoredOnRowsAndMovementAlertForStationaryType() {
+        motionTracker.start();
+        device.setDeviceType(DeviceType.SERVER);
+        when(deviceRepository.findAllById(anyCollection())).thenReturn(List.of(device));
+        when(locationHistoryRepository.saveAll(anyList())).thenAnswer(i -> i.getArgument(0));
+        LocalDateTime start = LocalDateTime.now().minusMinutes(10);
+
+        // Sent out of order; motion is derived in time order
+        List<LocationHistory> saved = locationTrackingService.reportLocations(List.of(
+                new LocationReportDTO(device.getDeviceId(), null, -1.941, 30.06, null, start.plusMinutes(1), null),
+                new LocationReportDTO(device.getDeviceId(), null, -1.95, 30.06, null, start, null)));
+
+        LocationHistory moved = saved.stream().filter(l -> l.getLatitude() == -1.941).findFirst().orElseThrow();
+        assertEquals(60, moved.getSpeedKmh(), 1);
+        assertEquals(0, moved.getHeadingDegrees(), 0.5);
+        verify(alertService).createAlert(eq(device.getDeviceId()), anyString(),
+                eq(AlertType.MOVEMENT_DETECTED), eq(-1.941), eq(30.06));
+    }
+
+    @Test
+    void testLowBatteryAlertOncePerDischarge() {
+        when(deviceRepository.findAllById(anyCollection())).thenReturn(List.of(device));
+        when(locationHistoryRepository.saveAll(anyList())).thenAnswer(i -> i.getArgument(0));
+        LocalDateTime start = LocalDateTime.now().minusMinutes(10);
+        int[] levels = {30, 15, 16, 14, 12, 20, 26, 10};
+
+        List<LocationReportDTO> reports = new ArrayList<>();
+        for (int i = 0; i < levels.length; i++) {
+            reports.add(new LocationReportDTO(device.getDeviceId(), null, -1.95, 30.06, null,
+                    start.plusMinutes(i), null, levels[i]));
+        }
+        locationTrackingService.reportLocations(reports);
+
+        // Low at 15%, cleared at 26%, low again at 10%
+        verify(alertService, times(2)).createAlert(eq(device.getDeviceId()), anyString(),
+                eq(AlertType.LOW_BATTERY), isNull(), isNull());
+        assertEquals(10, batteryMonitor.latest(device.getDeviceId()).percent());
+    }
+
+    @Test
+    void testLargeBatchUsesBulkInsert() {
+        List<LocationReportDTO> reports = new ArrayList<>();
+        for (int i = 0; i < 150; i++) {
+            reports.add(new LocationReportDTO(device.getDeviceId(), null, -1.95, 30.06, null, null, null));
+        }
+        when(deviceRepository.findAllById(anyCollection())).thenReturn(List.of(device));
+        when(locationHistoryRepository.insertAll(anyList())).thenAnswer(i -> i.getArgument(0));
+
+        assertEquals(150, locationTrackingService.reportLocations(reports).size());
+
+        verify(locationHistoryRepository).insertAll(anyList());
+        verify(locationHistoryRepository, never()).saveAll(anyList());
+    }
+
+    @Test
+    void testReportLocationsEmptyBatchThrows() {
+        assertThrows(IllegalArgumentException.class,
+                () -> locationTrackingService.reportLocations(List.of()));
+    }
+}
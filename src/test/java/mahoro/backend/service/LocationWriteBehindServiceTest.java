@@ -0,0 +1,209 @@
+package mahoro.backend.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.*;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import mahoro.backend.dto.LocationReportDTO;
+
+class LocationWriteBehindServiceTest {
+
+    @Mock
+    private LocationTrackingService locationTrackingService;
+
+    @Mock
+    private LocationJournal locationJournal;
+
+    @Mock
+    private DeviceImeiCache deviceImeiCache;
+
+    private LocationIngestLanes lanes;
+
+    private LocationWriteBehindService writeBehindService;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        lanes = new LocationIngestLanes(locationTrackingService, deviceImeiCache);
+        ReflectionTestUtils.setField(lanes, "laneCount", 2);
+        ReflectionTestUtils.setField(lanes, "queueCapacity", 10);
+        lanes.start();
+        writeBehindService = new LocationWriteBehindService(locationTrackingService, locationJournal, lanes);
+        ReflectionTestUtils.setField(writeBehindService, "enabled", true);
+        ReflectionTestUtils.setField(writeBehindService, "queueCapacity", 2);
+        ReflectionTestUtils.setField(writeBehindService, "batchSize", 100);
+        ReflectionTestUtils.setField(writeBehindService, "maxDelayMs", 50L);
+        ReflectionTestUtils.setField(writeBehindService, "durability", LocationWriteBehindService.Durability.COMMITTED);
+        ReflectionTestUtils.setField(writeBehindService, "shutdownTimeoutMs", 5000L);
+    }
+
+    @AfterEach
+    void tearDown() {
+        lanes.stop();
+    }
+
+    private LocationReportDTO report() {
+        return new LocationReportDTO(UUID.randomUUID(), null, -1.95, 30.06, null, null, null);
+    }
+
+    @Test
+    void testQueuedReportsAreFlushedInOneGroupCommit() {
+        writeBehindService.start();
+
+        var first = writeBehindService.submit(report());
+        var second = writeBehindService.submit(report());
+        first.join();
+        second.join();
+        writeBehindService.stop();
+
+        verify(locationTrackingService, atLeastOnce()).reportLocations(anyList());
+        assertEquals(2L, writeBehindService.getStats().get("written"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testUntimestampedPointsAreNotTakenForDuplicates() {
+        ReflectionTestUtils.setField(writeBehindService, "queueCapacity", 10);
+        writeBehindService.start();
+        UUID deviceId = UUID.randomUUID();
+        List<LocationReportDTO> batch = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            batch.add(new LocationReportDTO(deviceId, null, -1.95 + i / 1000.0, 30.06, null, null, null));
+        }
+
+        writeBehindService.submitAll(batch).forEach(done -> done.join());
+        writeBehindService.stop();
+
+        ArgumentCaptor<List<LocationReportDTO>> flushed = ArgumentCaptor.forClass(List.class);
+        verify(locationTrackingService, atLeastOnce()).reportLocations(flushed.capture());
+        List<LocationReportDTO> reports = flushed.getAllValues().stream().flatMap(List::stream).toList();
+        assertEquals(5, reports.size());
+        // Stamped on acceptance, within the same millisecond or not, and all five get past the filter
+        DuplicateReportFilter filter = new DuplicateReportFilter();
+        for (LocationReportDTO report : reports) {
+            assertNull(report.timestamp());
+            assertNotNull(report.receivedAt());
+            assertTrue(filter.markNew(deviceId, report));
+        }
+    }
+
+    @Test
+    void testGroupCommitsRunOnTheDevicesLanes() {
+        UUID first = UUID.randomUUID();
+        UUID second;
+        do {
+            second = UUID.randomUUID();
+        } while (lanes.laneFor(second) == lanes.laneFor(first));
+        Set<String> threads = Collections.synchronizedSet(new HashSet<>());
+        doAnswer(i -> {
+            threads.add(Thread.currentThread().getName());
+            return List.of();
+        }).when(locationTrackingService).reportLocations(anyList());
+        ReflectionTestUtils.setField(writeBehindService, "queueCapacity", 10);
+
+        writeBehindService.start();
+        writeBehindService.submitAll(List.of(
+                new LocationReportDTO(first, null, -1.95, 30.06, null, null, 1L),
+                new LocationReportDTO(second, null, -1.95, 30.06, null, null, 1L),
+                new LocationReportDTO(first, null, -1.95, 30.06, null, null, 2L))).forEach(done -> done.join());
+        writeBehindService.stop();
+
+        assertEquals(Set.of("ingest-lane-" + lanes.laneFor(first), "ingest-lane-" + lanes.laneFor(second)), threads);
+        assertEquals(3L, writeBehindService.getStats().get("written"));
+    }
+
+    @Test
+    void testFailedGroupCommitFallsBackToSingleWrites() {
+        doThrow(new RuntimeException("Device not found"))
+                .when(locationTrackingService).reportLocations(argThat(list -> list != null && list.size() > 1));
+        doReturn(List.of())
+                .doThrow(new RuntimeException("Device not found"))
+                .when(locationTrackingService).reportLocations(argThat(list -> list != null && list.size() == 1));
+
+        writeBehindService.start();
+        var first = writeBehindService.submit(report());
+        var second = writeBehindService.submit(report());
+        writeBehindService.stop();
+
+        assertEquals(1L, writeBehindService.getStats().get("written"));
+        assertEquals(1L, writeBehindService.getStats().get("failed"));
+        assertTrue(first.isDone() && second.isDone());
+    }
+
+    @Test
+    void testJournaledReportsCommitTheirPositionAfterFlush() {
+        when(locationJournal.isEnabled()).thenReturn(true);
+        when(locationJournal.append(any())).thenReturn(7L, 9L);
+
+        writeBehindService.start();
+        var first = writeBehindService.submit(report());
+        var second = writeBehindService.submit(report());
+        first.join();
+        second.join();
+        writeBehindService.stop();
+
+        verify(locationJournal, times(2)).append(any());
+        verify(locationJournal).commit(9L);
+    }
+
+    @Test
+    void testJournalIsSyncedOutsideTheEnqueueLock() {
+        when(locationJournal.isEnabled()).thenReturn(true);
+        ReentrantLock enqueueLock = (ReentrantLock) ReflectionTestUtils.getField(writeBehindService, "enqueueLock");
+        doAnswer(i -> {
+            assertFalse(enqueueLock.isHeldByCurrentThread());
+            return null;
+        }).when(locationJournal).syncAppended();
+
+        writeBehindService.start();
+        writeBehindService.submitAll(List.of(report(), report())).forEach(done -> done.join());
+        writeBehindService.stop();
+
+        InOrder inOrder = inOrder(locationJournal);
+        inOrder.verify(locationJournal, times(2)).append(any());
+        inOrder.verify(locationJournal).syncAppended();
+    }
+
+    @Test
+    void testJournalIsReplayedOnStartEvenWithoutWriteBehind() {
+        ReflectionTestUtils.setField(writeBehindService, "enabled", false);
+
+        writeBehindService.start();
+
+        verify(locationJournal).replay(eq(LocationTrackingService.MAX_BATCH_SIZE), any());
+    }
+
+    @Test
+    void testBatchThatDoesNotFitIsRejectedWhole() {
+        // No writer thread, so the queue only fills
+        ReflectionTestUtils.setField(writeBehindService, "queue", new ArrayBlockingQueue<>(2));
+        ReflectionTestUtils.setField(writeBehindService, "running", true);
+        when(locationJournal.isEnabled()).thenReturn(true);
+
+        assertThrows(RejectedExecutionException.class,
+                () -> writeBehindService.submitAll(List.of(report(), report(), report())));
+        verify(locationJournal, never()).append(any());
+
+        assertEquals(2, writeBehindService.submitAll(List.of(report(), report())).size());
+        assertThrows(RejectedExecutionException.class, () -> writeBehindService.submit(report()));
+        assertEquals(4L, writeBehindService.getStats().get("rejected"));
+        assertEquals(2L, writeBehindService.getStats().get("accepted"));
+    }
+
+    @Test
+    void testDisabledServiceRejectsSubmissions() {
+        ReflectionTestUtils.setField(writeBehindService, "enabled", false);
+        assertThrows(IllegalStateException.class, () -> writeBehindService.submit(report()));
+    }
+}
@@ -0,0 +1,134 @@
+package mahoro.backend.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import mahoro.backend.model.DeviceType;
+import mahoro.backend.service.MotionTracker.Event;
+import mahoro.backend.service.MotionTracker.Motion;
+
+class MotionTrackerTest {
+
+    // About 111 m per 0.001 degrees of latitude
+    private static final double LAT_PER_100M = 0.0009;
+
+    private MotionTracker tracker;
+    private final UUID deviceId = UUID.randomUUID();
+    private final LocalDateTime start = LocalDateTime.of(2026, 3, 1, 8, 0);
+
+    @BeforeEach
+    void setUp() {
+        tracker = new MotionTracker();
+        tracker.start();
+    }
+
+    private Motion at(int seconds, double latitude) {
+        return tracker.update(deviceId, latitude, 30.06, start.plusSeconds(seconds));
+    }
+
+    @Test
+    void testFirstFixHasNoSpeed() {
+        Motion motion = at(0, -1.95);
+        assertNull(motion.speedKmh());
+        assertTrue(motion.events().isEmpty());
+    }
+
+    @Test
+    void testSpeedHeadingAndMovementEvent() {
+        at(0, -1.95);
+        // 1 km north in a minute
+        Motion motion = at(60, -1.95 + 10 * LAT_PER_100M);
+
+        assertEquals(60, motion.speedKmh(), 1);
+        assertEquals(0, motion.headingDegrees(), 0.5);
+        assertEquals(List.of(Event.MOVEMENT), motion.events());
+
+        Motion south = at(120, -1.95);
+        assertEquals(180, south.headingDegrees(), 0.5);
+        assertTrue(south.events().isEmpty());
+    }
+
+    @Test
+    void testJitterWhileParkedIsNotMovement() {
+        at(0, -1.95);
+        // 20 m hops a few seconds apart are fast but stay within the jitter radius
+        for (int i = 1; i <= 10; i++) {
+            Motion motion = at(i * 5, -1.95 + (i % 2) * LAT_PER_100M / 5);
+            assertTrue(motion.events().isEmpty());
+            assertNull(motion.headingDegrees());
+        }
+    }
+
+    @Test
+    void testOverSpeedOncePerEpisode() {
+        at(0, -1.95);
+        // 1 km every 20 s is 180 km/h
+        assertEquals(List.of(Event.MOVEMENT, Event.OVER_SPEED), at(20, -1.95 + 10 * LAT_PER_100M).events());
+        assertTrue(at(40, -1.95 + 20 * LAT_PER_100M).events().isEmpty());
+        // Back under 90% of the limit, then over again
+        at(100, -1.95 + 30 * LAT_PER_100M);
+        assertEquals(List.of(Event.OVER_SPEED), at(120, -1.95 + 40 * LAT_PER_100M).events());
+    }
+
+    @Test
+    void testStoppedAfterStillForStoppedTime() {
+        at(0, -1.95);
+        at(60, -1.95 + 10 * LAT_PER_100M);
+
+        double parked = -1.95 + 10 * LAT_PER_100M;
+        assertTrue(at(120, parked).events().isEmpty());
+        assertTrue(at(300, parked).events().isEmpty());
+        assertEquals(List.of(Event.STOPPED), at(420, parked).events());
+        assertTrue(at(600, parked).events().isEmpty());
+    }
+
+    @Test
+    void testLateFixLeavesStateAlone() {
+        at(60, -1.95);
+        Motion late = at(0, -1.90);
+        assertNull(late.speedKmh());
+
+        assertEquals(0, at(120, -1.95).speedKmh(), 1e-9);
+    }
+
+    @Test
+    void testPendingStateChangesOnlyOnApply() {
+        MotionTracker.Pending pending = tracker.begin(deviceId);
+        assertNull(pending.update(-1.95, 30.06, start).speedKmh());
+        assertEquals(List.of(Event.MOVEMENT), pending.update(-1.95 + 10 * LAT_PER_100M, 30.06, start.plusSeconds(60)).events());
+        assertEquals(0, tracker.getStats().get("trackedDevices"));
+
+        // Not applied, as after a rollback: the movement is raised again
+        MotionTracker.Pending retry = tracker.begin(deviceId);
+        retry.update(-1.95, 30.06, start);
+        assertEquals(List.of(Event.MOVEMENT), retry.update(-1.95 + 10 * LAT_PER_100M, 30.06, start.plusSeconds(60)).events());
+        retry.apply();
+        assertEquals(60, at(120, -1.95 + 20 * LAT_PER_100M).speedKmh(), 1);
+    }
+
+    @Test
+    void testLegShorterThanMinimumIsNotMeasured() {
+        at(0, -1.95);
+        // 20 m in 200 ms would read as 360 km/h
+        Motion jump = tracker.update(deviceId, -1.95 + 0.2 * LAT_PER_100M, 30.06, start.plusNanos(200_000_000));
+        assertNull(jump.speedKmh());
+        assertTrue(jump.events().isEmpty());
+
+        // The leg is measured from the last accepted fix
+        assertEquals(60, at(60, -1.95 + 10 * LAT_PER_100M).speedKmh(), 1);
+        assertEquals(1L, tracker.getStats().get("shortLegs"));
+    }
+
+    @Test
+    void testStationaryTypes() {
+        assertTrue(tracker.isStationaryType(DeviceType.SERVER));
+        assertFalse(tracker.isStationaryType(DeviceType.MOBILE));
+        assertFalse(tracker.isStationaryType(null));
+    }
+}
@@ -0,0 +1,84 @@
+package mahoro.backend.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.UUID;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import mahoro.backend.model.DeviceType;
+
+class PointThinningFilterTest {
+
+    private final PointThinningFilter filter = new PointThinningFilter();
+    private final LocalDateTime stored = LocalDateTime.of(2024, 5, 1, 10, 0);
+    private final PointThinningFilter.Anchor anchor = new PointThinningFilter.Anchor(-1.9441, 30.0619, stored);
+
+    @BeforeEach
+    void setUp() {
+        filter.start();
+    }
+
+    @Test
+    void testNearbyFixWithinIntervalIsRedundant() {
+        // About 11 m north of the anchor
+        assertTrue(filter.isRedundant(DeviceType.PC, anchor, -1.9440, 30.0619, stored.plusMinutes(5)));
+    }
+
+    @Test
+    void testFixOutsideRadiusIsKept() {
+        // About 110 m north of the anchor
+        assertFalse(filter.isRedundant(DeviceType.PC, anchor, -1.9431, 30.0619, stored.plusMinutes(5)));
+    }
+
+    @Test
+    void testFixAfterIntervalIsKeptAsHeartbeat() {
+        assertFalse(filter.isRedundant(DeviceType.LAPTOP, anchor, -1.9441, 30.0619, stored.plusMinutes(15)));
+        assertTrue(filter.isRedundant(DeviceType.LAPTOP, anchor, -1.9441, 30.0619, stored.plusMinutes(14)));
+    }
+
+    @Test
+    void testTypesWithoutPolicyAreNotThinned() {
+        assertFalse(filter.isRedundant(DeviceType.MOBILE, anchor, -1.9441, 30.0619, stored.plusSeconds(1)));
+    }
+
+    @Test
+    void testLateFixIsKept() {
+        assertFalse(filter.isRedundant(DeviceType.PC, anchor, -1.9441, 30.0619, stored.minusSeconds(1)));
+    }
+
+    @Test
+    void testAnchorsPastTheLongestIntervalAreEvicted() {
+        UUID idle = UUID.randomUUID();
+        UUID recent = UUID.randomUUID();
+        filter.remember(idle, new PointThinningFilter.Anchor(-1.9441, 30.0619, LocalDateTime.now().minusHours(2)));
+        filter.remember(recent, new PointThinningFilter.Anchor(-1.9441, 30.0619, LocalDateTime.now().minusMinutes(5)));
+
+        filter.evictExpired();
+
+        assertNull(filter.lastStored(idle));
+        assertNotNull(filter.lastStored(recent));
+    }
+
+    @Test
+    void testRememberKeepsNewestAnchor() {
+        UUID deviceId = UUID.randomUUID();
+        filter.remember(deviceId, anchor);
+        filter.remember(deviceId, new PointThinningFilter.Anchor(0, 0, stored.minusHours(1)));
+
+        assertEquals(anchor, filter.lastStored(deviceId));
+    }
+
+    @Test
+    void testSuppressedFixesAreCountedPerType() {
+        filter.isRedundant(DeviceType.SERVER, anchor, -1.9441, 30.0619, stored.plusSeconds(30));
+
+        @SuppressWarnings("unchecked")
+        Map<String, Long> suppressed = (Map<String, Long>) filter.getStats().get("suppressed");
+        assertEquals(1L, suppressed.get("SERVER"));
+        assertEquals(0L, suppressed.get("PC"));
+    }
+}
@@ -0,0 +1,167 @@
+package mahoro.backend.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.*;
+import org.springframework.context.ApplicationEventPublisher;
+
+import mahoro.backend.repository.DeviceRepository;
+import mahoro.backend.service.PresenceTracker.Status;
+import mahoro.backend.service.PresenceTracker.Transition;
+
+class PresenceTrackerTest {
+
+    @Mock
+    private DeviceRepository deviceRepository;
+
+    @Mock
+    private AlertService alertService;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @InjectMocks
+    private PresenceTracker presenceTracker;
+
+    private final UUID userId = UUID.randomUUID();
+    // Transitions carry millisecond times
+    private final LocalDateTime start = LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS);
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+    }
+
+    private void load(Object[]... devices) {
+        when(deviceRepository.findPresence()).thenReturn(Arrays.asList(devices));
+        presenceTracker.load();
+    }
+
+    private long at(long minutes) {
+        return start.plusMinutes(minutes).toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    @Test
+    void testReportBringsDeviceOnlineUntilWindowPasses() {
+        UUID deviceId = UUID.randomUUID();
+        load(new Object[] { deviceId, userId, null });
+        assertFalse(presenceTracker.isOnline(deviceId));
+        assertEquals(1, presenceTracker.deviceCount(userId));
+
+        presenceTracker.touch(deviceId, start);
+        assertTrue(presenceTracker.isOnline(deviceId));
+        assertEquals(1, presenceTracker.onlineCount(userId));
+        verify(eventPublisher).publishEvent(new Transition(deviceId, userId, Status.ONLINE, start));
+
+        // A newer report moves the expiry without another transition
+        presenceTracker.touch(deviceId, start.plusMinutes(3));
+        presenceTracker.advance(at(6));
+        assertTrue(presenceTracker.isOnline(deviceId));
+
+        presenceTracker.advance(at(9));
+        assertFalse(presenceTracker.isOnline(deviceId));
+        assertEquals(0, presenceTracker.onlineCount(userId));
+        assertEquals(1, presenceTracker.deviceCount(userId));
+        verify(eventPublisher).publishEvent(new Transition(deviceId, userId, Status.OFFLINE, start.plusMinutes(3)));
+        verify(eventPublisher, times(2)).publishEvent(any(Object.class));
+    }
+
+    @Test
+    void testStaleReportDoesNotBringDeviceOnline() {
+        UUID deviceId = UUID.randomUUID();
+        load(new Object[] { deviceId, userId, null });
+
+        presenceTracker.touch(deviceId, start.minusMinutes(10));
+        assertFalse(presenceTracker.isOnline(deviceId));
+        verify(eventPublisher, never()).publishEvent(any(Object.class));
+    }
+
+    @Test
+    void testOfflineAlertsRaisedInOneBatch() {
+        UUID first = UUID.randomUUID();
+        UUID second = UUID.randomUUID();
+        UUID longGone = UUID.randomUUID();
+        UUID neverSeen = UUID.randomUUID();
+        load(new Object[] { first, userId, start.minusMinutes(10) },
+                new Object[] { second, userId, start.minusMinutes(15) },
+                new Object[] { longGone, userId, start.minusHours(3) },
+                new Object[] { neverSeen, null, null });
+        assertEquals(3, presenceTracker.deviceCount(userId));
+        assertEquals(0, presenceTracker.onlineCount(userId));
+
+        presenceTracker.advance(at(40));
+        verify(alertService, never()).createOfflineAlerts(anyCollection(), anyString());
+
+        presenceTracker.advance(at(55));
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Collection<UUID>> alerted = ArgumentCaptor.forClass(Collection.class);
+        verify(alertService).createOfflineAlerts(alerted.capture(), anyString());
+        assertEquals(Set.of(first, second), new HashSet<>(alerted.getValue()));
+
+        presenceTracker.advance(at(500));
+        verify(alertService, times(1)).createOfflineAlerts(anyCollection(), anyString());
+        assertEquals(0, presenceTracker.getStats().get("timers"));
+    }
+
+    @Test
+    void testComingBackOnlineRearmsOfflineAlert() {
+        UUID deviceId = UUID.randomUUID();
+        load(new Object[] { deviceId, userId, start.minusHours(3) });
+
+        presenceTracker.touch(deviceId, start);
+        presenceTracker.advance(at(6));
+        assertFalse(presenceTracker.isOnline(deviceId));
+        presenceTracker.advance(at(61));
+        verify(alertService).createOfflineAlerts(List.of(deviceId), "Device has been offline for more than 60 minutes");
+    }
+
+    @Test
+    void testReassignmentAndRemovalMoveCounts() {
+        UUID deviceId = UUID.randomUUID();
+        UUID otherUser = UUID.randomUUID();
+        load(new Object[] { deviceId, userId, start.minusMinutes(1) });
+        assertTrue(presenceTracker.isOnline(deviceId));
+        assertEquals(1, presenceTracker.onlineCount(userId));
+
+        presenceTracker.deviceAssigned(deviceId, otherUser);
+        assertEquals(0, presenceTracker.deviceCount(userId));
+        assertEquals(0, presenceTracker.onlineCount(userId));
+        assertEquals(1, presenceTracker.deviceCount(otherUser));
+        assertEquals(1, presenceTracker.onlineCount(otherUser));
+
+        presenceTracker.deviceRemoved(deviceId);
+        assertEquals(0, presenceTracker.deviceCount(otherUser));
+        assertEquals(0, presenceTracker.onlineCount(otherUser));
+        assertFalse(presenceTracker.isOnline(deviceId));
+
+        // The removed device's expiry is gone and nothing is recreated
+        presenceTracker.advance(at(10));
+        assertEquals(0, presenceTracker.getStats().get("trackedDevices"));
+        verify(eventPublisher, never()).publishEvent(any(Object.class));
+    }
+
+    @Test
+    void testDeviceReusingARemovedSlotStartsClean() {
+        UUID removed = UUID.randomUUID();
+        load(new Object[] { removed, userId, start.minusMinutes(1) });
+        presenceTracker.deviceRemoved(removed);
+
+        // Re-registering lands in the slot the removed row vacated
+        presenceTracker.deviceAssigned(removed, userId);
+        assertFalse(presenceTracker.isOnline(removed));
+        assertEquals(1, presenceTracker.deviceCount(userId));
+        assertEquals(0, presenceTracker.onlineCount(userId));
+
+        presenceTracker.touch(removed, start);
+        assertTrue(presenceTracker.isOnline(removed));
+        assertEquals(1, presenceTracker.onlineCount(userId));
+    }
+}
@@ -40,6 +40,9 @@ class UserServiceTest {
     @Mock
     private JavaMailSender mailSender;
 
+    @Mock
+    private GeofenceIndex geofenceIndex;
+
     @InjectMocks
     private UserService userService;
 
@@ -141,6 +144,7 @@ class UserServiceTest {
 
         userService.deleteUser(id);
         verify(userRepository, times(1)).deleteById(id);
+        verify(geofenceIndex).userRemoved(id);
     }
 
     @Test
@@ -0,0 +1,210 @@
+package mahoro.backend.state;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+
+class FleetStateTableTest {
+
+    @Test
+    void testMatchesHashMapUnderRandomOperations() {
+        Random random = new Random(11);
+        FleetStateTable table = new FleetStateTable(2, 0);
+        Map<UUID, Integer> expected = new HashMap<>();
+        List<UUID> keys = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            keys.add(new UUID(random.nextLong(), random.nextLong()));
+        }
+
+        int[] row = new int[2];
+        for (int op = 0; op < 200_000; op++) {
+            UUID key = keys.get(random.nextInt(keys.size()));
+            if (random.nextInt(4) == 0) {
+                assertEquals(expected.remove(key) != null, table.remove(key));
+            } else {
+                int value = random.nextInt();
+                boolean created = table.compute(key, r -> {
+                    r.setInt(0, value);
+                    r.setInt(1, ~value);
+                    return r.isNew();
+                });
+                assertEquals(!expected.containsKey(key), created);
+                expected.put(key, value);
+            }
+        }
+
+        assertEquals(expected.size(), table.size());
+        for (UUID key : keys) {
+            Integer value = expected.get(key);
+            assertEquals(value != null, table.read(key, row));
+            if (value != null) {
+                assertEquals(value, row[0]);
+                assertEquals(~value, row[1]);
+            }
+        }
+        assertEquals(expected.values().stream().filter(v -> v > 0).count(), table.count(0, v -> v > 0));
+    }
+
+    @Test
+    void testFloatsLongsAndPresizedFootprint() {
+        FleetStateTable table = new FleetStateTable(4, 100_000);
+        UUID key = UUID.randomUUID();
+        table.compute(key, row -> {
+            row.setFloat(0, -1.9441f);
+            row.setLong(1, 1_767_225_600_123L);
+            return null;
+        });
+        int[] row = new int[4];
+        assertTrue(table.read(key, row));
+        assertEquals(-1.9441f, Float.intBitsToFloat(row[0]));
+        assertEquals(1_767_225_600_123L, FleetStateTable.getLong(row, 1));
+        long written = table.compute(key, r -> {
+            r.setLong(1, -1L);
+            return r.getLong(1);
+        });
+        assertEquals(-1L, written);
+        assertEquals(0, row[3]);
+
+        // 16 bytes of key and 16 of values per slot, sized up front for the expected rows
+        long bytes = table.footprintBytes();
+        assertTrue(bytes >= 32L * 100_000 / 0.75 && bytes <= 32L * 100_000 / 0.75 * 1.01, "footprint " + bytes);
+    }
+
+    @Test
+    void testGrowthKeepsLoadBetweenSixtyAndSeventyFivePercent() {
+        FleetStateTable table = new FleetStateTable(2, 0);
+        Random random = new Random(5);
+        for (int rows = 1; rows <= 300_000; rows++) {
+            table.compute(new UUID(random.nextLong() | 1, random.nextLong()), row -> null);
+            if (rows >= 50_000 && rows % 10_000 == 0) {
+                double load = rows * 24.0 / table.footprintBytes();
+                assertTrue(load > 0.55 && load <= 0.75, rows + " rows at load " + load);
+            }
+        }
+    }
+
+    @Test
+    void testComputeIfPresentAndRemoveCopy() {
+        FleetStateTable table = new FleetStateTable(2, 0);
+        UUID key = UUID.randomUUID();
+        assertNull(table.computeIfPresent(key, row -> "called"));
+        assertEquals(0, table.size());
+
+        table.compute(key, row -> {
+            row.setInt(1, 42);
+            return null;
+        });
+        assertEquals("called", table.computeIfPresent(key, row -> "called"));
+
+        int[] removed = new int[2];
+        assertTrue(table.remove(key, removed));
+        assertEquals(42, removed[1]);
+        assertFalse(table.remove(key, removed));
+    }
+
+    @Test
+    void testCopyChangesTableOnlyWhenPut() {
+        FleetStateTable table = new FleetStateTable(3, 0);
+        UUID key = UUID.randomUUID();
+        FleetStateTable.Row copy = table.copy(key);
+        assertTrue(copy.isNew());
+        copy.setLong(1, 1L << 40);
+        assertEquals(0, table.size());
+
+        table.put(key, copy);
+        copy.setInt(0, 9);
+        int[] row = new int[3];
+        assertTrue(table.read(key, row));
+        assertEquals(0, row[0]);
+        assertEquals(1L << 40, FleetStateTable.getLong(row, 1));
+
+        FleetStateTable.Row again = table.copy(key);
+        assertFalse(again.isNew());
+        assertEquals(1L << 40, again.getLong(1));
+    }
+
+    @Test
+    void testReusedSlotStartsZeroed() {
+        FleetStateTable table = new FleetStateTable(2, 0);
+        UUID key = new UUID(1, 42);
+        table.compute(key, row -> {
+            row.setInt(0, 42);
+            row.setInt(1, 7);
+            return null;
+        });
+        table.remove(key);
+
+        int[] seen = table.compute(key, row -> new int[] { row.isNew() ? 1 : 0, row.getInt(0), row.getInt(1) });
+        assertArrayEquals(new int[] { 1, 0, 0 }, seen);
+
+        // Same for a slot vacated by backward-shift deletion inside a probe run
+        List<UUID> keys = new ArrayList<>();
+        for (int i = 1; i <= 2000; i++) {
+            UUID other = new UUID(i, i * 31L);
+            keys.add(other);
+            table.compute(other, row -> {
+                row.setInt(0, -1);
+                row.setInt(1, -1);
+                return null;
+            });
+        }
+        keys.forEach(table::remove);
+        for (UUID other : keys) {
+            assertArrayEquals(new int[] { 0, 0 },
+                    table.compute(other, row -> new int[] { row.getInt(0), row.getInt(1) }));
+        }
+    }
+
+    @Test
+    void testNilUuidIsRejected() {
+        FleetStateTable table = new FleetStateTable(1, 0);
+        assertThrows(IllegalArgumentException.class, () -> table.compute(new UUID(0, 0), row -> null));
+        assertFalse(table.read(new UUID(0, 0), new int[1]));
+    }
+
+    @Test
+    void testReadersNeverSeeTornRows() throws Exception {
+        FleetStateTable table = new FleetStateTable(4, 0);
+        List<UUID> keys = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            keys.add(UUID.randomUUID());
+        }
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicReference<String> failure = new AtomicReference<>();
+
+        // The two longs are always written as a pair, so any mismatch would be a torn read
+        Thread writer = new Thread(() -> {
+            Random random = new Random(3);
+            for (long n = 1; running.get(); n++) {
+                UUID key = keys.get(random.nextInt(keys.size()));
+                if (n % 7 == 0) {
+                    table.remove(key);
+                } else {
+                    long value = n;
+                    table.compute(key, row -> {
+                        row.setLong(0, value);
+                        row.setLong(2, -value);
+                        return null;
+                    });
+                }
+            }
+        });
+        writer.start();
+        int[] row = new int[4];
+        Random random = new Random(5);
+        long deadline = System.currentTimeMillis() + 500;
+        while (System.currentTimeMillis() < deadline && failure.get() == null) {
+            UUID key = keys.get(random.nextInt(keys.size()));
+            if (table.read(key, row) && FleetStateTable.getLong(row, 0) != -FleetStateTable.getLong(row, 2)) {
+                failure.set(FleetStateTable.getLong(row, 0) + " / " + FleetStateTable.getLong(row, 2));
+            }
+        }
+        running.set(false);
+        writer.join();
+        assertNull(failure.get());
+    }
+}
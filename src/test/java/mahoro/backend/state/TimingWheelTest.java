@@ -0,0 +1,87 @@
+package mahoro.backend.state;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.*;
+
+import org.junit.jupiter.api.Test;
+
+class TimingWheelTest {
+
+    @Test
+    void testFiresOnceAtOrAfterDeadline() {
+        TimingWheel<String> wheel = new TimingWheel<>(100, 8, 0);
+        wheel.schedule("a", 250);
+        wheel.schedule("b", 301);
+
+        assertEquals(List.of(), wheel.advance(299));
+        assertEquals(List.of("a"), wheel.advance(300));
+        assertEquals(List.of(), wheel.advance(399));
+        assertEquals(List.of("b"), wheel.advance(400));
+        assertEquals(List.of(), wheel.advance(1000));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void testLaterRevolutionsStayInTheirSlot() {
+        TimingWheel<String> wheel = new TimingWheel<>(10, 4, 0);
+        // Both hash to slot 1, two revolutions apart
+        wheel.schedule("near", 10);
+        wheel.schedule("far", 90);
+
+        assertEquals(List.of("near"), wheel.advance(50));
+        assertEquals(List.of(), wheel.advance(80));
+        assertEquals(List.of("far"), wheel.advance(90));
+    }
+
+    @Test
+    void testRescheduleAndCancel() {
+        TimingWheel<String> wheel = new TimingWheel<>(10, 16, 0);
+        wheel.schedule("a", 50);
+        wheel.schedule("b", 50);
+        wheel.schedule("a", 120);
+        assertTrue(wheel.cancel("b"));
+        assertFalse(wheel.cancel("b"));
+
+        assertEquals(List.of(), wheel.advance(100));
+        assertEquals(List.of("a"), wheel.advance(120));
+    }
+
+    @Test
+    void testPassedDeadlineFiresOnNextTick() {
+        TimingWheel<String> wheel = new TimingWheel<>(10, 16, 1000);
+        wheel.schedule("late", 500);
+        assertEquals(List.of(), wheel.advance(1009));
+        assertEquals(List.of("late"), wheel.advance(1010));
+    }
+
+    @Test
+    void testRandomAdvancesMatchDeadlines() {
+        Random random = new Random(3);
+        TimingWheel<Integer> wheel = new TimingWheel<>(7, 32, 0);
+        Map<Integer, Long> deadlines = new HashMap<>();
+        for (int i = 0; i < 2000; i++) {
+            long deadline = 1 + random.nextInt(5000);
+            wheel.schedule(i, deadline);
+            deadlines.put(i, deadline);
+        }
+
+        long now = 0;
+        while (!deadlines.isEmpty()) {
+            // Mix single ticks with gaps of several revolutions
+            now += random.nextBoolean() ? 7 : random.nextInt(1000);
+            long until = now;
+            Set<Integer> expected = new HashSet<>();
+            deadlines.forEach((key, deadline) -> {
+                if (deadline <= until - until % 7) {
+                    expected.add(key);
+                }
+            });
+            List<Integer> fired = wheel.advance(now);
+            assertEquals(expected, new HashSet<>(fired), "at " + now);
+            assertEquals(expected.size(), fired.size());
+            expected.forEach(deadlines::remove);
+        }
+        assertEquals(0, wheel.size());
+    }
+}